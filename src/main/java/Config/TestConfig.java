@@ -4,9 +4,9 @@ import org.aeonbits.owner.Config;
 
 @Config.LoadPolicy(Config.LoadType.MERGE)
 @Config.Sources({
-        "classpath:develop.properties",
         "system:properties",
-        "system:env"
+        "system:env",
+        "classpath:develop.properties"
 })
 public interface TestConfig extends Config {
 
@@ -30,12 +30,122 @@ public interface TestConfig extends Config {
     @DefaultValue("")
     String postUrl();
     
+    // Override to point the sync at a stand-in server (see standin.AtlassianStandIn)
+    @Key("XRAY_BASE_URL")
+    @DefaultValue("https://xray.cloud.getxray.app/api/v2")
+    String xrayBaseUrl();
+
     @Key("XRAY_CLIENT_ID")
     String xrayClientId();
 
     @Key("XRAY_CLIENT_SECRET")
     String xrayClientSecret();
 
+    // Optional file shared by JVM forks to reuse the Xray token (e.g. target/.xray-token)
+    @Key("XRAY_TOKEN_CACHE_FILE")
+    @DefaultValue("")
+    String xrayTokenCacheFile();
+
+    // Jira project the event-listener sync writes to; empty disables the plugin
+    @Key("JIRA_PROJECT_KEY")
+    @DefaultValue("")
+    String jiraProjectKey();
+
+    // Max seconds TestRunFinished waits for queued sync work
+    @Key("SYNC_FLUSH_TIMEOUT_SEC")
+    @DefaultValue("300")
+    long syncFlushTimeoutSec();
+
+    // Push cucumber.json's results to Xray as a Test Execution when the run finishes
+    @Key("RESULTS_EXPORT")
+    @DefaultValue("true")
+    boolean resultsExport();
+
+    // Test results per multipart request when pushing cucumber.json to Xray
+    @Key("RESULTS_BATCH_SIZE")
+    @DefaultValue("500")
+    int resultsBatchSize();
+
+    // graphql = per-scenario GraphQL uploads; import = changed .feature files through /import/feature
+    @Key("SYNC_MODE")
+    @DefaultValue("graphql")
+    String syncMode();
+
+    // Sync throughput: max in-flight calls per host, token-bucket rate and retries on 429
+    @Key("SYNC_CONCURRENCY")
+    @DefaultValue("8")
+    int syncConcurrency();
+
+    @Key("SYNC_RATE_PER_SEC")
+    @DefaultValue("10")
+    double syncRatePerSec();
+
+    @Key("SYNC_BURST")
+    @DefaultValue("10")
+    int syncBurst();
+
+    @Key("SYNC_MAX_RETRIES")
+    @DefaultValue("5")
+    int syncMaxRetries();
+
+    // gzip request bodies (responses are always negotiated with Accept-Encoding: gzip)
+    @Key("HTTP_GZIP_REQUESTS")
+    @DefaultValue("false")
+    boolean httpGzipRequests();
+
+    // Where sync-metrics.prom / sync-metrics.json are written at the end of a run; blank disables
+    @Key("SYNC_METRICS_DIR")
+    @DefaultValue("target/sync-metrics")
+    String syncMetricsDir();
+
+    // Where Hooks writes change-map.ndjson / change-map.bin (see changes.ChangeMapReader); blank disables
+    @Key("CHANGE_MAP_EXPORT_DIR")
+    @DefaultValue("target/change-map")
+    String changeMapExportDir();
+
+    // Logging (util.Log): global level, per-logger overrides such as "changemap.status=OFF",
+    // text or json lines, async ring size, and an optional file instead of stdout
+    @Key("LOG_LEVEL")
+    @DefaultValue("INFO")
+    String logLevel();
+
+    @Key("LOG_LEVELS")
+    @DefaultValue("")
+    String logLevels();
+
+    @Key("LOG_FORMAT")
+    @DefaultValue("text")
+    String logFormat();
+
+    @Key("LOG_BUFFER_SIZE")
+    @DefaultValue("8192")
+    int logBufferSize();
+
+    // a path, or "stderr"
+    @Key("LOG_FILE")
+    @DefaultValue("")
+    String logFile();
+
+    // Test selection (runner.SelectiveCucumber): "all", or "changed" to run only NEW/CHANGED
+    // scenarios; more than TEST_SELECTION_MAX_RATIO of the suite changed runs everything
+    @Key("TEST_SELECTION")
+    @DefaultValue("all")
+    String testSelection();
+
+    @Key("TEST_SELECTION_MAX_RATIO")
+    @DefaultValue("0.5")
+    double testSelectionMaxRatio();
+
+    // Tests of scenarios the change map reports DELETED (sync.StaleTestReaper): "off", "relabel"
+    // (swap the automation label for STALE_TEST_LABEL) or "archive" (needs Jira Premium)
+    @Key("STALE_TEST_REAPER")
+    @DefaultValue("off")
+    String staleTestReaper();
+
+    @Key("STALE_TEST_LABEL")
+    @DefaultValue("automation-deleted")
+    String staleTestLabel();
+
 
 
    
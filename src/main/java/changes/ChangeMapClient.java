@@ -0,0 +1,131 @@
+package changes;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import util.Log;
+
+// Asks a ChangeMapService (CHANGE_MAP_SERVICE, e.g. http://127.0.0.1:7411) for the change map
+// before building it in this JVM. Refs are resolved to commits here, so the service maps exactly
+// this checkout's commits. Any refusal or failure returns null and the caller builds locally.
+public final class ChangeMapClient {
+
+  private static final Log LOG = Log.get("changemap");
+  private static final String SERVICE = envOrDefault("CHANGE_MAP_SERVICE", "");
+  // A miss waits for the service's build, which is what this job would otherwise pay itself
+  private static final Duration TIMEOUT = Duration.ofSeconds(Long.parseLong(envOrDefault("CHANGE_MAP_SERVICE_TIMEOUT_SEC", "120")));
+
+  private static volatile HttpClient http;
+
+  private ChangeMapClient() {}
+
+  public static boolean enabled() {
+    return !SERVICE.isBlank();
+  }
+
+  // The service's map for the refs, also published as FeatureScenarioChangeMap.latest();
+  // null when no service is configured or it could not answer
+  public static Map<String, Map<String, String>> fetch(String fromRef, String toRef) {
+    if (!enabled()) return null;
+    long start = System.nanoTime();
+    try {
+      String[] commits = resolve(fromRef, toRef);
+      String url = SERVICE.replaceAll("/+$", "") + ChangeMapService.MAP_PATH
+          + "?from=" + commits[0] + "&to=" + commits[1]
+          + "&roots=" + URLEncoder.encode(FeatureScenarioChangeMap.featureRoots().spec(), StandardCharsets.UTF_8);
+      HttpResponse<byte[]> resp = client().send(
+          HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT).GET().build(),
+          HttpResponse.BodyHandlers.ofByteArray());
+      if (resp.statusCode() != 200) {
+        LOG.info("Change map service declined, building locally", "status", resp.statusCode(),
+            "reason", new String(resp.body(), StandardCharsets.UTF_8));
+        return null;
+      }
+      Map<String, Map<String, String>> map = parse(resp.body());
+      FeatureScenarioChangeMap.publish(fromRef, toRef, map);
+      LOG.info("Change map from service", "cache", resp.headers().firstValue(ChangeMapService.CACHE_HEADER).orElse("?"),
+          "features", map.size(), "ms", (System.nanoTime() - start) / 1_000_000);
+      return map;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (IOException | RuntimeException ex) {
+      LOG.warn("Change map service unavailable, building locally", "service", SERVICE, "error", String.valueOf(ex.getMessage()));
+      return null;
+    }
+  }
+
+  private static String[] resolve(String fromRef, String toRef) throws IOException {
+    try (Repository repo = new FileRepositoryBuilder().setMustExist(true).findGitDir().build()) {
+      ObjectId from = repo.resolve(fromRef + "^{commit}");
+      ObjectId to = repo.resolve(toRef + "^{commit}");
+      if (from == null || to == null) {
+        throw new IllegalArgumentException("Cannot resolve refs: FROM=" + fromRef + " TO=" + toRef);
+      }
+      return new String[] { from.name(), to.name() };
+    }
+  }
+
+  private static Map<String, Map<String, String>> parse(byte[] body) throws IOException {
+    Map<String, Map<String, String>> out = new LinkedHashMap<>();
+    try (JsonParser p = new JsonFactory().createParser(body)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Not a change map response");
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        p.nextToken();
+        if (!"features".equals(field)) {
+          p.skipChildren();
+          continue;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+          Map<String, String> scenarios = new LinkedHashMap<>();
+          out.put(p.currentName(), scenarios);
+          p.nextToken();
+          while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String scenario = p.currentName();
+            p.nextToken();
+            scenarios.put(scenario, p.getText());
+          }
+        }
+      }
+    }
+    return out;
+  }
+
+  private static HttpClient client() {
+    HttpClient c = http;
+    if (c == null) {
+      synchronized (ChangeMapClient.class) {
+        if (http == null) {
+          http = HttpClient.newBuilder()
+              .version(HttpClient.Version.HTTP_1_1)
+              .connectTimeout(Duration.ofSeconds(2))
+              .build();
+        }
+        c = http;
+      }
+    }
+    return c;
+  }
+
+  private static String envOrDefault(String key, String def) {
+    String v = System.getenv(key);
+    return (v == null || v.isBlank()) ? def : v;
+  }
+}
@@ -0,0 +1,200 @@
+package changes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+// Streams a feature → scenario → status map to NDJSON and/or the compact binary format
+// read back by ChangeMapReader. Entries are written as they are handed in; only a 64 KB
+// buffer per file is held, flushed straight to its FileChannel.
+//
+// Binary layout (big-endian, str = int length + UTF-8 bytes):
+//   "FSCM" u8 version  str from  str to  long createdMillis
+//   'S' u8 code str status   - defines a status code before its first use
+//   'F' str feature          - following 'C' records belong to this feature
+//   'C' u8 code str scenario
+//   'E' int features int scenarios
+public class ChangeMapExporter implements AutoCloseable {
+
+  static final byte[] MAGIC = { 'F', 'S', 'C', 'M' };
+  static final byte VERSION = 1;
+  static final byte STATUS = 'S', FEATURE = 'F', SCENARIO = 'C', END = 'E';
+
+  private static final int BUFFER = 64 * 1024;
+
+  private final ChannelSink ndjsonSink;
+  private final JsonGenerator ndjson;
+  private final ChannelSink binary;
+  private final Map<String, Integer> statusCodes = new HashMap<>();
+  private String feature;
+  private int features;
+  private int scenarios;
+
+  // Either path may be null to skip that format
+  public ChangeMapExporter(Path ndjsonPath, Path binaryPath, String fromRef, String toRef) throws IOException {
+    if (ndjsonPath != null) {
+      ndjsonSink = new ChannelSink(ndjsonPath);
+      ndjson = new JsonFactory().createGenerator(ndjsonSink);
+      ndjson.setRootValueSeparator(null);
+    } else {
+      ndjsonSink = null;
+      ndjson = null;
+    }
+    binary = binaryPath == null ? null : new ChannelSink(binaryPath);
+    if (binary != null) {
+      binary.write(MAGIC);
+      binary.write(VERSION);
+      binary.writeString(fromRef);
+      binary.writeString(toRef);
+      binary.writeLong(System.currentTimeMillis());
+    }
+  }
+
+  // Writes both formats into dir as change-map.ndjson / change-map.bin
+  public static void export(Map<String, Map<String, String>> changeMap, String fromRef, String toRef, Path dir) {
+    try {
+      Files.createDirectories(dir);
+      try (ChangeMapExporter out = new ChangeMapExporter(
+          dir.resolve("change-map.ndjson"), dir.resolve("change-map.bin"), fromRef, toRef)) {
+        for (Map.Entry<String, Map<String, String>> f : changeMap.entrySet()) {
+          out.feature(f.getKey());
+          for (Map.Entry<String, String> sc : f.getValue().entrySet()) {
+            out.scenario(sc.getKey(), sc.getValue());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not export change map to " + dir, e);
+    }
+  }
+
+  public void feature(String featureName) throws IOException {
+    feature = featureName;
+    features++;
+    if (binary != null) {
+      binary.write(FEATURE);
+      binary.writeString(featureName);
+    }
+  }
+
+  public void scenario(String scenarioName, String status) throws IOException {
+    if (feature == null) throw new IllegalStateException("scenario() before feature()");
+    scenarios++;
+    if (ndjson != null) {
+      ndjson.writeStartObject();
+      ndjson.writeStringField("feature", feature);
+      ndjson.writeStringField("scenario", scenarioName);
+      ndjson.writeStringField("status", status);
+      ndjson.writeEndObject();
+      ndjson.writeRaw('\n');
+    }
+    if (binary != null) {
+      Integer code = statusCodes.get(status);
+      if (code == null) {
+        if (statusCodes.size() == 256) throw new IllegalStateException("More than 256 distinct statuses");
+        code = statusCodes.size();
+        statusCodes.put(status, code);
+        binary.write(STATUS);
+        binary.write((byte) (int) code);
+        binary.writeString(status);
+      }
+      binary.write(SCENARIO);
+      binary.write((byte) (int) code);
+      binary.writeString(scenarioName);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (ndjson != null) ndjson.close();
+    } finally {
+      if (binary != null) {
+        try (ChannelSink b = binary) {
+          b.write(END);
+          b.writeInt(features);
+          b.writeInt(scenarios);
+        }
+      }
+    }
+  }
+
+  // OutputStream over a FileChannel with one heap buffer; also exposes the binary primitives
+  private static final class ChannelSink extends OutputStream {
+    private final FileChannel channel;
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+
+    ChannelSink(Path path) throws IOException {
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void ensure(int n) throws IOException {
+      if (buf.remaining() < n) drain();
+    }
+
+    private void drain() throws IOException {
+      buf.flip();
+      while (buf.hasRemaining()) channel.write(buf);
+      buf.clear();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensure(1);
+      buf.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (!buf.hasRemaining()) drain();
+        int n = Math.min(len, buf.remaining());
+        buf.put(b, off, n);
+        off += n;
+        len -= n;
+      }
+    }
+
+    void writeInt(int v) throws IOException {
+      ensure(4);
+      buf.putInt(v);
+    }
+
+    void writeLong(long v) throws IOException {
+      ensure(8);
+      buf.putLong(v);
+    }
+
+    void writeString(String s) throws IOException {
+      byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+      writeInt(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        drain();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
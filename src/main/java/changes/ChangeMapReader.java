@@ -0,0 +1,93 @@
+package changes;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Loads a change-map.bin written by ChangeMapExporter by memory-mapping it, so another
+// JVM can pick up the map without touching git or re-parsing features.
+public class ChangeMapReader {
+
+  private final String fromRef;
+  private final String toRef;
+  private final long createdMillis;
+  private final Map<String, Map<String, String>> changeMap;
+
+  private ChangeMapReader(String fromRef, String toRef, long createdMillis, Map<String, Map<String, String>> changeMap) {
+    this.fromRef = fromRef;
+    this.toRef = toRef;
+    this.createdMillis = createdMillis;
+    this.changeMap = changeMap;
+  }
+
+  public String fromRef() { return fromRef; }
+  public String toRef() { return toRef; }
+  public long createdMillis() { return createdMillis; }
+  public Map<String, Map<String, String>> changeMap() { return changeMap; }
+
+  public static ChangeMapReader read(Path binary) throws IOException {
+    MappedByteBuffer buf;
+    try (FileChannel ch = FileChannel.open(binary, StandardOpenOption.READ)) {
+      buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()); // mapping outlives the channel
+    }
+    buf.order(ByteOrder.BIG_ENDIAN);
+    try {
+      byte[] magic = new byte[4];
+      buf.get(magic);
+      if (!Arrays.equals(magic, ChangeMapExporter.MAGIC)) {
+        throw new IOException("Not a change map file: " + binary);
+      }
+      byte version = buf.get();
+      if (version != ChangeMapExporter.VERSION) {
+        throw new IOException("Unsupported change map version " + version + ": " + binary);
+      }
+      String from = readString(buf);
+      String to = readString(buf);
+      long created = buf.getLong();
+
+      String[] statuses = new String[256];
+      Map<String, Map<String, String>> out = new LinkedHashMap<>();
+      Map<String, String> current = null;
+      int scenarios = 0;
+      while (true) {
+        byte tag = buf.get();
+        if (tag == ChangeMapExporter.STATUS) {
+          int code = buf.get() & 0xFF;
+          statuses[code] = readString(buf).intern();
+        } else if (tag == ChangeMapExporter.FEATURE) {
+          current = out.computeIfAbsent(readString(buf), k -> new LinkedHashMap<>());
+        } else if (tag == ChangeMapExporter.SCENARIO) {
+          String status = statuses[buf.get() & 0xFF];
+          if (current == null || status == null) throw new IOException("Corrupt change map: " + binary);
+          current.put(readString(buf), status);
+          scenarios++;
+        } else if (tag == ChangeMapExporter.END) {
+          int expectedFeatures = buf.getInt();
+          int expectedScenarios = buf.getInt();
+          if (expectedScenarios != scenarios || expectedFeatures < out.size()) {
+            throw new IOException("Truncated change map (" + scenarios + "/" + expectedScenarios + " scenarios): " + binary);
+          }
+          return new ChangeMapReader(from, to, created, out);
+        } else {
+          throw new IOException("Corrupt change map (tag " + tag + "): " + binary);
+        }
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated change map: " + binary, e);
+    }
+  }
+
+  private static String readString(MappedByteBuffer buf) {
+    byte[] b = new byte[buf.getInt()];
+    buf.get(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,267 @@
+package changes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import util.Log;
+
+// Change maps for the CI jobs of one agent, so identical (from, to) pairs are built once instead
+// of once per job JVM. Serves the repository it is started in, on loopback only:
+//
+//   GET /change-map?from=<commit>&to=<commit>&roots=<FeatureRoots spec>
+//       200 {"fromTree","toTree","featureRoots","features":{feature:{scenario:status}}}
+//       404 a commit this repository does not have (yet), 409 other feature roots
+//   GET /health   cache counters
+//
+// Results are cached by the commits' tree ids, so a rebased or re-committed pair with the same
+// content is a hit, and evicted least-recently-used once the rendered responses exceed the byte
+// budget. Concurrent requests for a pair being built wait for that one build (single flight).
+// The TO commit's own tree is mapped, not a working tree, so the service needs no checkout.
+public final class ChangeMapService implements AutoCloseable {
+
+  private static final Log LOG = Log.get("changemap.service");
+  static final String MAP_PATH = "/change-map";
+  static final String HEALTH_PATH = "/health";
+  static final String CACHE_HEADER = "X-Change-Map-Cache";
+
+  private final Repository repo;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final long maxBytes;
+
+  private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+  private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder shared = new LongAdder();
+
+  private ChangeMapService(Repository repo, int port, int threads, long maxBytes) throws IOException {
+    this.repo = repo;
+    this.maxBytes = maxBytes;
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+    AtomicInteger n = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+      Thread t = new Thread(r, "changemap-service-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    server.setExecutor(executor);
+    server.createContext(MAP_PATH, this::changeMap);
+    server.createContext(HEALTH_PATH, this::health);
+  }
+
+  // port 0 picks a free one; see port()
+  public static ChangeMapService start(int port, int threads, long maxBytes) throws IOException {
+    Repository repo = new FileRepositoryBuilder().setMustExist(true).findGitDir().build();
+    ChangeMapService service;
+    try {
+      service = new ChangeMapService(repo, port, threads, maxBytes);
+    } catch (IOException | RuntimeException ex) {
+      repo.close();
+      throw ex;
+    }
+    service.server.start();
+    LOG.info("Change map service listening", "port", service.port(), "repo", repo.getDirectory(),
+        "roots", FeatureScenarioChangeMap.featureRoots().spec(), "cacheBytes", maxBytes);
+    return service;
+  }
+
+  public int port() { return server.getAddress().getPort(); }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+    repo.close();
+  }
+
+  private void changeMap(HttpExchange ex) throws IOException {
+    try {
+      Map<String, String> q = query(ex);
+      String roots = FeatureScenarioChangeMap.featureRoots().spec();
+      if (q.get("from") == null || q.get("to") == null) {
+        reply(ex, 400, "from and to are required");
+        return;
+      }
+      if (q.get("roots") != null && !q.get("roots").equals(roots)) {
+        reply(ex, 409, "service maps feature roots " + roots);
+        return;
+      }
+      RevCommit from = commit(q.get("from"));
+      RevCommit to = commit(q.get("to"));
+      if (from == null || to == null) {
+        reply(ex, 404, "unknown commit: " + (from == null ? q.get("from") : q.get("to")));
+        return;
+      }
+
+      String key = from.getTree().name() + ".." + to.getTree().name();
+      byte[] body = cached(key);
+      String outcome = "hit";
+      if (body == null) {
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+          outcome = "shared";
+          body = running.join();
+        } else {
+          try {
+            body = cached(key);   // finished between the lookup and putIfAbsent
+            if (body == null) {
+              outcome = "miss";
+              body = render(from, to);
+              store(key, body);
+            }
+            mine.complete(body);
+          } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+          } finally {
+            inFlight.remove(key, mine);
+          }
+        }
+      }
+      count(outcome);
+      ex.getResponseHeaders().set(CACHE_HEADER, outcome);
+      ex.getResponseHeaders().set("Content-Type", "application/json");
+      reply(ex, 200, body);
+    } catch (CompletionException e) {
+      LOG.error("Change map build failed", e.getCause());
+      reply(ex, 500, String.valueOf(e.getCause().getMessage()));
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Change map build failed", e);
+      reply(ex, 500, String.valueOf(e.getMessage()));
+    }
+  }
+
+  private void health(HttpExchange ex) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator g = new JsonFactory().createGenerator(out)) {
+      g.writeStartObject();
+      synchronized (cache) {
+        g.writeNumberField("entries", cache.size());
+        g.writeNumberField("bytes", cachedBytes);
+      }
+      g.writeNumberField("maxBytes", maxBytes);
+      g.writeNumberField("hits", hits.sum());
+      g.writeNumberField("misses", misses.sum());
+      g.writeNumberField("shared", shared.sum());
+      g.writeNumberField("inFlight", inFlight.size());
+      g.writeEndObject();
+    }
+    ex.getResponseHeaders().set("Content-Type", "application/json");
+    reply(ex, 200, out.toByteArray());
+  }
+
+  private RevCommit commit(String id) throws IOException {
+    ObjectId oid = repo.resolve(id + "^{commit}");
+    if (oid == null) return null;
+    try (RevWalk rw = new RevWalk(repo)) {
+      return rw.parseCommit(oid);
+    } catch (MissingObjectException e) {
+      return null;
+    }
+  }
+
+  private byte[] render(RevCommit from, RevCommit to) throws IOException {
+    ChangeMapTimings timings = new ChangeMapTimings(from.name(), to.name());
+    Map<String, Map<String, String>> map = FeatureScenarioChangeMap.buildAtCommits(repo, from, to, timings);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator g = new JsonFactory().createGenerator(out)) {
+      g.writeStartObject();
+      g.writeStringField("fromTree", from.getTree().name());
+      g.writeStringField("toTree", to.getTree().name());
+      g.writeStringField("featureRoots", FeatureScenarioChangeMap.featureRoots().spec());
+      g.writeObjectFieldStart("features");
+      for (Map.Entry<String, Map<String, String>> f : map.entrySet()) {
+        g.writeObjectFieldStart(f.getKey());
+        for (Map.Entry<String, String> sc : f.getValue().entrySet()) g.writeStringField(sc.getKey(), sc.getValue());
+        g.writeEndObject();
+      }
+      g.writeEndObject();
+      g.writeEndObject();
+    }
+    byte[] body = out.toByteArray();
+    LOG.info("Change map built", "from", from.name(), "to", to.name(), "features", map.size(),
+        "bytes", body.length, "ms", timings.totalMillis());
+    return body;
+  }
+
+  private byte[] cached(String key) {
+    synchronized (cache) {
+      return cache.get(key);
+    }
+  }
+
+  // An entry larger than the whole budget is served once and not kept
+  private void store(String key, byte[] body) {
+    synchronized (cache) {
+      byte[] old = cache.put(key, body);
+      cachedBytes += body.length - (old == null ? 0 : old.length);
+      Iterator<byte[]> eldest = cache.values().iterator();
+      while (cachedBytes > maxBytes && eldest.hasNext()) {
+        cachedBytes -= eldest.next().length;
+        eldest.remove();
+      }
+    }
+  }
+
+  private void count(String outcome) {
+    switch (outcome) {
+      case "hit": hits.increment(); break;
+      case "shared": shared.increment(); break;
+      default: misses.increment();
+    }
+  }
+
+  private static Map<String, String> query(HttpExchange ex) {
+    Map<String, String> out = new HashMap<>();
+    String raw = ex.getRequestURI().getRawQuery();
+    if (raw == null) return out;
+    for (String pair : raw.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq <= 0) continue;
+      out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+          URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+    }
+    return out;
+  }
+
+  private static void reply(HttpExchange ex, int status, String text) throws IOException {
+    reply(ex, status, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void reply(HttpExchange ex, int status, byte[] body) throws IOException {
+    ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    try (OutputStream os = ex.getResponseBody()) {
+      os.write(body);
+    }
+  }
+}
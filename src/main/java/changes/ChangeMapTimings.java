@@ -0,0 +1,164 @@
+package changes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Phase timings for one FeatureScenarioChangeMap.build. The summary is always kept;
+// the JFR events below are only created once Flight Recorder is up, e.g. via
+//   -XX:StartFlightRecording=filename=changemap.jfr,settings=profile
+// (touching an event class initialises JFR, which costs a short CLI run ~100 ms).
+public class ChangeMapTimings {
+
+  private final String fromRef;
+  private final String toRef;
+  private final long startNanos = System.nanoTime();
+  private final List<Phase> phases = new ArrayList<>();
+  private final Map<String, Phase> merged = new HashMap<>();
+  private final boolean jfr = FlightRecorder.isInitialized();
+  private long totalNanos;
+
+  ChangeMapTimings(String fromRef, String toRef) {
+    this.fromRef = fromRef;
+    this.toRef = toRef;
+  }
+
+  // Timings of one module's part of the build, folded back in with merge()
+  ChangeMapTimings child() {
+    return new ChangeMapTimings(fromRef, toRef);
+  }
+
+  Phase begin(String name) {
+    Phase p = new Phase(name, jfr);
+    phases.add(p);
+    return p;
+  }
+
+  // Per-file detail; emitted to JFR only, never kept in memory
+  void file(String phase, String path, long bytes, int hunks, int scenarios, long startNanos) {
+    if (!jfr) return;
+    FeatureFileEvent e = new FeatureFileEvent();
+    if (!e.isEnabled()) return;
+    e.phase = phase;
+    e.path = path;
+    e.bytes = bytes;
+    e.hunks = hunks;
+    e.scenarios = scenarios;
+    e.durationMicros = (System.nanoTime() - startNanos) / 1000;
+    e.commit();
+  }
+
+  // Folds in the phases of one module's build: same-named phases add up, so with modules run in
+  // parallel their times are summed across threads rather than wall time
+  void merge(ChangeMapTimings module) {
+    for (Phase p : module.phases) {
+      Phase into = merged.get(p.name);
+      if (into == null) {
+        into = new Phase(p.name, false);
+        merged.put(p.name, into);
+        phases.add(into);
+      }
+      into.add(p.files, p.scenarios, p.bytes, p.hunks);
+      into.nanos += p.nanos;
+    }
+  }
+
+  void finish() {
+    totalNanos = System.nanoTime() - startNanos;
+  }
+
+  public List<Phase> phases() { return Collections.unmodifiableList(phases); }
+  public long totalMillis() { return totalNanos / 1_000_000; }
+
+  public String summary() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("=== CHANGE MAP TIMINGS (").append(fromRef).append("..").append(toRef).append(") ===\n");
+    for (Phase p : phases) {
+      sb.append(String.format("%-18s %7.1fms  files=%d scenarios=%d bytes=%d hunks=%d%n",
+          p.name, p.nanos / 1e6, p.files, p.scenarios, p.bytes, p.hunks));
+    }
+    sb.append(String.format("%-18s %7.1fms%n", "total", totalNanos / 1e6));
+    sb.append("=================");
+    return sb.toString();
+  }
+
+  public static final class Phase {
+    final String name;
+    private final long start = System.nanoTime();
+    private final ChangeMapPhaseEvent event;
+    long nanos;
+    int files;
+    int scenarios;
+    long bytes;
+    int hunks;
+
+    Phase(String name, boolean jfr) {
+      this.name = name;
+      this.event = jfr ? new ChangeMapPhaseEvent() : null;
+      if (event != null) event.begin();
+    }
+
+    Phase add(int files, int scenarios, long bytes, int hunks) {
+      this.files += files;
+      this.scenarios += scenarios;
+      this.bytes += bytes;
+      this.hunks += hunks;
+      return this;
+    }
+
+    void end() {
+      nanos = System.nanoTime() - start;
+      if (event == null) return;
+      event.end();
+      if (event.shouldCommit()) {
+        event.phase = name;
+        event.files = files;
+        event.scenarios = scenarios;
+        event.bytes = bytes;
+        event.hunks = hunks;
+        event.commit();
+      }
+    }
+
+    public String name() { return name; }
+    public long millis() { return nanos / 1_000_000; }
+  }
+
+  @Name("changes.ChangeMapPhase")
+  @Label("Change Map Phase")
+  @Category({ "Xray Sync", "Change Map" })
+  @Description("One phase of FeatureScenarioChangeMap.build")
+  @StackTrace(false)
+  static final class ChangeMapPhaseEvent extends Event {
+    @Label("Phase") String phase;
+    @Label("Files") int files;
+    @Label("Scenarios") int scenarios;
+    @Label("Bytes") @DataAmount long bytes;
+    @Label("Hunks") int hunks;
+  }
+
+  @Name("changes.FeatureFile")
+  @Label("Change Map Feature File")
+  @Category({ "Xray Sync", "Change Map" })
+  @Description("Work done for one .feature file within a change map phase")
+  @StackTrace(false)
+  static final class FeatureFileEvent extends Event {
+    @Label("Phase") String phase;
+    @Label("Path") String path;
+    @Label("Bytes") @DataAmount long bytes;
+    @Label("Hunks") int hunks;
+    @Label("Scenarios") int scenarios;
+    @Label("Duration (us)") long durationMicros;
+  }
+}
@@ -8,24 +8,54 @@ import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.diff.Edit;
 import org.eclipse.jgit.diff.EditList;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import model.FeatureModel;
+import util.FeatureRoots;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FeatureScenarioChangeMap {
 
-  private static final String FEATURES_ROOT = envOrDefault("FEATURES_ROOT", "src/test/java/features");
+  // FEATURES_ROOTS (or FEATURES_ROOT): directories/globs of the module feature roots
+  private static final FeatureRoots ROOTS = FeatureRoots.configured();
+  // Modules are attributed in parallel on up to this many threads
+  private static final int MODULE_THREADS = Integer.parseInt(
+      envOrDefault("CHANGE_MAP_THREADS", String.valueOf(Runtime.getRuntime().availableProcessors())));
   private static final int HUNK_BUFFER_LINES = 1;
+  // Step-definition/hook sources whose edits mark the scenarios using them (StepImpactAnalyzer)
+  private static final List<String> GLUE_ROOTS = Arrays.asList(
+      envOrDefault("GLUE_ROOTS", "src/test/java/stepdefinitions,src/test/java/hooks").split("\\s*,\\s*"));
 
-  private static Map<String, Map<String, String>> lastComputed = Collections.emptyMap();
+  private static volatile Map<String, Map<String, String>> lastComputed = Collections.emptyMap();
   public static Map<String, Map<String, String>> latest() { return lastComputed; }
 
+  private static volatile ChangeMapTimings lastTimings;
+  public static ChangeMapTimings lastTimings() { return lastTimings; }
+
+  private static volatile String lastRefs;
+
+  // Reuses the last map when it was built for the same refs in this JVM (e.g. by test selection)
+  public static Map<String, Map<String, String>> buildOrReuse(String fromRef, String toRef) {
+    Map<String, Map<String, String>> reused = reusable(fromRef, toRef);
+    return reused != null ? reused : build(fromRef, toRef);
+  }
+
   public static Map<String, Map<String, String>> buildLocal() {
     String fromRef = envOrDefault("FROM_COMMIT", "HEAD~1");
     String toRef   = envOrDefault("TO_COMMIT", "HEAD");
@@ -35,6 +65,8 @@ public class FeatureScenarioChangeMap {
   public static Map<String, Map<String, String>> build(String fromRef, String toRef) {
     Objects.requireNonNull(fromRef, "fromRef required");
     Objects.requireNonNull(toRef, "toRef required");
+    ChangeMapTimings timings = new ChangeMapTimings(fromRef, toRef);
+    ChangeMapTimings.Phase phase = timings.begin("open-repo");
 
     try (Repository repo = new FileRepositoryBuilder()
         .setMustExist(true)
@@ -47,21 +79,181 @@ public class FeatureScenarioChangeMap {
         throw new IllegalArgumentException("Cannot resolve refs: FROM=" + fromRef + " TO=" + toRef);
       }
 
-      final String repoRoot = repo.getWorkTree().getAbsolutePath().replace('\\', '/') + "/";
+      phase.end();
+
+      Map<String, Map<String, String>> map = compute(repo, from, to, WORKING_TREE, timings);
+      lastTimings = timings;
+      lastComputed = map;
+      lastRefs = fromRef + ".." + toRef;
+      return map;
+
+    } catch (IOException ex) {
+      throw new RuntimeException("Failed to build change map via JGit: " + ex.getMessage(), ex);
+    }
+  }
+
+  // For the change-map service: the map of two commits of an open repository, with TO's own
+  // tree as the current side instead of the working tree. Leaves latest() alone.
+  static Map<String, Map<String, String>> buildAtCommits(Repository repo, ObjectId from, ObjectId to, ChangeMapTimings timings) throws IOException {
+    return compute(repo, from, to, new TreeFiles(repo, to), timings);
+  }
+
+  // Map handed in from elsewhere (the change-map service) becomes latest() for these refs
+  static void publish(String fromRef, String toRef, Map<String, Map<String, String>> map) {
+    lastTimings = null;
+    lastComputed = map;
+    lastRefs = fromRef + ".." + toRef;
+  }
+
+  // The map already built in this JVM for these refs, or null
+  public static Map<String, Map<String, String>> reusable(String fromRef, String toRef) {
+    return (fromRef + ".." + toRef).equals(lastRefs) ? lastComputed : null;
+  }
 
-      // 1) Parse current .feature files → scenario ranges/names
-      Map<String, List<String>> fileToLines = readAllFeatureFiles();
-      Map<String, Map<String, LineRange>> fileScenarioRanges = new HashMap<>();
-      Map<String, Set<String>> fileScenarioNames = new HashMap<>();
-      for (Map.Entry<String, List<String>> e : fileToLines.entrySet()) {
-        var ranges = computeScenarioRangesHeaderInclusive(e.getValue());
-        fileScenarioRanges.put(e.getKey(), ranges);
-        fileScenarioNames.put(e.getKey(), ranges.keySet());
+  private static Map<String, Map<String, String>> compute(Repository repo, ObjectId from, ObjectId to,
+                                                          CurrentFiles current, ChangeMapTimings timings) throws IOException {
+    final String repoRoot = repo.isBare() ? "" : repo.getWorkTree().getAbsolutePath().replace('\\', '/') + "/";
+
+    // 1) Diff entries of all feature roots in one tree walk (OR of the roots' directories),
+    //    by module root; a file renamed from one module to another counts for both
+    ChangeMapTimings.Phase phase = timings.begin("diff-entries");
+    List<DiffEntry> diffEntries = new ArrayList<>();
+    Map<String, List<DiffEntry>> diffsByModule = new TreeMap<>();
+    for (DiffEntry de : diffTree(repo, from, to, rootsFilter())) {
+      String oldRoot = de.getChangeType() == DiffEntry.ChangeType.ADD ? null : ROOTS.rootOf(de.getOldPath());
+      String newRoot = de.getChangeType() == DiffEntry.ChangeType.DELETE ? null : ROOTS.rootOf(de.getNewPath());
+      if (oldRoot == null && newRoot == null) continue;
+      diffEntries.add(de);
+      if (newRoot != null) diffsByModule.computeIfAbsent(newRoot, k -> new ArrayList<>()).add(de);
+      if (oldRoot != null && !oldRoot.equals(newRoot)) diffsByModule.computeIfAbsent(oldRoot, k -> new ArrayList<>()).add(de);
+    }
+    phase.add(diffEntries.size(), 0, 0, 0).end();
+
+    // 2) Glue-code edits: the step definitions/hooks whose scenarios are CHANGED in any module
+    phase = timings.begin("glue-diff");
+    StepImpactAnalyzer.Impact impact = StepImpactAnalyzer.analyze(repo, from, to, repoRoot, GLUE_ROOTS);
+    phase.add(0, impact.expressions.size(), 0, impact.methods.size()).end();
+
+    // 3) Modules to attribute: those with feature diffs, or all of them when glue changed.
+    //    The others only list their scenarios as UNCHANGED (names only, nothing read at FROM).
+    phase = timings.begin("modules");
+    Set<String> modules = new TreeSet<>(current.modules());
+    modules.addAll(diffsByModule.keySet());
+    Set<String> attributed = impact.isEmpty() ? diffsByModule.keySet() : modules;
+    List<ModuleChanges> done = inParallel(modules, module -> {
+      ModuleChanges m = new ModuleChanges(module, diffsByModule.getOrDefault(module, Collections.emptyList()), timings);
+      return attributed.contains(module) ? m.build(repo, from, repoRoot, current, impact) : m.unchanged(current);
+    });
+
+    Map<String, Map<String, String>> result = new LinkedHashMap<>();
+    Map<String, FeatureModel> fileModels = new LinkedHashMap<>();
+    Map<String, FeatureModel> goneFrom = new LinkedHashMap<>();
+    Map<String, Map<String, ScenarioMoveIndex.Move>> moves = new LinkedHashMap<>();
+    for (ModuleChanges m : done) {
+      result.putAll(m.result);
+      fileModels.putAll(m.fileModels);
+      goneFrom.putAll(m.goneFrom);
+      moves.putAll(m.renames);
+    }
+    phase.add(modules.size(), result.values().stream().mapToInt(Map::size).sum(), 0, 0).end();
+    for (ModuleChanges m : done) timings.merge(m.timings);
+
+    // 10) MOVED: NEW instances whose body matches a FROM scenario gone from its old file (and
+    //     not already carried over by a rename)
+    phase = timings.begin("moves");
+    for (Map.Entry<String, Map<String, ScenarioMoveIndex.Move>> e
+        : detectMoves(repo, from, diffEntries, fileModels, result, moves).entrySet()) {
+      moves.computeIfAbsent(e.getKey(), k -> new LinkedHashMap<>()).putAll(e.getValue());
+    }
+    for (Map.Entry<String, Map<String, ScenarioMoveIndex.Move>> e : moves.entrySet()) {
+      for (String instance : e.getValue().keySet()) result.get(e.getKey()).put(instance, "MOVED");
+      phase.add(1, e.getValue().size(), 0, 0);
+    }
+    phase.end();
+
+    // 11) DELETED: FROM instances gone from their file (or with their file) that did not move
+    //     or get carried over by a rename. Keyed under the old file's key, so a deleted file
+    //     still has its entry.
+    phase = timings.begin("deleted");
+    Set<String> moveOrigins = new HashSet<>();
+    for (Map<String, ScenarioMoveIndex.Move> m : moves.values()) {
+      for (ScenarioMoveIndex.Move mv : m.values()) moveOrigins.add(mv.fromFeature + "\n" + mv.fromScenario);
+    }
+    for (Map.Entry<String, FeatureModel> e : goneFrom.entrySet()) {
+      String featureName = ROOTS.key(e.getKey());
+      Map<String, String> scenarios = result.computeIfAbsent(featureName, k -> new LinkedHashMap<>());
+      int deleted = 0;
+      for (String instance : e.getValue().instancesByName().keySet()) {
+        if (scenarios.containsKey(instance) || moveOrigins.contains(featureName + "\n" + instance)) continue;
+        scenarios.put(instance, "DELETED");
+        deleted++;
       }
+      if (scenarios.isEmpty()) result.remove(featureName);
+      phase.add(1, deleted, 0, 0);
+    }
+    phase.end();
 
-      // 2) Diff entries for CHANGED and brand-new files
-      List<DiffEntry> diffEntries = diffTree(repo, from, to, repoRoot, FEATURES_ROOT);
+    timings.finish();
+    return result;
+  }
+
+  // Phases 1-9 for the files of one module root; runs on its own thread with its own timings
+  private static final class ModuleChanges {
+    final String module;
+    final List<DiffEntry> diffEntries;
+    final ChangeMapTimings timings;
+    final Map<String, Map<String, String>> result = new LinkedHashMap<>();
+    final Map<String, FeatureModel> fileModels = new LinkedHashMap<>();
+    // Previous model of each file whose scenarios may be gone: current files, and files deleted
+    // or renamed away from this module
+    final Map<String, FeatureModel> goneFrom = new LinkedHashMap<>();
+    // Instances a renamed file carried over under a new key: MOVED, with the old key as origin
+    final Map<String, Map<String, ScenarioMoveIndex.Move>> renames = new LinkedHashMap<>();
+
+    ModuleChanges(String module, List<DiffEntry> diffEntries, ChangeMapTimings parent) {
+      this.module = module;
+      this.diffEntries = diffEntries;
+      this.timings = parent.child();
+    }
 
+    // A module without feature diffs or glue impact: every current scenario UNCHANGED
+    ModuleChanges unchanged(CurrentFiles current) throws IOException {
+      ChangeMapTimings.Phase phase = timings.begin("unchanged");
+      for (String key : current.files(module)) {
+        Map<String, String> scenarioMap = new LinkedHashMap<>();
+        for (String scenario : current.model(key).instancesByName().keySet()) {
+          scenarioMap.put(scenario, "UNCHANGED");
+        }
+        result.put(ROOTS.key(key), scenarioMap);
+        phase.add(1, scenarioMap.size(), 0, 0);
+      }
+      phase.end();
+      return this;
+    }
+
+    ModuleChanges build(Repository repo, ObjectId from, String repoRoot, CurrentFiles current,
+                        StepImpactAnalyzer.Impact impact) throws IOException {
+      // 1) Parse current .feature files → scenario regions/instance names. Outlines are keyed
+      //    per Examples row ("<expanded name> [ex n]"), as the sync keys its Tests.
+      ChangeMapTimings.Phase phase = timings.begin("parse");
+      Map<String, List<FeatureModel.Region>> fileRegions = new HashMap<>();
+      Map<String, Set<String>> fileScenarioNames = new LinkedHashMap<>();
+      for (String key : current.files(module)) {
+        long fileStart = System.nanoTime();
+        FeatureModel model = current.model(key);
+        List<FeatureModel.Region> regions = new ArrayList<>();
+        for (FeatureModel.Scenario sc : model.scenarios) regions.addAll(sc.regions());
+        Set<String> names = model.instancesByName().keySet();
+        fileModels.put(key, model);
+        fileRegions.put(key, regions);
+        fileScenarioNames.put(key, names);
+        phase.add(1, names.size(), model.bytes, 0);
+        timings.file("parse", key, model.bytes, 0, names.size(), fileStart);
+      }
+      phase.end();
+
+      // 2) Brand-new files among this module's diff entries
+      phase = timings.begin("added-files");
       Set<String> addedFeaturePaths = new HashSet<>();
       for (DiffEntry de : diffEntries) {
         if (de.getChangeType() == DiffEntry.ChangeType.ADD) {
@@ -77,69 +269,128 @@ public class FeatureScenarioChangeMap {
           }
         }
       }
+      phase.add(diffEntries.size(), 0, 0, 0).end();
 
       // 3) Initialize all current scenarios to UNCHANGED
-      Map<String, Map<String, String>> result = new LinkedHashMap<>();
+      phase = timings.begin("init");
       for (String featurePath : fileScenarioNames.keySet()) {
-        String featureName = Paths.get(featurePath).getFileName().toString();
         Map<String, String> scenarioMap = new LinkedHashMap<>();
         for (String scenario : fileScenarioNames.get(featurePath)) {
           scenarioMap.put(scenario, "UNCHANGED");
         }
-        result.put(featureName, scenarioMap);
+        result.put(ROOTS.key(featurePath), scenarioMap);
       }
 
-      // 4) Previous scenario-name sets for ALL current files
-      Map<String, Set<String>> previousScenarioNamesByFile = previousScenarioNamesForAll(
-          repo, from, repoRoot, fileScenarioNames.keySet()
+      phase.add(result.size(), result.values().stream().mapToInt(Map::size).sum(), 0, 0).end();
+
+      // 4) Previous models (and so instance names) for ALL current files
+      phase = timings.begin("previous-names");
+      Map<String, FeatureModel> previousModelsByFile = previousModelsForAll(
+          repo, from, repoRoot, fileScenarioNames.keySet(), timings, phase
       );
+      // A renamed file is compared with its old path at FROM, not treated as a file without history
+      Map<String, String> renamedFrom = new HashMap<>();
+      for (DiffEntry de : diffEntries) {
+        if (de.getChangeType() != DiffEntry.ChangeType.RENAME || !module.equals(ROOTS.rootOf(de.getNewPath()))) continue;
+        String currentKey = resolveCurrentFeatureKey(fileScenarioNames.keySet(), normalize(de.getNewPath()));
+        if (currentKey == null || !de.getOldPath().endsWith(".feature")) continue;
+        previousModelsByFile.put(currentKey, modelAt(repo, from, de.getOldPath()));
+        renamedFrom.put(currentKey, normalize(de.getOldPath()));
+      }
+      phase.end();
 
       // 5) Brand-new feature files → CHANGED for all scenarios (policy)
+      phase = timings.begin("new-files");
       for (String addedPath : addedFeaturePaths) {
         Set<String> currentScenarios = fileScenarioNames.getOrDefault(addedPath, Collections.emptySet());
         for (String now : currentScenarios) {
           mark(result, addedPath, now, "NEW");
         }
+        phase.add(1, currentScenarios.size(), 0, 0);
       }
+      phase.end();
 
-      // 6) CHANGED via hunk overlap (edits within ranges)
+      // 6) CHANGED via hunk overlap (edits within regions)
+      phase = timings.begin("hunk-overlap");
       try (DiffFormatter df = new DiffFormatter(new ByteArrayOutputStream())) {
         df.setRepository(repo);
         df.setDetectRenames(true);
 
         for (DiffEntry de : diffEntries) {
           String path = normalize(pathFromDiff(de));
-          if (!path.endsWith(".feature")) continue;
+          if (!path.endsWith(".feature") || !module.equals(ROOTS.rootOf(path))) continue;
 
           String currentKey = resolveCurrentFeatureKey(fileScenarioNames.keySet(), path);
           if (currentKey == null) continue;
 
+          long fileStart = System.nanoTime();
           EditList edits = df.toFileHeader(de).toEditList();
           List<DiffHunk> hunks = toBufferedHunks(edits, HUNK_BUFFER_LINES);
 
-          Map<String, LineRange> ranges = fileScenarioRanges.getOrDefault(currentKey, Collections.emptyMap());
+          List<FeatureModel.Region> regions = fileRegions.getOrDefault(currentKey, Collections.emptyList());
+          Set<String> touched = new HashSet<>();
           for (DiffHunk h : hunks) {
-            for (Map.Entry<String, LineRange> ent : ranges.entrySet()) {
-              if (ent.getValue().overlaps(h.addStart, h.addEnd)) {
-                mark(result, currentKey, ent.getKey(), "CHANGED");
+            for (FeatureModel.Region r : regions) {
+              if (h.overlaps(r.start, r.end)) {
+                for (FeatureModel.Instance in : r.instances) {
+                  mark(result, currentKey, in.name, "CHANGED");
+                  touched.add(in.name);
+                }
               }
             }
           }
+          phase.add(1, touched.size(), 0, hunks.size());
+          timings.file("hunk-overlap", currentKey, 0, hunks.size(), touched.size(), fileStart);
         }
       }
+      phase.end();
 
-      // 7) NEW in existing files: current − previous
+      // 7) CHANGED Examples rows: an outline instance whose expanded steps differ from the
+      //    same-numbered instance before (edited row, or rows shifted by an insert/delete above)
+      phase = timings.begin("example-rows");
+      for (DiffEntry de : diffEntries) {
+        String path = normalize(pathFromDiff(de));
+        if (!path.endsWith(".feature") || !module.equals(ROOTS.rootOf(path))) continue;
+        String currentKey = resolveCurrentFeatureKey(fileScenarioNames.keySet(), path);
+        if (currentKey == null || addedFeaturePaths.contains(currentKey)) continue;
+        FeatureModel previous = previousModelsByFile.get(currentKey);
+        if (previous == null) continue;
+
+        long fileStart = System.nanoTime();
+        List<String> changed = fileModels.get(currentKey).changedInstances(previous);
+        for (String instance : changed) {
+          mark(result, currentKey, instance, "CHANGED");
+        }
+        phase.add(1, changed.size(), 0, 0);
+        timings.file("example-rows", currentKey, 0, 0, changed.size(), fileStart);
+      }
+      phase.end();
+
+      // 8) CHANGED via glue code: scenarios whose steps match an edited step definition
+      phase = timings.begin("step-impact");
+      if (!impact.isEmpty()) {
+        for (String featurePath : fileScenarioNames.keySet()) {
+          long fileStart = System.nanoTime();
+          Set<String> affected = impact.affectedScenarios(fileModels.get(featurePath));
+          for (String scenario : affected) {
+            mark(result, featurePath, scenario, "CHANGED");
+          }
+          phase.add(1, affected.size(), 0, 0);
+          timings.file("step-impact", featurePath, 0, 0, affected.size(), fileStart);
+        }
+      }
+      phase.end();
+
+      // 9) NEW in existing files: current − previous
+      phase = timings.begin("set-diff");
       for (String currentPath : fileScenarioNames.keySet()) {
         if (addedFeaturePaths.contains(currentPath)) {
           continue; // brand-new file kept as CHANGED-only
         }
-        Set<String> prevNames = previousScenarioNamesByFile.get(currentPath);
+        FeatureModel previous = previousModelsByFile.get(currentPath);
+        Set<String> prevNames = previous == null ? null : previous.instancesByName().keySet();
         Set<String> currentNames = fileScenarioNames.getOrDefault(currentPath, Collections.emptySet());
 
-        // Debug (optional)
-        // System.out.println("Previous names: " + prevNames);
-        // System.out.println("Current names: " + currentNames);
-
         if (prevNames == null) {
           // Defensive: treat as CHANGED to avoid mislabeling as NEW
           for (String now : currentNames) {
@@ -155,16 +406,212 @@ public class FeatureScenarioChangeMap {
         }
       }
 
-      lastComputed = result;
-      return result;
+      phase.add(fileScenarioNames.size(), 0, 0, 0).end();
+
+      // 9b) MOVED by rename: instances a file renamed to another key kept (by name). Edited
+      //     ones are moves that are not identical, so their Test is relabelled and re-uploaded.
+      phase = timings.begin("renames");
+      for (Map.Entry<String, String> r : renamedFrom.entrySet()) {
+        String newKey = ROOTS.key(r.getKey());
+        String oldKey = ROOTS.key(r.getValue());
+        FeatureModel previous = previousModelsByFile.get(r.getKey());
+        if (previous == null || newKey.equals(oldKey)) continue;
+        Map<String, FeatureModel.Instance> before = previous.instancesByName();
+        Map<String, ScenarioMoveIndex.Move> carried = new LinkedHashMap<>();
+        for (FeatureModel.Instance in : fileModels.get(r.getKey()).instancesByName().values()) {
+          FeatureModel.Instance old = before.get(in.name);
+          if (old == null) continue;
+          carried.put(in.name, new ScenarioMoveIndex.Move(oldKey, in.name, old.gherkin.equals(in.gherkin)));
+          result.get(newKey).put(in.name, "MOVED");
+        }
+        if (!carried.isEmpty()) renames.put(newKey, carried);
+        phase.add(1, carried.size(), 0, 0);
+      }
+      phase.end();
 
-    } catch (IOException ex) {
-      throw new RuntimeException("Failed to build change map via JGit: " + ex.getMessage(), ex);
+      for (String currentPath : fileScenarioNames.keySet()) {
+        FeatureModel previous = previousModelsByFile.get(currentPath);
+        boolean renamedAway = renamedFrom.containsKey(currentPath)
+            && !ROOTS.key(renamedFrom.get(currentPath)).equals(ROOTS.key(currentPath));
+        // A renamed file's lost scenarios are reported under its old key, from the entry below
+        if (previous != null && !renamedAway) goneFrom.put(currentPath, previous);
+      }
+      for (DiffEntry de : diffEntries) {
+        boolean gone = de.getChangeType() == DiffEntry.ChangeType.DELETE || de.getChangeType() == DiffEntry.ChangeType.RENAME;
+        if (!gone || !de.getOldPath().endsWith(".feature") || !module.equals(ROOTS.rootOf(de.getOldPath()))) continue;
+        FeatureModel previous = modelAt(repo, from, de.getOldPath());
+        if (previous != null) goneFrom.put(normalize(de.getOldPath()), previous);
+      }
+      return this;
     }
   }
 
+  // Where the current side's feature files come from: the working tree, or the TO commit's tree
+  // when there is no checkout of it (the change-map service)
+  private interface CurrentFiles {
+    Set<String> modules() throws IOException;
+    List<String> files(String module) throws IOException;
+    FeatureModel model(String path) throws IOException;
+  }
+
+  private static final CurrentFiles WORKING_TREE = new CurrentFiles() {
+    @Override
+    public Set<String> modules() throws IOException {
+      return ROOTS.discover().keySet();
+    }
+
+    @Override
+    public List<String> files(String module) throws IOException {
+      List<String> out = new ArrayList<>();
+      for (Path p : ROOTS.files(module)) out.add(normalize(p.toString()));
+      return out;
+    }
+
+    @Override
+    public FeatureModel model(String path) throws IOException {
+      return FeatureModel.of(Files.readAllBytes(Paths.get(path)));
+    }
+  };
+
+  // Listed with one walk of the commit's tree; models come from the blob-id cache
+  private static final class TreeFiles implements CurrentFiles {
+    private final Repository repo;
+    private final Map<String, Map<String, ObjectId>> byModule = new TreeMap<>();
+
+    TreeFiles(Repository repo, ObjectId commit) throws IOException {
+      this.repo = repo;
+      try (RevWalk rw = new RevWalk(repo); TreeWalk tw = new TreeWalk(repo)) {
+        tw.addTree(rw.parseCommit(commit).getTree());
+        tw.setRecursive(true);
+        tw.setFilter(rootsFilter());
+        while (tw.next()) {
+          String path = tw.getPathString();
+          if (ROOTS.contains(path)) {
+            byModule.computeIfAbsent(ROOTS.rootOf(path), k -> new LinkedHashMap<>()).put(path, tw.getObjectId(0));
+          }
+        }
+      }
+    }
+
+    @Override
+    public Set<String> modules() {
+      return byModule.keySet();
+    }
+
+    @Override
+    public List<String> files(String module) {
+      return new ArrayList<>(byModule.getOrDefault(module, Collections.emptyMap()).keySet());
+    }
+
+    @Override
+    public FeatureModel model(String path) throws IOException {
+      ObjectId blob = byModule.getOrDefault(ROOTS.rootOf(path), Collections.emptyMap()).get(path);
+      if (blob == null) throw new NoSuchFileException(path);
+      return FeatureModel.of(blob, () -> repo.open(blob, Constants.OBJ_BLOB).getBytes());
+    }
+  }
+
+  private interface ModuleTask<T> {
+    T run(String module) throws IOException;
+  }
+
+  // Runs task for each module on up to CHANGE_MAP_THREADS threads; results in module order
+  private static <T> List<T> inParallel(Collection<String> modules, ModuleTask<T> task) throws IOException {
+    List<T> out = new ArrayList<>();
+    if (modules.size() <= 1 || MODULE_THREADS <= 1) {
+      for (String m : modules) out.add(task.run(m));
+      return out;
+    }
+    AtomicInteger n = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(MODULE_THREADS, modules.size()), r -> {
+      Thread t = new Thread(r, "change-map-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    try {
+      List<Future<T>> futures = new ArrayList<>();
+      for (String m : modules) futures.add(pool.submit(() -> task.run(m)));
+      for (Future<T> f : futures) out.add(f.get());
+      return out;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while building the change map", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+      if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+      throw new IOException(ex.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // Origins can only come from FROM files the diff touched: an untouched file still has all its
+  // scenarios under the same key
+  // carried: moves already known from renames; their origins are not offered again
+  private static Map<String, Map<String, ScenarioMoveIndex.Move>> detectMoves(
+      Repository repo, ObjectId from, List<DiffEntry> diffEntries, Map<String, FeatureModel> fileModels,
+      Map<String, Map<String, String>> result,
+      Map<String, Map<String, ScenarioMoveIndex.Move>> carried) throws IOException {
+    Map<String, List<String>> newInstances = new LinkedHashMap<>();
+    for (Map.Entry<String, Map<String, String>> f : result.entrySet()) {
+      for (Map.Entry<String, String> sc : f.getValue().entrySet()) {
+        if ("NEW".equals(sc.getValue())) newInstances.computeIfAbsent(f.getKey(), k -> new ArrayList<>()).add(sc.getKey());
+      }
+    }
+    if (newInstances.isEmpty()) return Collections.emptyMap();
+
+    Set<String> oldPaths = new LinkedHashSet<>();
+    for (DiffEntry de : diffEntries) {
+      if (de.getChangeType() != DiffEntry.ChangeType.ADD && ROOTS.contains(de.getOldPath())) oldPaths.add(de.getOldPath());
+    }
+    if (oldPaths.isEmpty()) return Collections.emptyMap();
+
+    Map<String, FeatureModel> modelsByName = new HashMap<>();
+    Map<String, Set<String>> current = new HashMap<>();
+    for (Map.Entry<String, FeatureModel> e : fileModels.entrySet()) {
+      String featureName = ROOTS.key(e.getKey());
+      modelsByName.put(featureName, e.getValue());
+      current.put(featureName, new HashSet<>(result.getOrDefault(featureName, Collections.emptyMap()).keySet()));
+    }
+    for (Map<String, ScenarioMoveIndex.Move> m : carried.values()) {
+      for (ScenarioMoveIndex.Move mv : m.values()) {
+        current.computeIfAbsent(mv.fromFeature, k -> new HashSet<>()).add(mv.fromScenario);
+      }
+    }
+    return ScenarioMoveIndex.build(repo, from, PathFilterGroup.createFromStrings(oldPaths), current)
+        .match(modelsByName, newInstances);
+  }
+
+  public static FeatureRoots featureRoots() {
+    return ROOTS;
+  }
+
+  // The single features directory, or the working directory when features live under several
+  // roots (paths relative to it then say which module a file belongs to)
+  public static Path featuresRoot() {
+    return ROOTS.namespaced() ? Paths.get("") : Paths.get(ROOTS.patterns().get(0));
+  }
+
+  // Current .feature files whose scenarios are not all UNCHANGED in the given map
+  public static List<Path> changedFeatureFiles(Map<String, Map<String, String>> changeMap) throws IOException {
+    List<Path> out = new ArrayList<>();
+    for (List<Path> files : ROOTS.discover().values()) {
+      for (Path path : files) {
+        Map<String, String> scenarios = changeMap.get(ROOTS.key(path.toString()));
+        if (scenarios != null && scenarios.values().stream().anyMatch(s -> !"UNCHANGED".equals(s))) {
+          out.add(path);
+        }
+      }
+    }
+    return out;
+  }
+
   // ---------- JGit helpers ----------
-  private static List<DiffEntry> diffTree(Repository repo, ObjectId from, ObjectId to, String repoRoot, String pathFilter) throws IOException {
+  static List<DiffEntry> diffTree(Repository repo, ObjectId from, ObjectId to, String repoRoot, String pathFilter) throws IOException {
+    return diffTree(repo, from, to, PathFilter.create(repoRelative(pathFilter, repoRoot)));
+  }
+
+  static List<DiffEntry> diffTree(Repository repo, ObjectId from, ObjectId to, TreeFilter pathFilter) throws IOException {
     try (RevWalk rw = new RevWalk(repo)) {
       RevCommit fromCommit = rw.parseCommit(from);
       RevCommit toCommit   = rw.parseCommit(to);
@@ -174,13 +621,19 @@ public class FeatureScenarioChangeMap {
       try (DiffFormatter df = new DiffFormatter(new ByteArrayOutputStream())) {
         df.setRepository(repo);
         df.setDetectRenames(true);
-        String repoRelFilter = repoRelative(pathFilter, repoRoot);
-        df.setPathFilter(org.eclipse.jgit.treewalk.filter.PathFilter.create(repoRelFilter));
+        df.setPathFilter(pathFilter);
         return df.scan(oldTree, newTree);
       }
     }
   }
 
+  // One filter for all feature roots: the OR of their literal directories (the globs are
+  // checked on the paths it lets through)
+  static TreeFilter rootsFilter() {
+    List<String> prefixes = ROOTS.prefixes();
+    return prefixes.contains("") ? TreeFilter.ALL : PathFilterGroup.createFromStrings(prefixes);
+  }
+
   private static AbstractTreeIterator treeIter(Repository repo, ObjectId treeId) throws IOException {
     CanonicalTreeParser p = new CanonicalTreeParser();
     try (var reader = repo.newObjectReader()) {
@@ -189,51 +642,24 @@ public class FeatureScenarioChangeMap {
     return p;
   }
 
-  private static String pathFromDiff(DiffEntry de) {
+  static String pathFromDiff(DiffEntry de) {
     String raw = de.getNewPath().equals(DiffEntry.DEV_NULL) ? de.getOldPath() : de.getNewPath();
     return normalize(raw);
   }
 
   // ---------- Parsing helpers ----------
-  private static Map<String, List<String>> readAllFeatureFiles() throws IOException {
-    Map<String, List<String>> out = new LinkedHashMap<>();
-    Path root = Paths.get(FEATURES_ROOT);
-    if (!Files.exists(root)) return out;
-    try (var stream = Files.walk(root)) {
-      for (Path p : (Iterable<Path>) stream::iterator) {
-        if (Files.isRegularFile(p) && p.toString().endsWith(".feature")) {
-          out.put(normalize(p.toString()), Files.readAllLines(p));
-        }
+  // Current .feature files of all roots by normalized path; models come from FeatureModel's
+  // blob-id cache
+  static Map<String, FeatureModel> readAllFeatureModels() throws IOException {
+    Map<String, FeatureModel> out = new LinkedHashMap<>();
+    for (List<Path> files : ROOTS.discover().values()) {
+      for (Path p : files) {
+        out.put(normalize(p.toString()), FeatureModel.of(Files.readAllBytes(p)));
       }
     }
     return out;
   }
 
-  private static Map<String, LineRange> computeScenarioRangesHeaderInclusive(List<String> lines) {
-    Map<String, LineRange> ranges = new LinkedHashMap<>();
-    String current = null;
-    int start = -1; // 1-based inclusive
-    for (int i = 0; i < lines.size(); i++) {
-      String t = lines.get(i).trim();
-      if (startsWithScenario(t)) {
-        if (current != null && start >= 1) {
-          ranges.put(current, new LineRange(start, i + 1)); // end exclusive
-        }
-        String name = t.replaceFirst("(?i)Scenario\\s*(Outline)?:\\s*", "").trim();
-        current = name;
-        start = i + 1;
-      }
-    }
-    if (current != null && start >= 1) {
-      ranges.put(current, new LineRange(start, lines.size() + 1));
-    }
-    return ranges;
-  }
-
-  private static boolean startsWithScenario(String t) {
-    return t.regionMatches(true, 0, "Scenario Outline:", 0, 17) || t.regionMatches(true, 0, "Scenario:", 0, 9);
-  }
-
   private static List<DiffHunk> toBufferedHunks(EditList edits, int buffer) {
     List<DiffHunk> out = new ArrayList<>();
     for (Edit e : edits) {
@@ -248,36 +674,46 @@ public class FeatureScenarioChangeMap {
     return out;
   }
 
-  private static Map<String, Set<String>> previousScenarioNamesForAll(
-      Repository repo, ObjectId from, String repoRoot, Set<String> currentFeaturePaths) throws IOException {
+  // Model of each current file at FROM; null when the file did not exist there
+  private static Map<String, FeatureModel> previousModelsForAll(
+      Repository repo, ObjectId from, String repoRoot, Set<String> currentFeaturePaths,
+      ChangeMapTimings timings, ChangeMapTimings.Phase phase) throws IOException {
 
-    Map<String, Set<String>> out = new HashMap<>();
+    Map<String, FeatureModel> out = new HashMap<>();
     for (String currentPath : currentFeaturePaths) {
       String repoPath = repoRelative(currentPath, repoRoot);
-      if (repoPath == null) { out.put(currentPath, Collections.emptySet()); continue; }
-      byte[] bytes = readBlobAt(repo, from, repoPath);
-      if (bytes == null) {
-        out.put(currentPath, null);
-        continue;
-      }
-      List<String> lines = Arrays.asList(new String(bytes).split("\\R", -1));
-      out.put(currentPath, computeScenarioRangesHeaderInclusive(lines).keySet());
+      long fileStart = System.nanoTime();
+      FeatureModel model = repoPath == null ? null : modelAt(repo, from, repoPath);
+      out.put(currentPath, model);
+      if (model == null) continue;
+      int instances = model.instancesByName().size();
+      phase.add(1, instances, model.bytes, 0);
+      timings.file("previous-names", currentPath, model.bytes, 0, instances, fileStart);
     }
     return out;
   }
 
-  private static byte[] readBlobAt(Repository repo, ObjectId commitId, String repoRelativePath) throws IOException {
+  static byte[] readBlobAt(Repository repo, ObjectId commitId, String repoRelativePath) throws IOException {
+    ObjectId blob = blobIdAt(repo, commitId, repoRelativePath);
+    return blob == null ? null : repo.open(blob, Constants.OBJ_BLOB).getBytes();
+  }
+
+  // Model of a file at a commit; the blob is only read when its id is not cached yet
+  static FeatureModel modelAt(Repository repo, ObjectId commitId, String repoRelativePath) throws IOException {
+    ObjectId blob = blobIdAt(repo, commitId, repoRelativePath);
+    return blob == null ? null : FeatureModel.of(blob, () -> repo.open(blob, Constants.OBJ_BLOB).getBytes());
+  }
+
+  private static ObjectId blobIdAt(Repository repo, ObjectId commitId, String repoRelativePath) throws IOException {
     try (RevWalk rw = new RevWalk(repo)) {
       RevCommit commit = rw.parseCommit(commitId);
       var tree = commit.getTree();
-      try (var treeWalk = new org.eclipse.jgit.treewalk.TreeWalk(repo)) {
+      try (var treeWalk = new TreeWalk(repo)) {
         treeWalk.addTree(tree);
         treeWalk.setRecursive(true);
-        treeWalk.setFilter(org.eclipse.jgit.treewalk.filter.PathFilter.create(repoRelativePath));
+        treeWalk.setFilter(PathFilter.create(repoRelativePath));
         if (!treeWalk.next()) return null;
-        var objectId = treeWalk.getObjectId(0);
-        org.eclipse.jgit.lib.ObjectLoader loader = repo.open(objectId, Constants.OBJ_BLOB);
-        return loader.getBytes();
+        return treeWalk.getObjectId(0);
       }
     }
   }
@@ -296,7 +732,7 @@ public class FeatureScenarioChangeMap {
   }
 
   private static void mark(Map<String, Map<String, String>> result, String featurePath, String scenarioName, String status) {
-    String featureName = Paths.get(featurePath).getFileName().toString();
+    String featureName = ROOTS.key(featurePath);
     Map<String, String> scenarioMap = result.computeIfAbsent(featureName, k -> new LinkedHashMap<>());
     String cur = scenarioMap.get(scenarioName);
 
@@ -324,7 +760,7 @@ public class FeatureScenarioChangeMap {
     return p == null ? null : p.replace('\\', '/');
   }
 
-  private static String repoRelative(String absOrRelPath, String repoRoot) {
+  static String repoRelative(String absOrRelPath, String repoRoot) {
     if (absOrRelPath == null) return null;
     String norm = normalize(absOrRelPath);
     if (norm.startsWith(repoRoot)) return norm.substring(repoRoot.length());
@@ -336,16 +772,10 @@ public class FeatureScenarioChangeMap {
     return (v == null || v.isBlank()) ? def : v;
   }
 
-  private static final class LineRange {
-    final int start; // inclusive 1-based
-    final int end;   // exclusive
-    LineRange(int s, int e) { this.start = s; this.end = e; }
-    boolean overlaps(int s, int e) { return this.start < e && s < this.end; }
-  }
-
   private static final class DiffHunk {
     final int addStart; // 1-based
     final int addEnd;   // exclusive
     DiffHunk(int s, int e) { this.addStart = s; this.addEnd = e; }
+    boolean overlaps(int s, int e) { return addStart < e && s < addEnd; }
   }
 }
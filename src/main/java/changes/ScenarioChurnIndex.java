@@ -0,0 +1,302 @@
+package changes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import model.FeatureModel;
+import util.FeatureRoots;
+
+// How often each scenario instance changed, from one walk of the history that touches the
+// feature roots (oldest first, merges skipped, each commit diffed against its previous commit on
+// that path). A scenario changes in a commit that adds it or alters its expanded steps or tags.
+// Blob pairs are diffed once per run. Historic models are parsed outside FeatureModel's blob-id
+// cache and only kept for the commit being walked, plus each path's newest one (the old side of
+// that path's next change), so a long walk does not fill the shared cache.
+//
+// The index is kept as NDJSON: a header line with the last indexed commit, then one line per
+// scenario with its change times. update() only walks commits after that head (a full rebuild
+// when the head is no longer an ancestor, e.g. after a force-push) and drops changes older than
+// the window. Keys match the change map: feature key and instance name.
+public final class ScenarioChurnIndex {
+
+  static final int VERSION = 1;
+  private static final FeatureRoots ROOTS = FeatureScenarioChangeMap.featureRoots();
+
+  public static final class Entry {
+    public final String feature;
+    public final String scenario;
+    private final List<Integer> times = new ArrayList<>();   // commit times, epoch seconds, ascending
+    private String lastCommit;
+
+    Entry(String feature, String scenario) {
+      this.feature = feature;
+      this.scenario = scenario;
+    }
+
+    public int churn() { return times.size(); }
+    public String lastCommit() { return lastCommit; }
+    public long lastTime() { return times.isEmpty() ? 0 : times.get(times.size() - 1); }
+
+    // Changes at or after sinceEpochSec, for a window shorter than the index's
+    public int churnSince(long sinceEpochSec) {
+      int n = 0;
+      for (int t : times) if (t >= sinceEpochSec) n++;
+      return n;
+    }
+  }
+
+  private final String featuresRoot;   // FeatureRoots spec the index was built for
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  private final Map<String, Set<String>> changedByBlobPair = new HashMap<>();
+  private final Map<ObjectId, FeatureModel> commitModels = new HashMap<>();
+  private final Map<String, FeatureModel> newestByPath = new HashMap<>();
+  private String head;
+  private int walked;
+
+  private ScenarioChurnIndex(String featuresRoot) {
+    this.featuresRoot = featuresRoot;
+  }
+
+  public String head() { return head; }
+  // Commits processed by the last update
+  public int commitsWalked() { return walked; }
+  public Collection<Entry> entries() { return Collections.unmodifiableCollection(entries.values()); }
+
+  // Loads the index at file (a fresh one when it is missing or for other feature roots),
+  // brings it up to toRef and writes it back; returns it
+  public static ScenarioChurnIndex update(Path file, String toRef, int windowDays) throws IOException {
+    try (Repository repo = new FileRepositoryBuilder().setMustExist(true).findGitDir().build()) {
+      ScenarioChurnIndex index = load(file, FeatureScenarioChangeMap.featureRoots().spec());
+      ObjectId to = repo.resolve(toRef);
+      if (to == null) throw new IllegalArgumentException("Cannot resolve ref: " + toRef);
+      index.update(repo, to, System.currentTimeMillis() / 1000 - windowDays * 86400L);
+      index.save(file);
+      return index;
+    }
+  }
+
+  // Returns the number of commits processed
+  int update(Repository repo, ObjectId to, long sinceEpochSec) throws IOException {
+    RevCommit from = null;
+    try (RevWalk check = new RevWalk(repo)) {
+      ObjectId h = head == null ? null : repo.resolve(head + "^{commit}");
+      if (h != null && h.equals(to)) {
+        prune(sinceEpochSec);
+        return walked = 0;
+      }
+      if (h != null && check.isMergedInto(check.parseCommit(h), check.parseCommit(to))) {
+        from = check.parseCommit(h);
+      } else if (head != null) {
+        entries.clear();   // history rewritten or head gone: rebuild
+      }
+    }
+
+    int commits = 0;
+    TreeFilter roots = FeatureScenarioChangeMap.rootsFilter();
+    try (RevWalk rw = new RevWalk(repo);
+         DiffFormatter df = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+      df.setRepository(repo);
+      df.setDetectRenames(true);
+      df.setPathFilter(roots);
+
+      rw.markStart(rw.parseCommit(to));
+      if (from != null) rw.markUninteresting(rw.parseCommit(from));
+      rw.setTreeFilter(AndTreeFilter.create(roots, TreeFilter.ANY_DIFF));
+      rw.setRevFilter(CommitTimeRevFilter.after(sinceEpochSec * 1000L));
+      rw.sort(RevSort.TOPO, true);
+      rw.sort(RevSort.REVERSE, true);
+
+      for (RevCommit c : rw) {
+        if (c.getParentCount() > 1) continue;
+        RevCommit parent = c.getParentCount() == 0 ? null : rw.parseCommit(c.getParent(0));
+        for (DiffEntry de : df.scan(parent == null ? null : parent.getTree(), c.getTree())) {
+          record(repo, de, c);
+        }
+        commitModels.clear();
+        commits++;
+      }
+    } finally {
+      commitModels.clear();
+      newestByPath.clear();
+    }
+    head = to.name();
+    prune(sinceEpochSec);
+    return walked = commits;
+  }
+
+  private void record(Repository repo, DiffEntry de, RevCommit c) throws IOException {
+    if (de.getChangeType() == DiffEntry.ChangeType.DELETE || !ROOTS.contains(de.getNewPath())) return;
+    String feature = ROOTS.key(de.getNewPath());
+    ObjectId newBlob = de.getNewId().toObjectId();
+    ObjectId oldBlob = de.getChangeType() == DiffEntry.ChangeType.ADD ? null : de.getOldId().toObjectId();
+
+    if (de.getChangeType() == DiffEntry.ChangeType.RENAME && !ROOTS.key(de.getOldPath()).equals(feature)) {
+      String oldFeature = ROOTS.key(de.getOldPath());
+      for (String scenario : model(repo, newBlob, de.getNewPath()).instancesByName().keySet()) {
+        Entry e = entries.remove(oldFeature + "\n" + scenario);
+        if (e != null) entries.putIfAbsent(feature + "\n" + scenario, moved(e, feature));
+      }
+    }
+
+    String pair = (oldBlob == null ? "" : oldBlob.name()) + ":" + newBlob.name();
+    Set<String> changed = changedByBlobPair.get(pair);
+    if (changed == null) {
+      changed = changedInstances(oldBlob == null ? null : model(repo, oldBlob, de.getOldPath()),
+          model(repo, newBlob, de.getNewPath()));
+      changedByBlobPair.put(pair, changed);
+    }
+    for (String scenario : changed) {
+      Entry e = entries.computeIfAbsent(feature + "\n" + scenario, k -> new Entry(feature, scenario));
+      e.times.add(c.getCommitTime());
+      e.lastCommit = c.name();
+    }
+  }
+
+  private static Set<String> changedInstances(FeatureModel before, FeatureModel after) {
+    Map<String, String> old = before == null ? Collections.emptyMap() : fingerprints(before);
+    Set<String> out = new HashSet<>();
+    for (Map.Entry<String, String> e : fingerprints(after).entrySet()) {
+      if (!e.getValue().equals(old.get(e.getKey()))) out.add(e.getKey());
+    }
+    return out;
+  }
+
+  private static Map<String, String> fingerprints(FeatureModel model) {
+    Map<String, String> out = new HashMap<>();
+    for (FeatureModel.Scenario sc : model.scenarios) {
+      for (FeatureModel.Instance in : sc.instances()) out.put(in.name, String.join(" ", sc.tags) + "\n" + in.gherkin);
+    }
+    return out;
+  }
+
+  private FeatureModel model(Repository repo, ObjectId blob, String path) throws IOException {
+    FeatureModel model = commitModels.get(blob);
+    if (model == null) {
+      FeatureModel newest = newestByPath.get(path);
+      model = newest != null && newest.blobId.equals(blob)
+          ? newest : FeatureModel.uncached(blob, repo.open(blob, Constants.OBJ_BLOB).getBytes());
+      commitModels.put(blob, model);
+    }
+    newestByPath.put(path, model);
+    return model;
+  }
+
+  private static Entry moved(Entry e, String feature) {
+    Entry out = new Entry(feature, e.scenario);
+    out.times.addAll(e.times);
+    out.lastCommit = e.lastCommit;
+    return out;
+  }
+
+  private void prune(long sinceEpochSec) {
+    entries.values().removeIf(e -> {
+      e.times.removeIf(t -> t < sinceEpochSec);
+      return e.times.isEmpty();
+    });
+  }
+
+  // ---------- Persistence ----------
+
+  static ScenarioChurnIndex load(Path file, String featuresRoot) throws IOException {
+    ScenarioChurnIndex index = new ScenarioChurnIndex(featuresRoot);
+    if (!Files.isRegularFile(file)) return index;
+    try (InputStream in = Files.newInputStream(file);
+         JsonParser p = new JsonFactory().createParser(in)) {
+      while (p.nextToken() == JsonToken.START_OBJECT) {
+        String feature = null, scenario = null, lastCommit = null, headSha = null, root = null;
+        int version = 0;
+        List<Integer> times = new ArrayList<>();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+          String field = p.currentName();
+          p.nextToken();
+          switch (field) {
+            case "version": version = p.getIntValue(); break;
+            case "head": headSha = p.getText(); break;
+            case "featuresRoot": root = p.getText(); break;
+            case "feature": feature = p.getText(); break;
+            case "scenario": scenario = p.getText(); break;
+            case "lastCommit": lastCommit = p.getText(); break;
+            case "changes":
+              while (p.nextToken() == JsonToken.VALUE_NUMBER_INT) times.add(p.getIntValue());
+              break;
+            default: p.skipChildren();
+          }
+        }
+        if (feature == null) {
+          // Header: an index for another layout or format version starts over
+          if (version != VERSION || !featuresRoot.equals(root)) return index;
+          index.head = headSha;
+        } else {
+          Entry e = new Entry(feature, scenario);
+          e.times.addAll(times);
+          e.lastCommit = lastCommit;
+          index.entries.put(feature + "\n" + scenario, e);
+        }
+      }
+    }
+    return index;
+  }
+
+  // Written next to the target and moved over it, so a failed run keeps the previous index
+  void save(Path file) throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp);
+         JsonGenerator g = new JsonFactory().createGenerator(out)) {
+      g.setRootValueSeparator(null);
+      g.writeStartObject();
+      g.writeNumberField("version", VERSION);
+      g.writeStringField("featuresRoot", featuresRoot);
+      g.writeStringField("head", head);
+      g.writeNumberField("updatedMillis", System.currentTimeMillis());
+      g.writeEndObject();
+      g.writeRaw('\n');
+      for (Entry e : entries.values()) {
+        g.writeStartObject();
+        g.writeStringField("feature", e.feature);
+        g.writeStringField("scenario", e.scenario);
+        g.writeNumberField("churn", e.churn());
+        g.writeStringField("lastCommit", e.lastCommit);
+        g.writeArrayFieldStart("changes");
+        for (int t : e.times) g.writeNumber(t);
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeRaw('\n');
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
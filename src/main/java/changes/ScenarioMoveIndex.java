@@ -0,0 +1,222 @@
+package changes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import model.FeatureModel;
+import util.FeatureRoots;
+
+// Content fingerprints of the FROM tree's scenario instances that no longer exist under their
+// old (file name, scenario name), so a NEW scenario can be recognised as one moved from another
+// file: identical steps (whitespace-insensitive), or near-identical when at least
+// MOVE_SIMILARITY (default 0.8) of the distinct steps are shared. Each origin is claimed once;
+// exact matches are handed out before similar ones, and an origin with the same scenario name
+// wins ties. Old models come from FeatureModel's blob-id cache, so unchanged files cost nothing.
+public final class ScenarioMoveIndex {
+
+  private static final double MIN_SIMILARITY = Double.parseDouble(envOrDefault("MOVE_SIMILARITY", "0.8"));
+
+  public static final class Move {
+    public final String fromFeature;    // feature key, as in the change map
+    public final String fromScenario;   // instance name
+    public final boolean identical;     // same Gherkin (name and steps as written): nothing to upload
+
+    Move(String fromFeature, String fromScenario, boolean identical) {
+      this.fromFeature = fromFeature;
+      this.fromScenario = fromScenario;
+      this.identical = identical;
+    }
+  }
+
+  private static final class Origin {
+    final String feature;
+    final String scenario;
+    final List<String> steps;
+    final String gherkin;
+    boolean claimed;
+
+    Origin(String feature, String scenario, List<String> steps, String gherkin) {
+      this.feature = feature;
+      this.scenario = scenario;
+      this.steps = steps;
+      this.gherkin = gherkin;
+    }
+  }
+
+  private final Map<String, List<Origin>> byBody = new HashMap<>();
+  private final Map<String, List<Origin>> byStep = new HashMap<>();
+  private int size;
+
+  private ScenarioMoveIndex() {}
+
+  public int size() { return size; }
+
+  // current: instance names by feature key in the tree being compared against FROM; filter: the
+  // FROM paths to take origins from
+  static ScenarioMoveIndex build(Repository repo, ObjectId from, TreeFilter filter,
+                                 Map<String, ? extends Collection<String>> current) throws IOException {
+    FeatureRoots roots = FeatureScenarioChangeMap.featureRoots();
+    ScenarioMoveIndex index = new ScenarioMoveIndex();
+    try (RevWalk rw = new RevWalk(repo); TreeWalk tw = new TreeWalk(repo)) {
+      tw.addTree(rw.parseCommit(from).getTree());
+      tw.setRecursive(true);
+      tw.setFilter(filter);
+      while (tw.next()) {
+        String path = tw.getPathString();
+        if (!roots.contains(path)) continue;
+        String feature = roots.key(path);
+        ObjectId blob = tw.getObjectId(0);
+        FeatureModel model = FeatureModel.of(blob, () -> repo.open(blob, Constants.OBJ_BLOB).getBytes());
+        Collection<String> stillThere = current.containsKey(feature) ? current.get(feature) : Collections.emptySet();
+        for (FeatureModel.Scenario sc : model.scenarios) {
+          for (FeatureModel.Instance in : sc.instances()) {
+            if (!stillThere.contains(in.name)) index.add(new Origin(feature, in.name, body(sc, in), in.gherkin));
+          }
+        }
+      }
+    }
+    return index;
+  }
+
+  // For callers without an open repository: FROM against the working tree's feature files
+  public static ScenarioMoveIndex load(String fromRef) throws IOException {
+    return load(fromRef, Collections.emptyMap());
+  }
+
+  // claimed: FROM instances (by feature key) already accounted for, e.g. carried over by a
+  // renamed file, so they are not offered as origins again
+  public static ScenarioMoveIndex load(String fromRef, Map<String, ? extends Collection<String>> claimed)
+      throws IOException {
+    try (Repository repo = new FileRepositoryBuilder().setMustExist(true).findGitDir().build()) {
+      ObjectId from = repo.resolve(fromRef);
+      if (from == null) throw new IllegalArgumentException("Cannot resolve ref: " + fromRef);
+      FeatureRoots roots = FeatureScenarioChangeMap.featureRoots();
+      Map<String, Set<String>> current = new HashMap<>();
+      for (Map.Entry<String, FeatureModel> e : FeatureScenarioChangeMap.readAllFeatureModels().entrySet()) {
+        current.computeIfAbsent(roots.key(e.getKey()), k -> new HashSet<>())
+            .addAll(e.getValue().instancesByName().keySet());
+      }
+      claimed.forEach((feature, names) -> current.computeIfAbsent(feature, k -> new HashSet<>()).addAll(names));
+      return build(repo, from, FeatureScenarioChangeMap.rootsFilter(), current);
+    }
+  }
+
+  // newInstances: NEW instance names by feature key; models: current model of each of those
+  // files. Returns the moves found, by feature key and instance name.
+  public Map<String, Map<String, Move>> match(Map<String, FeatureModel> models,
+                                             Map<String, ? extends Collection<String>> newInstances) {
+    Map<String, Map<String, Move>> out = new LinkedHashMap<>();
+    if (size == 0) return out;
+    List<String[]> unmatched = new ArrayList<>();
+    Map<String, List<String>> bodies = new HashMap<>();
+
+    // Exact bodies first, so a near-identical match cannot take an origin an exact one needs
+    for (Map.Entry<String, ? extends Collection<String>> e : newInstances.entrySet()) {
+      FeatureModel model = models.get(e.getKey());
+      if (model == null) continue;
+      Map<String, List<String>> byName = bodiesByName(model);
+      Map<String, FeatureModel.Instance> instances = model.instancesByName();
+      for (String name : e.getValue()) {
+        List<String> steps = byName.get(name);
+        if (steps == null || steps.isEmpty()) continue;
+        Origin o = best(byBody.get(String.join("\n", steps)), name);
+        if (o != null) {
+          o.claimed = true;
+          out.computeIfAbsent(e.getKey(), k -> new LinkedHashMap<>())
+              .put(name, new Move(o.feature, o.scenario, o.gherkin.equals(instances.get(name).gherkin)));
+        } else {
+          unmatched.add(new String[] { e.getKey(), name });
+          bodies.put(e.getKey() + "\n" + name, steps);
+        }
+      }
+    }
+
+    for (String[] u : unmatched) {
+      List<String> steps = bodies.get(u[0] + "\n" + u[1]);
+      Origin o = mostSimilar(steps, u[1]);
+      if (o == null) continue;
+      o.claimed = true;
+      out.computeIfAbsent(u[0], k -> new LinkedHashMap<>()).put(u[1], new Move(o.feature, o.scenario, false));
+    }
+    return out;
+  }
+
+  private void add(Origin o) {
+    if (o.steps.isEmpty()) return;
+    byBody.computeIfAbsent(String.join("\n", o.steps), k -> new ArrayList<>()).add(o);
+    for (String step : new HashSet<>(o.steps)) {
+      byStep.computeIfAbsent(step, k -> new ArrayList<>()).add(o);
+    }
+    size++;
+  }
+
+  private static Origin best(List<Origin> candidates, String name) {
+    if (candidates == null) return null;
+    Origin first = null;
+    for (Origin o : candidates) {
+      if (o.claimed) continue;
+      if (o.scenario.equals(name)) return o;
+      if (first == null) first = o;
+    }
+    return first;
+  }
+
+  // Candidates are the origins sharing at least one step; similarity is shared / larger step set
+  private Origin mostSimilar(List<String> steps, String name) {
+    Set<String> mine = new HashSet<>(steps);
+    Map<Origin, Integer> shared = new LinkedHashMap<>();
+    for (String step : mine) {
+      for (Origin o : byStep.getOrDefault(step, Collections.emptyList())) {
+        if (!o.claimed) shared.merge(o, 1, Integer::sum);
+      }
+    }
+    Origin best = null;
+    double bestScore = MIN_SIMILARITY;
+    for (Map.Entry<Origin, Integer> e : shared.entrySet()) {
+      Origin o = e.getKey();
+      double score = (double) e.getValue() / Math.max(mine.size(), new HashSet<>(o.steps).size());
+      boolean better = score > bestScore || (score == bestScore && (best == null || o.scenario.equals(name)));
+      if (better) {
+        best = o;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  private static Map<String, List<String>> bodiesByName(FeatureModel model) {
+    Map<String, List<String>> out = new HashMap<>();
+    for (FeatureModel.Scenario sc : model.scenarios) {
+      for (FeatureModel.Instance in : sc.instances()) out.put(in.name, body(sc, in));
+    }
+    return out;
+  }
+
+  // Expanded step texts without keywords, whitespace collapsed
+  private static List<String> body(FeatureModel.Scenario sc, FeatureModel.Instance in) {
+    List<String> out = new ArrayList<>();
+    for (String step : sc.stepTexts(in)) out.add(step.trim().replaceAll("\\s+", " "));
+    return out;
+  }
+
+  private static String envOrDefault(String key, String def) {
+    String v = System.getenv(key);
+    return (v == null || v.isBlank()) ? def : v;
+  }
+}
@@ -0,0 +1,202 @@
+package changes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import model.FeatureModel;
+
+// Change-based test selection: the NEW/CHANGED scenarios of a FeatureScenarioChangeMap as
+// Cucumber "path:line:line" URIs (header line of each scenario; the row line of each selected
+// Outline example, so unchanged rows of an outline are skipped). runAll() means "do not filter" and carries the reason, e.g. the map
+// failed or too much of the suite changed for filtering to be worth it.
+public final class ScenarioSelection {
+
+  private final List<String> featureUris;
+  private final Map<String, FeatureModel> models;
+  private final Map<String, Map<String, String>> changeMap;
+  private final int selected;
+  private final int total;
+  private final String fallbackReason;
+
+  private ScenarioSelection(List<String> featureUris,
+                            Map<String, FeatureModel> models,
+                            Map<String, Map<String, String>> changeMap,
+                            int selected, int total, String fallbackReason) {
+    this.featureUris = featureUris;
+    this.models = models;
+    this.changeMap = changeMap;
+    this.selected = selected;
+    this.total = total;
+    this.fallbackReason = fallbackReason;
+  }
+
+  public static ScenarioSelection all(String reason) {
+    return new ScenarioSelection(Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), 0, 0, reason);
+  }
+
+  // maxRatio: selecting more than this share of all scenarios runs everything instead
+  public static ScenarioSelection compute(String fromRef, String toRef, double maxRatio) {
+    Map<String, Map<String, String>> map;
+    Map<String, FeatureModel> files;
+    try {
+      map = FeatureScenarioChangeMap.build(fromRef, toRef);
+      files = FeatureScenarioChangeMap.readAllFeatureModels();
+    } catch (IOException | RuntimeException ex) {
+      return all("change map failed: " + ex.getMessage());
+    }
+
+    List<String> uris = new ArrayList<>();
+    int selected = 0;
+    int total = 0;
+    for (Map.Entry<String, FeatureModel> e : files.entrySet()) {
+      String path = e.getKey();
+      Map<String, String> statuses = map.getOrDefault(featureName(path), Collections.emptyMap());
+      StringBuilder uri = new StringBuilder(path);
+      for (FeatureModel.Instance in : e.getValue().instancesByName().values()) {
+        total++;
+        if (isSelected(statuses, in)) {
+          uri.append(':').append(in.line);
+          selected++;
+        }
+      }
+      if (uri.length() > path.length()) uris.add(uri.toString());
+    }
+
+    if (total > 0 && selected > maxRatio * total) {
+      return new ScenarioSelection(Collections.emptyList(), files, map, selected, total,
+          String.format("%d/%d scenarios changed (over %.0f%%)", selected, total, maxRatio * 100));
+    }
+    return new ScenarioSelection(uris, files, map, selected, total, null);
+  }
+
+  private static boolean isSelected(Map<String, String> statuses, FeatureModel.Instance in) {
+    String status = statuses.get(in.name);
+    return status != null && !"UNCHANGED".equals(status);
+  }
+
+  public boolean runAll() { return fallbackReason != null; }
+  public String fallbackReason() { return fallbackReason; }
+  public List<String> featureUris() { return featureUris; }
+  public int selected() { return selected; }
+  public int total() { return total; }
+
+  // Value for the cucumber.features property
+  public String cucumberFeatures() { return String.join(",", featureUris); }
+
+  // Previous run's durations from a Cucumber JSON report, attributed to the current scenarios by
+  // line (an Outline example reports its row line); [full suite, selected scenarios] in nanos.
+  // Null when there is no report to go by.
+  public long[] estimateNanos(Path report) {
+    if (report == null || !Files.isRegularFile(report)) return null;
+    long[] out = new long[2];
+    try (JsonParser p = new JsonFactory().createParser(report.toFile())) {
+      if (p.nextToken() != JsonToken.START_ARRAY) return null;
+      while (p.nextToken() == JsonToken.START_OBJECT) {
+        readFeature(p, out);
+      }
+    } catch (IOException ex) {
+      return null;
+    }
+    return out;
+  }
+
+  // "uri" follows "elements" in Cucumber's output, so element durations are kept per line first
+  private void readFeature(JsonParser p, long[] out) throws IOException {
+    String uri = null;
+    List<long[]> lineDurations = new ArrayList<>();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      p.nextToken();
+      if ("uri".equals(field)) uri = p.getText();
+      else if ("elements".equals(field)) readElements(p, lineDurations);
+      else p.skipChildren();
+    }
+    if (uri == null) return;
+    String path = currentPath(uri);
+    FeatureModel model = path == null ? null : models.get(path);
+    Map<String, String> statuses = path == null ? Collections.emptyMap() : changeMap.getOrDefault(featureName(path), Collections.emptyMap());
+    for (long[] ld : lineDurations) {
+      out[0] += ld[1];
+      FeatureModel.Instance in = model == null ? null : model.instanceAt((int) ld[0]);
+      if (in != null && isSelected(statuses, in)) out[1] += ld[1];
+    }
+  }
+
+  // Background timings are added to the scenario that follows them
+  private static void readElements(JsonParser p, List<long[]> out) throws IOException {
+    long pending = 0;
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      String type = null;
+      long line = -1;
+      long nanos = 0;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        p.nextToken();
+        switch (field) {
+          case "type": type = p.getText(); break;
+          case "line": line = p.getLongValue(); break;
+          case "steps":
+          case "before":
+          case "after": nanos += durations(p); break;
+          default: p.skipChildren();
+        }
+      }
+      if ("background".equals(type)) {
+        pending += nanos;
+        continue;
+      }
+      out.add(new long[] { line, nanos + pending });
+      pending = 0;
+    }
+  }
+
+  private static long durations(JsonParser p) throws IOException {
+    long sum = 0;
+    if (p.currentToken() != JsonToken.START_ARRAY) {
+      p.skipChildren();
+      return 0;
+    }
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.currentName();
+        p.nextToken();
+        if (!"result".equals(field)) {
+          p.skipChildren();
+          continue;
+        }
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+          String rf = p.currentName();
+          p.nextToken();
+          if ("duration".equals(rf)) sum += p.getLongValue();
+          else p.skipChildren();
+        }
+      }
+    }
+    return sum;
+  }
+
+  // The change map is keyed by feature key (file name, or module root and file name)
+  private static String featureName(String path) {
+    return FeatureScenarioChangeMap.featureRoots().key(path);
+  }
+
+  // Report URIs look like "file:src/test/java/features/login.feature"
+  private String currentPath(String uri) {
+    String u = uri.replace('\\', '/');
+    if (u.startsWith("file:")) u = u.substring(5);
+    if (u.startsWith("classpath:")) u = u.substring(10);
+    for (String path : models.keySet()) {
+      if (u.equals(path) || u.endsWith("/" + path) || path.endsWith("/" + u)) return path;
+    }
+    return null;
+  }
+}
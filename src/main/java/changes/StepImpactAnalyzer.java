@@ -0,0 +1,249 @@
+package changes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import model.FeatureModel;
+
+// Glue-code impact for FeatureScenarioChangeMap: diffs the step-definition/hook sources between
+// the two refs and collects the expressions of every @Given/@When/@Then/@And/@But method whose
+// body an edit touches, on the old side (edited or removed definitions) and the new side (edited
+// or added ones). A touched tagged hook (@Before("@tag")...) affects the scenarios its tag
+// expression selects; untagged hooks and @BeforeAll/@AfterAll run around every scenario alike, so
+// an edit to them is not attributed to any. Edits outside annotated methods (helpers, fields) are
+// not followed.
+final class StepImpactAnalyzer {
+
+  private static final Pattern STEP_ANNOTATION = Pattern.compile(
+      "@(?:Given|When|Then|And|But)\\s*\\(\\s*(?:value\\s*=\\s*)?\"((?:[^\"\\\\]|\\\\.)*)\"");
+  private static final Pattern HOOK_ANNOTATION = Pattern.compile(
+      "@(?:Before|After|BeforeStep|AfterStep|BeforeAll|AfterAll)\\b");
+  // The tag expression of a scenario hook: its first string argument, or value = "..."
+  private static final Pattern HOOK_TAGS = Pattern.compile(
+      "@(?:Before|After|BeforeStep|AfterStep)\\s*\\((?:\\s*|.*\\bvalue\\s*=\\s*)\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+  static final class Impact {
+    final Set<String> expressions;
+    final List<String> methods;   // "File.java:line" of each touched method
+    final List<TagExpression> hookTags;   // of the touched tagged hooks
+    // Built once here, before the module threads read it
+    private final StepMatcherIndex index;
+
+    Impact(Touched touched) {
+      this.expressions = touched.expressions;
+      this.methods = touched.methods;
+      this.hookTags = touched.hookTags;
+      this.index = new StepMatcherIndex(expressions);
+    }
+
+    boolean isEmpty() { return expressions.isEmpty() && hookTags.isEmpty(); }
+
+    // Scenario instances of one feature file (outline rows one by one, keyed like the change map)
+    // running a changed step, directly or through the Background, or selected by a changed hook's
+    // tags (the feature's, the scenario's and the row's Examples block's; Rule tags are not modelled)
+    Set<String> affectedScenarios(FeatureModel model) {
+      Set<String> all = model.instancesByName().keySet();
+      if (isEmpty()) return Collections.emptySet();
+
+      if (model.background != null) {
+        for (FeatureModel.Step step : model.background.steps) {
+          if (index.matches(step.text)) return all;
+        }
+      }
+      Set<String> out = new LinkedHashSet<>();
+      for (FeatureModel.Scenario sc : model.scenarios) {
+        List<FeatureModel.Instance> instances = sc.instances();
+        for (int i = 0; i < instances.size(); i++) {
+          FeatureModel.Instance in = instances.get(i);
+          if (!hookTags.isEmpty() && hookSelects(tagsOf(model, sc, i))) {
+            out.add(in.name);
+            continue;
+          }
+          for (String step : sc.stepTexts(in)) {
+            if (index.matches(step)) {
+              out.add(in.name);
+              break;
+            }
+          }
+        }
+      }
+      return out;
+    }
+
+    private boolean hookSelects(Set<String> tags) {
+      for (TagExpression t : hookTags) if (t.matches(tags)) return true;
+      return false;
+    }
+
+    // Tags the i-th instance of the scenario runs with
+    private static Set<String> tagsOf(FeatureModel model, FeatureModel.Scenario sc, int instance) {
+      Set<String> tags = new LinkedHashSet<>(model.tags);
+      tags.addAll(sc.tags);
+      int rows = 0;
+      for (FeatureModel.Examples ex : sc.examples) {
+        rows += ex.rows.size();
+        if (instance < rows) {
+          tags.addAll(ex.tags);
+          break;
+        }
+      }
+      return tags;
+    }
+  }
+
+  // What analyze() collects from the glue diffs before the Impact is built
+  private static final class Touched {
+    final Set<String> expressions = new LinkedHashSet<>();
+    final List<String> methods = new ArrayList<>();
+    final List<TagExpression> hookTags = new ArrayList<>();
+  }
+
+  private static final class StepMethod {
+    final int start;   // 1-based, first annotation line
+    final int end;     // 1-based inclusive, closing brace
+    final String expression;  // null for hooks
+    final String hookTags;    // tag expression of a tagged scenario hook, else null
+    StepMethod(int start, int end, String expression, String hookTags) {
+      this.start = start;
+      this.end = end;
+      this.expression = expression;
+      this.hookTags = hookTags;
+    }
+  }
+
+  private StepImpactAnalyzer() {}
+
+  static Impact analyze(Repository repo, ObjectId from, ObjectId to, String repoRoot, List<String> glueRoots) throws IOException {
+    Touched touched = new Touched();
+    try (DiffFormatter df = new DiffFormatter(new ByteArrayOutputStream())) {
+      df.setRepository(repo);
+      df.setDetectRenames(true);
+      for (String root : glueRoots) {
+        for (DiffEntry de : FeatureScenarioChangeMap.diffTree(repo, from, to, repoRoot, root)) {
+          if (!FeatureScenarioChangeMap.pathFromDiff(de).endsWith(".java")) continue;
+          EditList edits = df.toFileHeader(de).toEditList();
+          if (de.getChangeType() != DiffEntry.ChangeType.ADD) {
+            collect(touched, de.getOldPath(), read(repo, from, de.getOldPath()), edits, true);
+          }
+          if (de.getChangeType() != DiffEntry.ChangeType.DELETE) {
+            collect(touched, de.getNewPath(), read(repo, to, de.getNewPath()), edits, false);
+          }
+        }
+      }
+    }
+    return new Impact(touched);
+  }
+
+  private static List<String> read(Repository repo, ObjectId commit, String path) throws IOException {
+    byte[] bytes = FeatureScenarioChangeMap.readBlobAt(repo, commit, path);
+    if (bytes == null) return Collections.emptyList();
+    return Arrays.asList(new String(bytes, StandardCharsets.UTF_8).split("\\R", -1));
+  }
+
+  private static void collect(Touched touched, String path, List<String> source, EditList edits, boolean oldSide) {
+    String file = path.substring(path.lastIndexOf('/') + 1);
+    for (StepMethod m : stepMethods(source)) {
+      for (Edit e : edits) {
+        int begin = (oldSide ? e.getBeginA() : e.getBeginB()) + 1;
+        int end = Math.max(oldSide ? e.getEndA() : e.getEndB(), begin); // pure insert/delete: the line it sits at
+        if (begin <= m.end && m.start <= end) {
+          if (m.expression != null) {
+            touched.expressions.add(m.expression);
+          } else if (m.hookTags != null) {
+            try {
+              touched.hookTags.add(TagExpression.parse(m.hookTags));
+            } catch (IllegalArgumentException ex) {
+              break;   // not a tag expression Cucumber would accept either
+            }
+          } else {
+            break;     // untagged hook
+          }
+          touched.methods.add(file + ":" + m.start);
+          break;
+        }
+      }
+    }
+  }
+
+  // Annotated methods with their line span; the body is found by brace matching outside literals
+  private static List<StepMethod> stepMethods(List<String> source) {
+    List<StepMethod> out = new ArrayList<>();
+    for (int i = 0; i < source.size(); i++) {
+      String line = source.get(i);
+      if (line.indexOf('@') < 0) continue;
+      Matcher step = STEP_ANNOTATION.matcher(line);
+      String expression = step.find() ? unescapeJava(step.group(1)) : null;
+      if (expression == null && !HOOK_ANNOTATION.matcher(line.trim()).lookingAt()) continue;
+      Matcher hook = expression == null ? HOOK_TAGS.matcher(line) : null;
+      String hookTags = hook != null && hook.find() && !hook.group(1).isBlank() ? unescapeJava(hook.group(1)) : null;
+      out.add(new StepMethod(i + 1, bodyEnd(source, i), expression, hookTags));
+    }
+    return out;
+  }
+
+  private static int bodyEnd(List<String> source, int fromLine) {
+    int depth = 0;
+    boolean opened = false, inBlockComment = false;
+    for (int i = fromLine; i < source.size(); i++) {
+      String s = source.get(i);
+      char quote = 0;
+      for (int k = 0; k < s.length(); k++) {
+        char c = s.charAt(k);
+        if (inBlockComment) {
+          if (c == '*' && k + 1 < s.length() && s.charAt(k + 1) == '/') { inBlockComment = false; k++; }
+        } else if (quote != 0) {
+          if (c == '\\') k++;
+          else if (c == quote) quote = 0;
+        } else if (c == '"' || c == '\'') {
+          quote = c;
+        } else if (c == '/' && k + 1 < s.length() && s.charAt(k + 1) == '/') {
+          break;
+        } else if (c == '/' && k + 1 < s.length() && s.charAt(k + 1) == '*') {
+          inBlockComment = true;
+          k++;
+        } else if (c == '{') {
+          depth++;
+          opened = true;
+        } else if (c == '}') {
+          depth--;
+          if (opened && depth == 0) return i + 1;
+        }
+      }
+    }
+    return source.size();
+  }
+
+  private static String unescapeJava(String s) {
+    StringBuilder sb = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        char n = s.charAt(++i);
+        switch (n) {
+          case 'n': sb.append('\n'); break;
+          case 't': sb.append('\t'); break;
+          default: sb.append(n);
+        }
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,163 @@
+package changes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Step-definition expressions compiled once and bucketed by their leading literal word, so a
+// step text is only tried against the expressions that can start with its first word (plus the
+// ones starting with a parameter or written as regexes). Main code keeps Cucumber off the
+// classpath, so Cucumber Expressions are translated here: built-in parameter types, (optional)
+// text, a/b alternatives and \ escapes. Custom parameter types match anything, which can only
+// over-select.
+final class StepMatcherIndex {
+
+  private final Map<String, List<Pattern>> byFirstWord = new HashMap<>();
+  private final List<Pattern> wildcard = new ArrayList<>();
+  private int size;
+
+  StepMatcherIndex(Collection<String> expressions) {
+    for (String expr : expressions) {
+      Pattern p = compile(expr);
+      String first = leadingLiteral(expr);
+      if (first == null) wildcard.add(p);
+      else byFirstWord.computeIfAbsent(first, k -> new ArrayList<>()).add(p);
+      size++;
+    }
+  }
+
+  int size() { return size; }
+
+  boolean matches(String stepText) {
+    String text = stepText.trim();
+    int sp = indexOfWhitespace(text);
+    List<Pattern> bucket = byFirstWord.get(sp < 0 ? text : text.substring(0, sp));
+    if (bucket != null) {
+      for (Pattern p : bucket) if (p.matcher(text).matches()) return true;
+    }
+    for (Pattern p : wildcard) if (p.matcher(text).matches()) return true;
+    return false;
+  }
+
+  static Pattern compile(String expr) {
+    if (expr.startsWith("^") || expr.endsWith("$")) return Pattern.compile(expr);
+    if (expr.length() > 1 && expr.startsWith("/") && expr.endsWith("/")) {
+      return Pattern.compile(expr.substring(1, expr.length() - 1));
+    }
+    StringBuilder re = new StringBuilder();
+    int i = 0;
+    while (i < expr.length()) {
+      char c = expr.charAt(i);
+      if (Character.isWhitespace(c)) {
+        re.append(Pattern.quote(String.valueOf(c)));
+        i++;
+        continue;
+      }
+      int end = i;
+      while (end < expr.length() && !Character.isWhitespace(expr.charAt(end))) {
+        if (expr.charAt(end) == '\\') end++;
+        end++;
+      }
+      end = Math.min(end, expr.length());
+      re.append(word(expr.substring(i, end)));
+      i = end;
+    }
+    return Pattern.compile(re.toString());
+  }
+
+  // One whitespace-free token; alternatives cannot hold parameters in Cucumber Expressions
+  private static String word(String w) {
+    List<String> alts = splitUnescaped(w, '/');
+    if (alts.size() < 2 || w.indexOf('{') >= 0) return plain(w);
+    StringBuilder sb = new StringBuilder("(?:");
+    for (int k = 0; k < alts.size(); k++) {
+      if (k > 0) sb.append('|');
+      sb.append(plain(alts.get(k)));
+    }
+    return sb.append(')').toString();
+  }
+
+  private static String plain(String s) {
+    StringBuilder sb = new StringBuilder();
+    StringBuilder lit = new StringBuilder();
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        lit.append(s.charAt(++i));
+      } else if (c == '{' && s.indexOf('}', i) > 0) {
+        flush(sb, lit);
+        int close = s.indexOf('}', i);
+        sb.append(parameter(s.substring(i + 1, close)));
+        i = close;
+      } else if (c == '(' && s.indexOf(')', i) > 0) {
+        flush(sb, lit);
+        int close = s.indexOf(')', i);
+        sb.append("(?:").append(Pattern.quote(s.substring(i + 1, close))).append(")?");
+        i = close;
+      } else {
+        lit.append(c);
+      }
+    }
+    flush(sb, lit);
+    return sb.toString();
+  }
+
+  private static void flush(StringBuilder sb, StringBuilder lit) {
+    if (lit.length() == 0) return;
+    sb.append(Pattern.quote(lit.toString()));
+    lit.setLength(0);
+  }
+
+  private static String parameter(String type) {
+    switch (type) {
+      case "int": case "long": case "short": case "byte": case "biginteger":
+        return "-?\\d+";
+      case "float": case "double": case "bigdecimal":
+        return "[-+]?(?:\\d+(?:[.,]\\d*)?|[.,]\\d+)(?:[eE][-+]?\\d+)?";
+      case "word":
+        return "\\S+";
+      case "string":
+        return "(?:\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*')";
+      default:
+        return ".*";
+    }
+  }
+
+  // First token when it is plain text, i.e. something a step's first word must equal
+  private static String leadingLiteral(String expr) {
+    if (expr.startsWith("^") || expr.endsWith("$") || expr.startsWith("/")) return null;
+    int sp = indexOfWhitespace(expr);
+    String first = sp < 0 ? expr : expr.substring(0, sp);
+    if (first.isEmpty()) return null;
+    for (char c : first.toCharArray()) {
+      if (c == '{' || c == '(' || c == '/' || c == '\\') return null;
+    }
+    return first;
+  }
+
+  private static List<String> splitUnescaped(String s, char sep) {
+    List<String> out = new ArrayList<>();
+    StringBuilder cur = new StringBuilder();
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        cur.append(c).append(s.charAt(++i));
+      } else if (c == sep) {
+        out.add(cur.toString());
+        cur.setLength(0);
+      } else {
+        cur.append(c);
+      }
+    }
+    out.add(cur.toString());
+    return out;
+  }
+
+  private static int indexOfWhitespace(String s) {
+    for (int i = 0; i < s.length(); i++) if (Character.isWhitespace(s.charAt(i))) return i;
+    return -1;
+  }
+}
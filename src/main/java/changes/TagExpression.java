@@ -0,0 +1,95 @@
+package changes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+// Cucumber tag expression ("@a and not (@b or @c)") for the hooks StepImpactAnalyzer scopes by
+// their tags. Main code keeps Cucumber off the classpath, so the grammar is parsed here: tags,
+// not/and/or with the usual precedence, and parentheses.
+final class TagExpression {
+
+  private final String source;
+  private final Predicate<Collection<String>> test;
+
+  private TagExpression(String source, Predicate<Collection<String>> test) {
+    this.source = source;
+    this.test = test;
+  }
+
+  static TagExpression parse(String expression) {
+    Parser p = new Parser(tokens(expression));
+    Predicate<Collection<String>> test = p.or();
+    if (p.pos != p.tokens.size()) throw new IllegalArgumentException("Unexpected '" + p.tokens.get(p.pos) + "' in " + expression);
+    return new TagExpression(expression, test);
+  }
+
+  boolean matches(Collection<String> tags) {
+    return test.test(tags);
+  }
+
+  @Override
+  public String toString() {
+    return source;
+  }
+
+  private static List<String> tokens(String expression) {
+    List<String> out = new ArrayList<>();
+    StringBuilder tok = new StringBuilder();
+    for (char c : expression.toCharArray()) {
+      if (Character.isWhitespace(c) || c == '(' || c == ')') {
+        if (tok.length() > 0) out.add(tok.toString());
+        tok.setLength(0);
+        if (c == '(' || c == ')') out.add(String.valueOf(c));
+      } else {
+        tok.append(c);
+      }
+    }
+    if (tok.length() > 0) out.add(tok.toString());
+    return out;
+  }
+
+  private static final class Parser {
+    final List<String> tokens;
+    int pos;
+
+    Parser(List<String> tokens) {
+      this.tokens = tokens;
+    }
+
+    Predicate<Collection<String>> or() {
+      Predicate<Collection<String>> left = and();
+      while (accept("or")) left = left.or(and());
+      return left;
+    }
+
+    Predicate<Collection<String>> and() {
+      Predicate<Collection<String>> left = not();
+      while (accept("and")) left = left.and(not());
+      return left;
+    }
+
+    Predicate<Collection<String>> not() {
+      if (accept("not")) return not().negate();
+      if (accept("(")) {
+        Predicate<Collection<String>> inner = or();
+        if (!accept(")")) throw new IllegalArgumentException("Missing ')' in tag expression");
+        return inner;
+      }
+      if (pos >= tokens.size() || !tokens.get(pos).startsWith("@")) {
+        throw new IllegalArgumentException("Expected a tag at token " + pos);
+      }
+      String tag = tokens.get(pos++);
+      return tags -> tags.contains(tag);
+    }
+
+    private boolean accept(String token) {
+      if (pos < tokens.size() && tokens.get(pos).equals(token)) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+  }
+}
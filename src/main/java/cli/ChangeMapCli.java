@@ -0,0 +1,178 @@
+package cli;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.SystemReader;
+
+import changes.ChangeMapExporter;
+import changes.ChangeMapService;
+import changes.FeatureScenarioChangeMap;
+import changes.ScenarioChurnIndex;
+import model.ScenarioChangeTracker;
+import service.FeatureChangeDetector;
+
+// Change detection without a Cucumber run. Only main-scope jars are needed
+// (JGit, org.json, jackson-core, owner); build with `mvn -Pcli package`, or
+// `mvn -Pcli,cli-cds package` to also record an AppCDS archive for fast startup:
+//
+//   java -XX:SharedArchiveFile=target/changemap.jsa -XX:TieredStopAtLevel=1 -XX:+UseSerialGC \
+//        -jar target/changemap.jar --from origin/main --to HEAD --out target/change-map
+//
+// Options:
+//   --from <ref>   default FROM_COMMIT or HEAD~1
+//   --to <ref>     default TO_COMMIT or HEAD
+//   --mode map|detect|churn|serve   map = FeatureScenarioChangeMap (default), detect = FeatureChangeDetector,
+//                  churn = update the ScenarioChurnIndex up to --to and print it, most changed first,
+//                  serve = run a ChangeMapService for this repository until killed
+//   --port <n>     serve port on 127.0.0.1, default 7411
+//   --cache-mb <n> serve cache budget, default 64
+//   --out <dir>    also write change-map.ndjson / change-map.bin (map mode)
+//   --index <file> churn index, default target/churn-index.ndjson
+//   --days <n>     churn window, default 365
+//   --quiet        summary only, no per-scenario lines
+// stdout carries the same "Feature=... | Scenario=... | Status=..." lines as Hooks;
+// logging goes to stderr.
+public class ChangeMapCli {
+
+  public static void main(String[] args) throws IOException {
+    if (System.getProperty("LOG_FILE") == null && System.getenv("LOG_FILE") == null) {
+      System.setProperty("LOG_FILE", "stderr");
+    }
+
+    String from = envOrDefault("FROM_COMMIT", "HEAD~1");
+    String to = envOrDefault("TO_COMMIT", "HEAD");
+    String mode = "map";
+    String out = null;
+    boolean quiet = false;
+    String index = "target/churn-index.ndjson";
+    int days = 365;
+    int port = 7411;
+    long cacheMb = 64;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--from": from = value(args, ++i); break;
+        case "--to": to = value(args, ++i); break;
+        case "--mode": mode = value(args, ++i); break;
+        case "--out": out = value(args, ++i); break;
+        case "--quiet": quiet = true; break;
+        case "--index": index = value(args, ++i); break;
+        case "--days": days = Integer.parseInt(value(args, ++i)); break;
+        case "--port": port = Integer.parseInt(value(args, ++i)); break;
+        case "--cache-mb": cacheMb = Long.parseLong(value(args, ++i)); break;
+        case "-h":
+        case "--help":
+          System.out.println("usage: changemap [--from ref] [--to ref] [--mode map|detect|churn|serve] [--out dir]"
+              + " [--index file] [--days n] [--port n] [--cache-mb n] [--quiet]");
+          return;
+        default:
+          System.err.println("Unknown option: " + args[i]);
+          System.exit(2);
+      }
+    }
+
+    fastJGitStartup();
+
+    if ("serve".equalsIgnoreCase(mode)) {
+      // Most request threads just wait on a build already running for their pair
+      int threads = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+      ChangeMapService service = ChangeMapService.start(port, threads, cacheMb * 1024 * 1024);
+      System.err.println("change map service on http://127.0.0.1:" + service.port());
+      Runtime.getRuntime().addShutdownHook(new Thread(service::close));
+      try {
+        Thread.currentThread().join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+
+    PrintWriter stdout = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024));
+    if ("churn".equalsIgnoreCase(mode)) {
+      long start = System.nanoTime();
+      ScenarioChurnIndex churn = ScenarioChurnIndex.update(Paths.get(index), to, days);
+      List<ScenarioChurnIndex.Entry> entries = new ArrayList<>(churn.entries());
+      entries.sort(Comparator.comparingInt(ScenarioChurnIndex.Entry::churn).reversed());
+      if (!quiet) {
+        for (ScenarioChurnIndex.Entry e : entries) {
+          stdout.println("Feature=" + e.feature + " | Scenario=\"" + e.scenario + "\" | Churn=" + e.churn()
+              + " | LastCommit=" + e.lastCommit().substring(0, 7));
+        }
+      }
+      stdout.println("Scenarios=" + entries.size() + " Commits=" + churn.commitsWalked() + " Head=" + churn.head() + " Days=" + days);
+      System.err.printf("churn index updated in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+    } else if ("detect".equalsIgnoreCase(mode)) {
+      ScenarioChangeTracker tracker = FeatureChangeDetector.detectChanges(from, to);
+      if (!quiet) {
+        for (Map.Entry<String, ScenarioChangeTracker.ChangeStatus> e : tracker.snapshot().entrySet()) {
+          stdout.println("Scenario=" + e.getKey() + " | Status=" + e.getValue());
+        }
+      }
+    } else {
+      Map<String, Map<String, String>> changeMap = FeatureScenarioChangeMap.build(from, to);
+      int scenarios = 0;
+      int changed = 0;
+      for (Map.Entry<String, Map<String, String>> f : changeMap.entrySet()) {
+        for (Map.Entry<String, String> sc : f.getValue().entrySet()) {
+          scenarios++;
+          if (!"UNCHANGED".equals(sc.getValue())) changed++;
+          if (!quiet) {
+            stdout.println("Feature=" + f.getKey() + " | Scenario=\"" + sc.getKey() + "\" | Status=" + sc.getValue());
+          }
+        }
+      }
+      if (out != null) ChangeMapExporter.export(changeMap, from, to, Paths.get(out));
+      stdout.println("Features=" + changeMap.size() + " Scenarios=" + scenarios + " Changed=" + changed);
+      System.err.println(FeatureScenarioChangeMap.lastTimings().summary());
+    }
+    stdout.flush();
+    System.exit(0); // skip waiting on JGit's background threads
+  }
+
+  // JGit otherwise spends most of a short run measuring filesystem timestamp resolution and
+  // spawning `git config --system` to find the system gitconfig. Neither matters for
+  // commit-to-commit tree diffs, so measure in the background and skip the system config.
+  private static void fastJGitStartup() {
+    FS.FileStoreAttributes.setBackground(true);
+    SystemReader.setInstance(new SystemReader.Delegate(SystemReader.getInstance()) {
+      @Override
+      public FileBasedConfig openSystemConfig(Config parent, FS fs) {
+        return new FileBasedConfig(parent, null, fs) {
+          @Override
+          public void load() {
+            // no system config
+          }
+
+          @Override
+          public boolean isOutdated() {
+            return false;
+          }
+        };
+      }
+    });
+  }
+
+  private static String value(String[] args, int i) {
+    if (i >= args.length) {
+      System.err.println("Missing value for " + args[i - 1]);
+      System.exit(2);
+    }
+    return args[i];
+  }
+
+  private static String envOrDefault(String key, String def) {
+    String v = System.getenv(key);
+    return (v == null || v.isBlank()) ? def : v;
+  }
+}
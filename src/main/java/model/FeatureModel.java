@@ -0,0 +1,585 @@
+package model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+// One-pass model of a .feature file: feature tags, Background, scenarios/outlines with their
+// tags, steps, Examples tables and line spans. Models are immutable and cached by git blob id,
+// so a file's content is tokenized once per run whether it comes from the working tree, an old
+// commit, or Cucumber's TestSourceRead, and whichever component asks first. The cache keeps the
+// FEATURE_MODEL_CACHE_SIZE (default 4096) most recently used models, so a long-lived process
+// (the change-map service) does not grow with every blob it has seen.
+//
+// Line numbers are 1-based. A scenario's span runs from its first tag line (or header) to the
+// next scenario/Background/Rule, end exclusive.
+//
+// Instance names and the Background block are the keys of the Tests' scenario: labels and the
+// Precondition's background: label. They differ from the sync's earlier line parser in three
+// ways: outline rows are numbered [ex n] across all Examples blocks (only the last block was
+// kept), empty cells keep their column, and the Background ends at the next header or tag line.
+// sync.LabelMigration moves existing issues to the new labels once.
+public final class FeatureModel {
+
+    private static final int CACHE_SIZE = cacheSize();
+    private static final Map<ObjectId, FeatureModel> CACHE = Collections.synchronizedMap(new Lru(CACHE_SIZE));
+    private static final AtomicLong PARSES = new AtomicLong();
+    private static final AtomicLong HITS = new AtomicLong();
+
+    public interface BlobLoader {
+        byte[] load() throws IOException;
+    }
+
+    public static final class Step {
+        public final int line;
+        public final String keyword;   // as written: Given/When/Then/And/But/*
+        public final String text;      // after the keyword
+        public final String source;    // the whole trimmed line
+
+        Step(int line, String keyword, String text, String source) {
+            this.line = line;
+            this.keyword = keyword;
+            this.text = text;
+            this.source = source;
+        }
+    }
+
+    public static final class Row {
+        public final int line;
+        public final List<String> cells;
+
+        Row(int line, List<String> cells) {
+            this.line = line;
+            this.cells = cells;
+        }
+    }
+
+    public static final class Examples {
+        public final int line;
+        public final List<String> tags;
+        public final List<String> header;   // empty when the table is missing
+        public final List<Row> rows;
+
+        Examples(int line, List<String> tags, List<String> header, List<Row> rows) {
+            this.line = line;
+            this.tags = tags;
+            this.header = header;
+            this.rows = rows;
+        }
+    }
+
+    public static final class Background {
+        public final int line;
+        public final int end;
+        public final List<Step> steps;
+        public final String block;   // title + body as written, trimmed
+
+        Background(int line, int end, List<Step> steps, String block) {
+            this.line = line;
+            this.end = end;
+            this.steps = steps;
+            this.block = block;
+        }
+
+        // Step lines only, one per line; null when there are none
+        public String stepsText() {
+            if (steps.isEmpty()) return null;
+            StringBuilder sb = new StringBuilder();
+            for (Step s : steps) sb.append(s.source).append('\n');
+            return sb.toString().trim();
+        }
+    }
+
+    // One executable instance: a plain scenario, or one Examples row of an outline
+    public static final class Instance {
+        public final String name;      // placeholders expanded, " [ex n]" for outline rows
+        public final String gherkin;   // "Scenario: <name>" + expanded steps
+        public final int line;         // header line, or the Examples row line
+        public final Map<String, String> row;   // empty for plain scenarios
+
+        Instance(String name, String gherkin, int line, Map<String, String> row) {
+            this.name = name;
+            this.gherkin = gherkin;
+            this.line = line;
+            this.row = row;
+        }
+    }
+
+    public static final class Region {
+        public final int start;   // inclusive
+        public final int end;     // exclusive
+        public final List<Instance> instances;
+
+        Region(int start, int end, List<Instance> instances) {
+            this.start = start;
+            this.end = end;
+            this.instances = instances;
+        }
+
+        public boolean contains(int lineNumber) {
+            return lineNumber >= start && lineNumber < end;
+        }
+    }
+
+    public static final class Scenario {
+        public final String name;
+        public final String keyword;
+        public final boolean outline;
+        public final List<String> tags;
+        public final int line;    // header
+        public final int start;   // first tag line, else header
+        public final int end;     // exclusive
+        public final List<Step> steps;
+        public final List<Examples> examples;
+
+        Scenario(String name, String keyword, List<String> tags, int line, int start, int end,
+                 List<Step> steps, List<Examples> examples) {
+            this.name = name;
+            this.keyword = keyword;
+            this.outline = !examples.isEmpty() || keyword.toLowerCase().contains("outline")
+                || keyword.toLowerCase().contains("template");
+            this.tags = tags;
+            this.line = line;
+            this.start = start;
+            this.end = end;
+            this.steps = steps;
+            this.examples = examples;
+        }
+
+        public boolean contains(int lineNumber) {
+            return lineNumber >= start && lineNumber < end;
+        }
+
+        // Outline rows are numbered across all Examples blocks, as in Cucumber's report order
+        public List<Instance> instances() {
+            List<Map<String, String>> rows = new ArrayList<>();
+            List<Integer> rowLines = new ArrayList<>();
+            for (Examples ex : examples) {
+                for (Row r : ex.rows) {
+                    Map<String, String> row = new LinkedHashMap<>();
+                    for (int i = 0; i < Math.min(ex.header.size(), r.cells.size()); i++) {
+                        row.put(ex.header.get(i), r.cells.get(i));
+                    }
+                    rows.add(row);
+                    rowLines.add(r.line);
+                }
+            }
+            if (rows.isEmpty()) {
+                return List.of(new Instance(name, gherkin(name, Collections.emptyMap()), line, Collections.emptyMap()));
+            }
+            List<Instance> out = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                Map<String, String> row = rows.get(i);
+                String expanded = expand(name, row) + " [ex " + (i + 1) + "]";
+                out.add(new Instance(expanded, gherkin(expanded, row), rowLines.get(i), Collections.unmodifiableMap(row)));
+            }
+            return out;
+        }
+
+        // Step texts (after the keyword) as they run for one of this scenario's instances
+        public List<String> stepTexts(Instance in) {
+            List<String> out = new ArrayList<>(steps.size());
+            for (Step s : steps) out.add(expand(s.text, in.row));
+            return out;
+        }
+
+        // Line regions and the instances an edit inside each one affects. A plain scenario is one
+        // region. For an outline, its own lines (tags, title, steps, up to the first Examples) affect
+        // every row, and an Examples title line affects that block's rows. Row lines are not a
+        // region: rows are told apart by content (see changedInstances), because inserting or
+        // removing one renumbers the [ex n] instances after it.
+        public List<Region> regions() {
+            List<Instance> all = instances();
+            if (!outline) return List.of(new Region(start, end, all));
+            List<Region> out = new ArrayList<>();
+            out.add(new Region(start, examples.isEmpty() ? end : examples.get(0).line, all));
+            int next = 0;
+            for (Examples ex : examples) {
+                int rowsEnd = Math.min(next + ex.rows.size(), all.size());
+                int firstRow = ex.rows.isEmpty() ? ex.line + 1 : ex.rows.get(0).line;
+                out.add(new Region(ex.line, firstRow, all.subList(next, rowsEnd)));
+                next = rowsEnd;
+            }
+            return out;
+        }
+
+        private String gherkin(String title, Map<String, String> row) {
+            StringBuilder sb = new StringBuilder("Scenario: ").append(title).append('\n');
+            for (Step s : steps) sb.append(expand(s.source, row)).append('\n');
+            return sb.toString().trim();
+        }
+    }
+
+    public final ObjectId blobId;
+    public final int bytes;
+    public final int lineCount;
+    public final String name;
+    public final List<String> tags;
+    public final Background background;   // null when absent
+    public final List<Scenario> scenarios;
+
+    private FeatureModel(ObjectId blobId, int bytes, int lineCount, String name, List<String> tags,
+                         Background background, List<Scenario> scenarios) {
+        this.blobId = blobId;
+        this.bytes = bytes;
+        this.lineCount = lineCount;
+        this.name = name;
+        this.tags = tags;
+        this.background = background;
+        this.scenarios = scenarios;
+    }
+
+    // ---------- Cached entry points ----------
+
+    public static FeatureModel of(String text) {
+        return of(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static FeatureModel of(byte[] content) {
+        ObjectId id = blobId(content);
+        FeatureModel cached = CACHE.get(id);
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return cached;
+        }
+        return cache(id, parse(id, content));
+    }
+
+    // For blobs read from git: the content is only loaded when the id is not cached yet
+    public static FeatureModel of(ObjectId blobId, BlobLoader loader) throws IOException {
+        FeatureModel cached = CACHE.get(blobId);
+        if (cached != null) {
+            HITS.incrementAndGet();
+            return cached;
+        }
+        ObjectId id = blobId.copy();
+        return cache(id, parse(id, loader.load()));
+    }
+
+    // Another thread may have parsed the same blob meanwhile; its model wins
+    private static FeatureModel cache(ObjectId id, FeatureModel model) {
+        FeatureModel raced = CACHE.putIfAbsent(id, model);
+        return raced != null ? raced : model;
+    }
+
+    // Bypasses the cache, for history walks that see each old blob once or twice
+    public static FeatureModel uncached(ObjectId blobId, byte[] content) {
+        return parse(blobId.copy(), content);
+    }
+
+    public static ObjectId blobId(byte[] content) {
+        return new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, content);
+    }
+
+    public static long parses() { return PARSES.get(); }
+    public static long cacheHits() { return HITS.get(); }
+
+    private static int cacheSize() {
+        String v = System.getenv("FEATURE_MODEL_CACHE_SIZE");
+        return v == null || v.isBlank() ? 4096 : Math.max(1, Integer.parseInt(v.trim()));
+    }
+
+    // Access-ordered map dropping its least recently used entry past the limit
+    private static final class Lru extends LinkedHashMap<ObjectId, FeatureModel> {
+        private static final long serialVersionUID = 1L;
+        private final int limit;
+
+        Lru(int limit) {
+            super(256, 0.75f, true);
+            this.limit = limit;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ObjectId, FeatureModel> eldest) {
+            return size() > limit;
+        }
+    }
+
+    // Scenario by name; a later duplicate name wins, as in the change map
+    public Map<String, Scenario> scenariosByName() {
+        Map<String, Scenario> out = new LinkedHashMap<>();
+        for (Scenario s : scenarios) out.put(s.name, s);
+        return out;
+    }
+
+    public List<Instance> instances() {
+        List<Instance> out = new ArrayList<>();
+        for (Scenario s : scenarios) out.addAll(s.instances());
+        return out;
+    }
+
+    // Instance by name, the key the sync labels Tests with; a later duplicate name wins
+    public Map<String, Instance> instancesByName() {
+        Map<String, Instance> out = new LinkedHashMap<>();
+        for (Instance in : instances()) out.put(in.name, in);
+        return out;
+    }
+
+    public Scenario scenarioAt(int lineNumber) {
+        for (Scenario s : scenarios) if (s.contains(lineNumber)) return s;
+        return null;
+    }
+
+    // The instance a report line belongs to: an outline's Examples row line, else the scenario
+    public Instance instanceAt(int lineNumber) {
+        Scenario s = scenarioAt(lineNumber);
+        if (s == null) return null;
+        List<Instance> all = s.instances();
+        if (!s.outline) return all.get(0);
+        for (Instance in : all) if (in.line == lineNumber) return in;
+        return null;
+    }
+
+    // Names of instances whose expanded steps differ from the same-named instance in previous.
+    // Instances missing from previous are left to the caller (they are NEW, not CHANGED).
+    public List<String> changedInstances(FeatureModel previous) {
+        Map<String, Instance> before = previous.instancesByName();
+        List<String> out = new ArrayList<>();
+        for (Instance in : instancesByName().values()) {
+            Instance old = before.get(in.name);
+            if (old != null && !old.gherkin.equals(in.gherkin)) out.add(in.name);
+        }
+        return out;
+    }
+
+    // ---------- Parser ----------
+
+    private static FeatureModel parse(ObjectId id, byte[] content) {
+        PARSES.incrementAndGet();
+        return new Parser(new String(content, StandardCharsets.UTF_8)).parse(id, content.length);
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final List<String> raw = new ArrayList<>();
+
+        private String featureName;
+        private List<String> featureTags = Collections.emptyList();
+        private final List<Scenario> scenarios = new ArrayList<>();
+
+        private List<String> pendingTags = new ArrayList<>();
+        private int pendingTagLine;
+
+        // open section: Background or scenario
+        private boolean inBackground;
+        private int bgLine;
+        private Background background;
+        private String scName, scKeyword;
+        private List<String> scTags;
+        private int scLine, scStart;
+        private List<Step> steps;
+        private List<Examples> examples;
+
+        // open Examples table (exRows != null while collecting)
+        private int exLine;
+        private List<String> exTags, exHeader;
+        private List<Row> exRows;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        FeatureModel parse(ObjectId id, int bytes) {
+            boolean inDocString = false;
+            String fence = null;
+            int n = text.length();
+            int pos = 0;
+            while (pos < n) {
+                int eol = pos;
+                while (eol < n && text.charAt(eol) != '\n' && text.charAt(eol) != '\r') eol++;
+                String line = text.substring(pos, eol);
+                raw.add(line);
+                int lineNo = raw.size();
+                pos = eol;
+                if (pos < n && text.charAt(pos) == '\r') pos++;
+                if (pos < n && text.charAt(pos) == '\n') pos++;
+
+                String t = line.trim();
+                if (inDocString) {
+                    if (t.startsWith(fence)) inDocString = false;
+                    continue;
+                }
+                if (t.startsWith("\"\"\"") || t.startsWith("```")) {
+                    inDocString = true;
+                    fence = t.substring(0, 3);
+                    continue;
+                }
+                if (t.isEmpty() || t.charAt(0) == '#') continue;
+
+                if (t.charAt(0) == '@') {
+                    if (pendingTags.isEmpty()) pendingTagLine = lineNo;
+                    for (String tok : t.split("\\s+")) {
+                        if (tok.startsWith("#")) break;
+                        if (tok.startsWith("@")) pendingTags.add(tok);
+                    }
+                    continue;
+                }
+                if (t.charAt(0) == '|') {
+                    row(lineNo, t);
+                    continue;   // data tables are not modelled
+                }
+
+                String keyword = headerKeyword(t);
+                if (keyword != null) {
+                    header(lineNo, keyword, t.substring(keyword.length() + 1).trim());
+                    continue;
+                }
+                step(lineNo, t);
+            }
+            closeSection(raw.size() + 1);
+            return new FeatureModel(id, bytes, raw.size(), featureName, featureTags, background,
+                Collections.unmodifiableList(scenarios));
+        }
+
+        private void header(int lineNo, String keyword, String title) {
+            String k = keyword.toLowerCase();
+            if (k.equals("feature")) {
+                featureName = title;
+                featureTags = takeTags();
+            } else if (k.equals("rule")) {
+                closeSection(sectionEnd(lineNo));
+                takeTags();
+            } else if (k.equals("background")) {
+                closeSection(sectionEnd(lineNo));
+                takeTags();
+                inBackground = true;
+                bgLine = lineNo;
+                steps = new ArrayList<>();
+            } else if (k.equals("examples") || k.equals("scenarios")) {
+                if (scName == null) { takeTags(); return; }
+                closeExamples();
+                exLine = lineNo;
+                exTags = takeTags();
+                exHeader = null;
+                exRows = new ArrayList<>();
+            } else {
+                int start = pendingTags.isEmpty() ? lineNo : pendingTagLine;
+                closeSection(start);
+                scName = title;
+                scKeyword = keyword;
+                scTags = takeTags();
+                scLine = lineNo;
+                scStart = start;
+                steps = new ArrayList<>();
+                examples = new ArrayList<>();
+            }
+        }
+
+        private void step(int lineNo, String t) {
+            if (steps == null || exRows != null) return;   // feature description, or text inside Examples
+            int sp = 0;
+            while (sp < t.length() && !Character.isWhitespace(t.charAt(sp))) sp++;
+            String kw = t.substring(0, sp);
+            if (!isStepKeyword(kw)) return;
+            steps.add(new Step(lineNo, kw, t.substring(sp).trim(), t));
+        }
+
+        private void row(int lineNo, String t) {
+            if (exRows == null) return;
+            List<String> cells = cells(t);
+            if (exHeader == null) exHeader = cells;
+            else exRows.add(new Row(lineNo, cells));
+        }
+
+        private int sectionEnd(int lineNo) {
+            return pendingTags.isEmpty() ? lineNo : pendingTagLine;
+        }
+
+        private void closeExamples() {
+            if (exRows == null) return;
+            examples.add(new Examples(exLine, exTags,
+                exHeader == null ? Collections.emptyList() : exHeader, Collections.unmodifiableList(exRows)));
+            exRows = null;
+            exHeader = null;
+        }
+
+        private void closeSection(int end) {
+            if (inBackground) {
+                StringBuilder block = new StringBuilder();
+                for (int i = bgLine; i < end && i <= raw.size(); i++) {
+                    block.append(raw.get(i - 1)).append(System.lineSeparator());
+                }
+                background = new Background(bgLine, end, Collections.unmodifiableList(steps), block.toString().trim());
+                inBackground = false;
+                steps = null;
+            } else if (scName != null) {
+                closeExamples();
+                scenarios.add(new Scenario(scName, scKeyword, scTags, scLine, scStart, end,
+                    Collections.unmodifiableList(steps), Collections.unmodifiableList(examples)));
+                scName = null;
+                steps = null;
+                examples = null;
+            }
+        }
+
+        private List<String> takeTags() {
+            List<String> out = pendingTags.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(pendingTags);
+            pendingTags = new ArrayList<>();
+            return out;
+        }
+    }
+
+    // "Scenario Outline" etc. when the trimmed line is a Gherkin header ("<keyword>:")
+    private static String headerKeyword(String t) {
+        int colon = t.indexOf(':');
+        if (colon <= 0) return null;
+        String k = t.substring(0, colon);
+        switch (k.toLowerCase()) {
+            case "feature": case "rule": case "background":
+            case "scenario": case "example": case "scenario outline": case "scenario template":
+            case "examples": case "scenarios":
+                return k;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isStepKeyword(String k) {
+        if (k.equals("*")) return true;
+        switch (k.toLowerCase()) {
+            case "given": case "when": case "then": case "and": case "but":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static List<String> cells(String row) {
+        List<String> out = new ArrayList<>();
+        int end = row.length();
+        if (end > 1 && row.charAt(end - 1) == '|') end--;
+        StringBuilder cur = new StringBuilder();
+        for (int i = 1; i < end; i++) {
+            char c = row.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                char nx = row.charAt(++i);
+                cur.append(nx == 'n' ? '\n' : nx);
+            } else if (c == '|') {
+                out.add(cur.toString().trim());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        out.add(cur.toString().trim());
+        return Collections.unmodifiableList(out);
+    }
+
+    static String expand(String text, Map<String, String> row) {
+        if (row.isEmpty() || text.indexOf('<') < 0) return text;
+        String out = text;
+        for (Map.Entry<String, String> e : row.entrySet()) {
+            out = out.replace("<" + e.getKey() + ">", e.getValue());
+        }
+        return out;
+    }
+}
@@ -1,47 +1,76 @@
 package model;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+
+import util.Log;
 
 public class ScenarioChangeTracker {
     
+    private static final Log LOG = Log.get(ScenarioChangeTracker.class);
+
     private Map<String, ChangeStatus> scenarioStatusMap = new HashMap<>();
+    private Map<String, String> movedFrom = new HashMap<>();
+    private Set<String> editedMoves = new HashSet<>();
     
     public enum ChangeStatus {
         NEW,        // First time seeing this scenario
         CHANGED,    // Scenario content modified
-        UNCHANGED   // Scenario exists but no changes detected
+        UNCHANGED,  // Scenario exists but no changes detected
+        MOVED       // Scenario came from another file; its existing Test is relabelled
     }
     
     public void markScenario(String scenarioKey, ChangeStatus status) {
         scenarioStatusMap.put(scenarioKey, status);
     }
     
+    // identical=false: the body changed a little on the way, so the Test also needs the new Gherkin
+    public void markMoved(String scenarioKey, String fromScenarioKey, boolean identical) {
+        scenarioStatusMap.put(scenarioKey, ChangeStatus.MOVED);
+        movedFrom.put(scenarioKey, fromScenarioKey);
+        if (!identical) editedMoves.add(scenarioKey);
+    }
+    
+    // Key the scenario had before it moved, or null
+    public String getMovedFrom(String scenarioKey) {
+        return movedFrom.get(scenarioKey);
+    }
+    
     public ChangeStatus getStatus(String scenarioKey) {
         return scenarioStatusMap.getOrDefault(scenarioKey, ChangeStatus.NEW);
     }
     
     public boolean hasChanged(String scenarioKey) {
         ChangeStatus status = getStatus(scenarioKey);
-        return status == ChangeStatus.CHANGED || status == ChangeStatus.NEW;
+        return status == ChangeStatus.CHANGED || status == ChangeStatus.NEW
+            || (status == ChangeStatus.MOVED && editedMoves.contains(scenarioKey));
     }
     
+    public Map<String, ChangeStatus> snapshot() {
+        return Collections.unmodifiableMap(scenarioStatusMap);
+    }
+
     public void printSummary() {
-        int newCount = 0, changedCount = 0, unchangedCount = 0;
+        int newCount = 0, changedCount = 0, unchangedCount = 0, movedCount = 0;
         
         for (ChangeStatus status : scenarioStatusMap.values()) {
             switch (status) {
                 case NEW: newCount++; break;
                 case CHANGED: changedCount++; break;
                 case UNCHANGED: unchangedCount++; break;
+                case MOVED: movedCount++; break;
             }
         }
         
-        System.out.println("\n========== CHANGE DETECTION SUMMARY ==========");
-        System.out.println("NEW scenarios:       " + newCount);
-        System.out.println("CHANGED scenarios:   " + changedCount);
-        System.out.println("UNCHANGED scenarios: " + unchangedCount);
-        System.out.println("TOTAL scenarios:     " + scenarioStatusMap.size());
-        System.out.println("==============================================\n");
+        LOG.info("\n========== CHANGE DETECTION SUMMARY ==========\n"
+            + "NEW scenarios:       " + newCount + "\n"
+            + "CHANGED scenarios:   " + changedCount + "\n"
+            + "UNCHANGED scenarios: " + unchangedCount + "\n"
+            + "MOVED scenarios:     " + movedCount + "\n"
+            + "TOTAL scenarios:     " + scenarioStatusMap.size() + "\n"
+            + "==============================================");
     }
 }
@@ -1,122 +1,143 @@
 package service;
 
+import changes.ScenarioMoveIndex;
+import model.FeatureModel;
 import model.ScenarioChangeTracker;
+import util.FeatureRoots;
 import util.GitDiffParser;
+import util.Log;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
 
 public class FeatureChangeDetector {
+
+    private static final Log LOG = Log.get(FeatureChangeDetector.class);
     
     public static ScenarioChangeTracker detectChanges(String fromCommit, String toCommit) {
-        System.out.println("Detecting scenario changes from " + fromCommit + " to " + toCommit);
+        LOG.info("Detecting scenario changes", "from", fromCommit, "to", toCommit);
         
         ScenarioChangeTracker tracker = new ScenarioChangeTracker();
         
         try {
             // Get all changed feature files
             List<String> changedFiles = GitDiffParser.getChangedFeatureFiles(fromCommit, toCommit);
-            System.out.println("Changed feature files: " + changedFiles.size());
+            LOG.info("Changed feature files", "count", changedFiles.size());
+            
+            // A renamed file is compared with its old path, and the scenarios it kept are moves
+            Map<String, String> renamed = GitDiffParser.getRenamedFeatureFiles(fromCommit, toCommit);
             
             // Analyze each changed file
+            Map<String, FeatureModel> models = new HashMap<>();
+            Map<String, List<String>> newScenarios = new LinkedHashMap<>();
+            Map<String, Set<String>> carried = new HashMap<>();
             for (String featureFile : changedFiles) {
-                System.out.println("\nAnalyzing: " + featureFile);
-                analyzeChangedFeature(featureFile, fromCommit, toCommit, tracker);
+                LOG.debug("Analyzing", "file", featureFile);
+                analyzeChangedFeature(featureFile, renamed.get(featureFile), fromCommit, toCommit,
+                    tracker, models, newScenarios, carried);
+            }
+            
+            // NEW scenarios that are really moves from another file keep their Test
+            if (!newScenarios.isEmpty()) {
+                markMoves(fromCommit, tracker, models, newScenarios, carried);
             }
             
         } catch (Exception e) {
-            System.err.println("Error detecting changes: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error detecting changes: " + e.getMessage(), e);
         }
         
         tracker.printSummary();
         return tracker;
     }
     
-    private static void analyzeChangedFeature(String featureFile, String fromCommit, 
-                                              String toCommit, ScenarioChangeTracker tracker) throws IOException {
+    // renamedFrom: the file's path at fromCommit when it was renamed, else null. carried collects
+    // the FROM instances a rename kept, by old feature key.
+    private static void analyzeChangedFeature(String featureFile, String renamedFrom, String fromCommit, 
+                                              String toCommit, ScenarioChangeTracker tracker,
+                                              Map<String, FeatureModel> models,
+                                              Map<String, List<String>> newScenarios,
+                                              Map<String, Set<String>> carried) throws IOException {
         
         // Get diff changes for this file
         List<GitDiffParser.DiffChange> diffChanges = GitDiffParser.getDiffChanges(featureFile, fromCommit, toCommit);
         
-        // Get scenario line ranges
-        Map<String, LineRange> scenarioRanges = getScenarioLineRanges(featureFile);
-        
-        // Match diff changes to scenarios
+        // Scenario regions from the shared parse-once model; outline rows are keyed per instance
+        // ("<expanded name> [ex n]"), the same way the sync labels its Tests
+        FeatureModel model = FeatureModel.of(Files.readAllBytes(Paths.get(featureFile)));
+        byte[] before = GitDiffParser.getFileAt(fromCommit, renamedFrom != null ? renamedFrom : featureFile);
+        FeatureModel previous = before == null ? null : FeatureModel.of(before);
+
+        // Match diff changes to the instances of the region they fall in
         Set<String> affectedScenarios = new HashSet<>();
         for (GitDiffParser.DiffChange change : diffChanges) {
-            for (Map.Entry<String, LineRange> entry : scenarioRanges.entrySet()) {
-                if (entry.getValue().contains(change.getLineNumber())) {
-                    affectedScenarios.add(entry.getKey());
-                }
+            FeatureModel.Scenario scenario = model.scenarioAt(change.getLineNumber());
+            if (scenario == null) continue;
+            for (FeatureModel.Region region : scenario.regions()) {
+                if (!region.contains(change.getLineNumber())) continue;
+                for (FeatureModel.Instance inst : region.instances) affectedScenarios.add(inst.name);
             }
         }
+        // Examples rows by content: edited rows and rows renumbered by an insert/delete above
+        if (previous != null) {
+            affectedScenarios.addAll(model.changedInstances(previous));
+        }
         
-        // Mark scenarios as CHANGED
-        String featureName = Paths.get(featureFile).getFileName().toString();
-        for (String scenarioName : affectedScenarios) {
+        // Mark scenarios as NEW (not in the previous version) or CHANGED
+        String featureName = FeatureRoots.configured().key(featureFile);
+        models.put(featureName, model);
+        Set<String> previousNames = previous == null ? Collections.emptySet() : previous.instancesByName().keySet();
+        Set<String> currentNames = model.instancesByName().keySet();
+        for (String scenarioName : currentNames) {
             String scenarioKey = buildScenarioKey(featureName, scenarioName);
-            tracker.markScenario(scenarioKey, ScenarioChangeTracker.ChangeStatus.CHANGED);
-            System.out.println("  → CHANGED: " + scenarioName);
+            if (!previousNames.contains(scenarioName)) {
+                tracker.markScenario(scenarioKey, ScenarioChangeTracker.ChangeStatus.NEW);
+                newScenarios.computeIfAbsent(featureName, k -> new ArrayList<>()).add(scenarioName);
+                LOG.debug("NEW", "feature", featureName, "scenario", scenarioName);
+            } else if (affectedScenarios.contains(scenarioName)) {
+                tracker.markScenario(scenarioKey, ScenarioChangeTracker.ChangeStatus.CHANGED);
+                LOG.debug("CHANGED", "feature", featureName, "scenario", scenarioName);
+            } else {
+                tracker.markScenario(scenarioKey, ScenarioChangeTracker.ChangeStatus.UNCHANGED);
+            }
         }
         
-        // Mark other scenarios in this file as UNCHANGED
-        for (String scenarioName : scenarioRanges.keySet()) {
-            if (!affectedScenarios.contains(scenarioName)) {
-                String scenarioKey = buildScenarioKey(featureName, scenarioName);
-                if (tracker.getStatus(scenarioKey) == ScenarioChangeTracker.ChangeStatus.NEW) {
-                    tracker.markScenario(scenarioKey, ScenarioChangeTracker.ChangeStatus.UNCHANGED);
-                }
+        // Scenarios a rename carried to another feature key keep their Test under the new label
+        String previousName = renamedFrom == null ? featureName : FeatureRoots.configured().key(renamedFrom);
+        if (previous != null && !previousName.equals(featureName)) {
+            Map<String, FeatureModel.Instance> previousInstances = previous.instancesByName();
+            for (FeatureModel.Instance inst : model.instancesByName().values()) {
+                FeatureModel.Instance old = previousInstances.get(inst.name);
+                if (old == null) continue;
+                tracker.markMoved(buildScenarioKey(featureName, inst.name),
+                    buildScenarioKey(previousName, inst.name), old.gherkin.equals(inst.gherkin));
+                carried.computeIfAbsent(previousName, k -> new HashSet<>()).add(inst.name);
+                LOG.debug("MOVED", "feature", featureName, "scenario", inst.name, "from", previousName);
             }
         }
     }
     
-    private static Map<String, LineRange> getScenarioLineRanges(String featurePath) throws IOException {
-        Map<String, LineRange> ranges = new HashMap<>();
-        List<String> lines = Files.readAllLines(Paths.get(featurePath));
-        
-        String currentScenario = null;
-        int scenarioStart = 0;
-        
-        for (int i = 0; i < lines.size(); i++) {
-            String line = lines.get(i).trim();
-            
-            if (line.startsWith("Scenario:") || line.startsWith("Scenario Outline:")) {
-                // Save previous scenario
-                if (currentScenario != null) {
-                    ranges.put(currentScenario, new LineRange(scenarioStart, i - 1));
-                }
-                
-                // Start new scenario
-                currentScenario = line.replaceFirst("Scenario\\s*(Outline)?:\\s*", "").trim();
-                scenarioStart = i + 1;
-            }
+    private static void markMoves(String fromCommit, ScenarioChangeTracker tracker,
+                                  Map<String, FeatureModel> models, Map<String, List<String>> newScenarios,
+                                  Map<String, Set<String>> carried) {
+        Map<String, Map<String, ScenarioMoveIndex.Move>> moves;
+        try {
+            moves = ScenarioMoveIndex.load(fromCommit, carried).match(models, newScenarios);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Move detection skipped", "error", e.getMessage());
+            return;
         }
-        
-        // Save last scenario
-        if (currentScenario != null) {
-            ranges.put(currentScenario, new LineRange(scenarioStart, lines.size()));
+        for (Map.Entry<String, Map<String, ScenarioMoveIndex.Move>> f : moves.entrySet()) {
+            for (Map.Entry<String, ScenarioMoveIndex.Move> m : f.getValue().entrySet()) {
+                ScenarioMoveIndex.Move move = m.getValue();
+                tracker.markMoved(buildScenarioKey(f.getKey(), m.getKey()),
+                    buildScenarioKey(move.fromFeature, move.fromScenario), move.identical);
+                LOG.debug("MOVED", "feature", f.getKey(), "scenario", m.getKey(), "from", move.fromFeature);
+            }
         }
-        
-        return ranges;
     }
     
     private static String buildScenarioKey(String featureName, String scenarioName) {
         return "feature:" + featureName + "::scenario:" + scenarioName.trim().replaceAll("\\s+", "-");
     }
-    
-    private static class LineRange {
-        int start;
-        int end;
-        
-        LineRange(int start, int end) {
-            this.start = start;
-            this.end = end;
-        }
-        
-        boolean contains(int lineNumber) {
-            return lineNumber >= start && lineNumber <= end;
-        }
-    }
 }
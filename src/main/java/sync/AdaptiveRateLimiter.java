@@ -0,0 +1,131 @@
+package sync;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Token bucket that backs off on 429/503 and on Atlassian's rate-limit headers,
+// then creeps back up towards the configured ceiling while responses stay healthy.
+public class AdaptiveRateLimiter {
+
+    private static final long DEFAULT_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final double maxRate;   // tokens per second ceiling
+    private final double minRate;
+    private final double burst;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long blockedUntilNanos;
+    private int consecutiveThrottles;
+
+    public AdaptiveRateLimiter(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("ratePerSecond must be > 0");
+        this.maxRate = ratePerSecond;
+        this.minRate = Math.max(0.1, ratePerSecond / 20);
+        this.burst = Math.max(1, burst);
+        this.rate = ratePerSecond;
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (now < blockedUntilNanos) {
+                    waitNanos = blockedUntilNanos - now;
+                } else {
+                    refill(now);
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        return;
+                    }
+                    waitNanos = (long) ((1 - tokens) / rate * 1e9);
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    // Feed every response here. Returns how long the caller should wait before
+    // retrying (0 when the response was not throttled).
+    public synchronized long onResponse(int status, Function<String, String> header) {
+        long now = System.nanoTime();
+        if (status == 429 || (status == 503 && header.apply("Retry-After") != null)) {
+            consecutiveThrottles++;
+            long delayMillis = retryDelayMillis(header);
+            blockedUntilNanos = Math.max(blockedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(delayMillis));
+            rate = Math.max(minRate, rate / 2);
+            tokens = 0;
+            return delayMillis;
+        }
+
+        consecutiveThrottles = 0;
+        if ("true".equalsIgnoreCase(header.apply("X-RateLimit-NearLimit"))) {
+            rate = Math.max(minRate, rate * 0.75);
+        } else {
+            String remaining = header.apply("X-RateLimit-Remaining");
+            if (remaining != null && parseLong(remaining, Long.MAX_VALUE) <= 1) {
+                rate = Math.max(minRate, rate * 0.75);
+            } else {
+                rate = Math.min(maxRate, rate + maxRate * 0.05);
+            }
+        }
+        return 0;
+    }
+
+    public synchronized double currentRate() {
+        return rate;
+    }
+
+    private void refill(long now) {
+        double elapsedSec = (now - lastRefillNanos) / 1e9;
+        tokens = Math.min(burst, tokens + elapsedSec * rate);
+        lastRefillNanos = now;
+    }
+
+    private long retryDelayMillis(Function<String, String> header) {
+        String retryAfter = header.apply("Retry-After");
+        if (retryAfter != null) {
+            String v = retryAfter.trim();
+            long secs = parseLong(v, -1);
+            if (secs >= 0) return clamp(TimeUnit.SECONDS.toMillis(secs));
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return clamp(Duration.between(Instant.now(), at.toInstant()).toMillis());
+            } catch (RuntimeException ignored) {
+                // fall through to the other hints
+            }
+        }
+        String reset = header.apply("X-RateLimit-Reset");
+        if (reset != null) {
+            try {
+                return clamp(Duration.between(Instant.now(), Instant.parse(reset.trim())).toMillis());
+            } catch (RuntimeException ignored) {
+                // not an ISO timestamp
+            }
+        }
+        // No hint from the server: exponential backoff
+        long backoff = DEFAULT_BACKOFF_MILLIS << Math.min(consecutiveThrottles - 1, 6);
+        return clamp(backoff);
+    }
+
+    private static long clamp(long millis) {
+        return Math.max(DEFAULT_BACKOFF_MILLIS / 10, Math.min(MAX_BACKOFF_MILLIS, millis));
+    }
+
+    private static long parseLong(String s, long def) {
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package sync;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Uploads whole .feature files through Xray's Cucumber import endpoint
+// (POST /import/feature?projectKey=...). The files are zipped straight into the
+// multipart request body through a pipe, so nothing is buffered in memory.
+public class FeatureImporter {
+
+    private static final int PIPE_BUFFER = 64 * 1024;
+
+    private final HttpClient http;
+    private final String importUrl;
+    private final XrayTokenProvider tokens;
+
+    public FeatureImporter(String importUrl, XrayTokenProvider tokens) {
+        this.http = HttpTransport.client();
+        this.importUrl = importUrl;
+        this.tokens = tokens;
+    }
+
+    public ImportResult importFeatures(String projectKey, Path featuresRoot, List<Path> featureFiles) {
+        if (featureFiles.isEmpty()) return new ImportResult(new JSONObject());
+        URI uri = URI.create(importUrl + "?projectKey=" + URLEncoder.encode(projectKey, StandardCharsets.UTF_8));
+
+        String token = tokens.token();
+        HttpResponse<String> resp = send(uri, token, featuresRoot, featureFiles);
+        if (resp.statusCode() == 401) {
+            resp = send(uri, tokens.invalidate(token), featuresRoot, featureFiles);
+        }
+        if (resp.statusCode() != 200) {
+            throw new RuntimeException("Xray feature import failed (" + resp.statusCode() + "): " + resp.body());
+        }
+        return new ImportResult(new JSONObject(resp.body()));
+    }
+
+    private HttpResponse<String> send(URI uri, String token, Path root, List<Path> files) {
+        String boundary = "----xray-import-" + UUID.randomUUID();
+        AtomicReference<IOException> writeError = new AtomicReference<>();
+        AtomicLong bytesOut = new AtomicLong();
+
+        HttpRequest req = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofMinutes(10))
+            .header("Authorization", "Bearer " + token)
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            .POST(HttpRequest.BodyPublishers.ofInputStream(streamingBody(boundary, root, files, writeError, bytesOut)))
+            .build();
+        long start = System.nanoTime();
+        HttpResponse<String> resp = null;
+        try {
+            resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+            if (writeError.get() != null) {
+                throw new UncheckedIOException("Failed to stream feature zip", writeError.get());
+            }
+            return resp;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Xray feature import failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted during Xray feature import", e);
+        } finally {
+            SyncMetrics.global().record("xray.importFeature", System.nanoTime() - start,
+                resp == null ? 0 : resp.statusCode(), bytesOut.get(),
+                resp == null ? 0 : resp.body().getBytes(StandardCharsets.UTF_8).length);
+        }
+    }
+
+    // Each subscription gets a fresh pipe fed by its own writer thread
+    private static Supplier<InputStream> streamingBody(String boundary, Path root, List<Path> files,
+                                                       AtomicReference<IOException> writeError, AtomicLong bytesOut) {
+        return () -> {
+            PipedInputStream in = new PipedInputStream(PIPE_BUFFER);
+            PipedOutputStream out;
+            try {
+                out = new PipedOutputStream(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Thread writer = new Thread(() -> {
+                try (OutputStream os = new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        bytesOut.addAndGet(len);
+                    }
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        bytesOut.incrementAndGet();
+                    }
+                }) {
+                    writeMultipart(os, boundary, root, files);
+                } catch (IOException e) {
+                    writeError.set(e);
+                }
+            }, "xray-import-zip");
+            writer.setDaemon(true);
+            writer.start();
+            return in;
+        };
+    }
+
+    private static void writeMultipart(OutputStream os, String boundary, Path root, List<Path> files) throws IOException {
+        String head = "--" + boundary + "\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"features.zip\"\r\n"
+            + "Content-Type: application/zip\r\n\r\n";
+        os.write(head.getBytes(StandardCharsets.US_ASCII));
+
+        ZipOutputStream zip = new ZipOutputStream(os);
+        for (Path f : files) {
+            Path rel = root != null && f.startsWith(root) ? root.relativize(f) : f.getFileName();
+            zip.putNextEntry(new ZipEntry(rel.toString().replace('\\', '/')));
+            Files.copy(f, zip);
+            zip.closeEntry();
+        }
+        zip.finish(); // finish, not close: the closing boundary still follows
+
+        os.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public static final class ImportResult {
+        private final List<String> testKeys = new ArrayList<>();
+        private final List<String> preconditionKeys = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        ImportResult(JSONObject json) {
+            collectKeys(json.optJSONArray("updatedOrCreatedTests"), testKeys);
+            collectKeys(json.optJSONArray("updatedOrCreatedPreconditions"), preconditionKeys);
+            JSONArray errs = json.optJSONArray("errors");
+            if (errs != null) {
+                for (int i = 0; i < errs.length(); i++) errors.add(String.valueOf(errs.get(i)));
+            }
+        }
+
+        private static void collectKeys(JSONArray arr, List<String> into) {
+            if (arr == null) return;
+            for (int i = 0; i < arr.length(); i++) {
+                String key = arr.getJSONObject(i).optString("key", null);
+                if (key != null) into.add(key);
+            }
+        }
+
+        public List<String> testKeys() { return testKeys; }
+        public List<String> preconditionKeys() { return preconditionKeys; }
+        public List<String> errors() { return errors; }
+    }
+}
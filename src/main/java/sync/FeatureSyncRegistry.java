@@ -0,0 +1,43 @@
+package sync;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Makes sure each (feature URI, content hash) is synced once per run. The first
+// caller does the work; concurrent callers wait on the same in-flight future and
+// later callers return immediately. A failed sync is forgotten so it can be retried.
+public class FeatureSyncRegistry {
+
+    private static final Map<String, CompletableFuture<Void>> RUNS = new ConcurrentHashMap<>();
+
+    public static boolean runOnce(String featureKey, String contentHash, Runnable sync) {
+        String key = featureKey + "#" + contentHash;
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> inFlight = RUNS.putIfAbsent(key, mine);
+        if (inFlight != null) {
+            try {
+                inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+            return false;
+        }
+
+        try {
+            sync.run();
+            mine.complete(null);
+            return true;
+        } catch (RuntimeException | Error e) {
+            RUNS.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    public static int size() {
+        return RUNS.size();
+    }
+}
@@ -0,0 +1,43 @@
+package sync;
+
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+
+// Status, headers and raw body of one exchange; JSON is only parsed when asked for.
+public class HttpResult {
+
+    private final int status;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+    HttpResult(int status, HttpHeaders headers, byte[] body) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body == null ? new byte[0] : body;
+    }
+
+    public int status() { return status; }
+
+    public String header(String name) {
+        return headers.firstValue(name).orElse(null);
+    }
+
+    public int bodyBytes() { return body.length; }
+
+    public String body() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    public JSONObject json() {
+        return new JSONObject(body());
+    }
+
+    public HttpResult expect(int expectedStatus, String what) {
+        if (status != expectedStatus) {
+            throw new HttpStatusException(what, status, body());
+        }
+        return this;
+    }
+}
@@ -0,0 +1,21 @@
+package sync;
+
+// A Jira/Xray response with an unexpected status; callers that can recover from particular
+// statuses (e.g. a 400 naming a required field) check status() instead of parsing the message.
+public class HttpStatusException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+    private final String body;
+
+    public HttpStatusException(String what, int status, String body) {
+        super(what + " failed (" + status + "): " + body);
+        this.status = status;
+        this.body = body;
+    }
+
+    public int status() { return status; }
+
+    public String body() { return body; }
+}
@@ -0,0 +1,110 @@
+package sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Shared java.net.http client for the Jira/Xray sync: HTTP/2 with keep-alive
+// connection reuse, gzip in both directions, and every exchange gated by the
+// per-host RequestThrottle. Each call is recorded in SyncMetrics under its
+// logical operation name, including time spent waiting on the throttle.
+public class HttpTransport {
+
+    private static final HttpClient SHARED = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(Duration.ofSeconds(30))
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+    private static final int MIN_GZIP_BYTES = 1024;
+
+    private final RequestThrottle throttle;
+    private final boolean gzipRequests;
+
+    public HttpTransport(RequestThrottle throttle, boolean gzipRequests) {
+        this.throttle = throttle;
+        this.gzipRequests = gzipRequests;
+    }
+
+    public static HttpClient client() {
+        return SHARED;
+    }
+
+    public HttpResult get(String operation, String url, String[] headers) {
+        return send(operation, "GET", url, headers, null);
+    }
+
+    public HttpResult post(String operation, String url, String[] headers, String body) {
+        return send(operation, "POST", url, headers, body);
+    }
+
+    public HttpResult put(String operation, String url, String[] headers, String body) {
+        return send(operation, "PUT", url, headers, body);
+    }
+
+    // operation: metrics name such as "jira.search"; headers: preset name/value pairs
+    public HttpResult send(String operation, String method, String url, String[] headers, String body) {
+        HttpRequest request = buildRequest(method, url, headers, body);
+        long bytesOut = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        long start = System.nanoTime();
+        HttpResult result = null;
+        try {
+            result = throttle.execute(url, () -> exchange(request), HttpResult::status, HttpResult::header);
+            return result;
+        } finally {
+            SyncMetrics.global().record(operation, System.nanoTime() - start,
+                result == null ? 0 : result.status(), bytesOut, result == null ? 0 : result.bodyBytes());
+        }
+    }
+
+    private HttpRequest buildRequest(String method, String url, String[] headers, String body) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(url))
+            .timeout(REQUEST_TIMEOUT)
+            .headers(headers)
+            .header("Accept-Encoding", "gzip");
+        if (body == null) {
+            return b.method(method, HttpRequest.BodyPublishers.noBody()).build();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (gzipRequests && bytes.length >= MIN_GZIP_BYTES) {
+            b.header("Content-Encoding", "gzip");
+            bytes = gzip(bytes);
+        }
+        return b.method(method, HttpRequest.BodyPublishers.ofByteArray(bytes)).build();
+    }
+
+    private static HttpResult exchange(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> resp = SHARED.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        byte[] raw = resp.body();
+        if ("gzip".equalsIgnoreCase(resp.headers().firstValue("Content-Encoding").orElse(""))) {
+            raw = gunzip(raw);
+        }
+        return new HttpResult(resp.statusCode(), resp.headers(), raw);
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream gz = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return gz.readAllBytes();
+        }
+    }
+}
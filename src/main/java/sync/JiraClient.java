@@ -0,0 +1,156 @@
+package sync;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Jira REST calls used by the sync. Searches always name the fields they read.
+public class JiraClient {
+
+    private final HttpTransport http;
+    private final String issueUrl;   // e.g. https://<site>.atlassian.net/rest/api/3/issue
+    private final String searchUrl;
+    private final String bulkEditUrl;
+    private final String[] jsonHeaders;
+
+    public JiraClient(HttpTransport http, String issueUrl, String email, String apiToken) {
+        this.http = http;
+        this.issueUrl = issueUrl;
+        this.searchUrl = issueUrl.replace("/issue", "/search/jql");
+        this.bulkEditUrl = issueUrl.replace("/issue", "/bulk/issues/fields");
+        String basic = Base64.getEncoder().encodeToString((email + ":" + apiToken).getBytes(StandardCharsets.UTF_8));
+        this.jsonHeaders = new String[] {
+            "Authorization", "Basic " + basic,
+            "Content-Type", "application/json",
+            "Accept", "application/json"
+        };
+    }
+
+    public IssueRef findFirst(String jql) {
+        List<JSONObject> issues = search(jql, 1, "key");
+        return issues.isEmpty() ? null : IssueRef.of(issues.get(0));
+    }
+
+    public List<JSONObject> search(String jql, int maxResults, String... fields) {
+        JSONObject payload = new JSONObject()
+            .put("jql", jql)
+            .put("fields", new JSONArray(fields))
+            .put("maxResults", maxResults);
+        JSONArray issues = http.post("jira.search", searchUrl, jsonHeaders, payload.toString())
+            .expect(200, "Jira search")
+            .json()
+            .optJSONArray("issues");
+        List<JSONObject> out = new ArrayList<>();
+        if (issues != null) {
+            for (int i = 0; i < issues.length(); i++) out.add(issues.getJSONObject(i));
+        }
+        return out;
+    }
+
+    // Follows nextPageToken until the result set is exhausted
+    public List<JSONObject> searchAll(String jql, String... fields) {
+        List<JSONObject> out = new ArrayList<>();
+        String pageToken = null;
+        do {
+            JSONObject payload = new JSONObject()
+                .put("jql", jql)
+                .put("fields", new JSONArray(fields))
+                .put("maxResults", 100);
+            if (pageToken != null) payload.put("nextPageToken", pageToken);
+            JSONObject page = http.post("jira.search", searchUrl, jsonHeaders, payload.toString()).expect(200, "Jira search").json();
+            JSONArray issues = page.optJSONArray("issues");
+            if (issues != null) {
+                for (int i = 0; i < issues.length(); i++) out.add(issues.getJSONObject(i));
+            }
+            pageToken = page.optString("nextPageToken", null);
+        } while (pageToken != null && !pageToken.isEmpty());
+        return out;
+    }
+
+    // key in (...) search in chunks of 100
+    public List<JSONObject> byKeys(List<String> keys, String... fields) {
+        List<JSONObject> out = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += 100) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + 100));
+            out.addAll(search("key in (" + String.join(",", chunk) + ")", chunk.size(), fields));
+        }
+        return out;
+    }
+
+    // The create response already carries id and key, no follow-up GET needed
+    public IssueRef create(JSONObject fields) {
+        HttpResult r = http.post("jira.create", issueUrl, jsonHeaders, new JSONObject().put("fields", fields).toString())
+            .expect(201, "Jira issue create");
+        return IssueRef.of(r.json());
+    }
+
+    public void addLabels(String issueKey, List<String> labels) {
+        updateLabels(issueKey, labels, List.of());
+    }
+
+    // One edit: removals apply before additions, so a label in both lists stays
+    public void updateLabels(String issueKey, List<String> add, List<String> remove) {
+        JSONArray ops = new JSONArray();
+        for (String label : remove) ops.put(new JSONObject().put("remove", label));
+        for (String label : add) ops.put(new JSONObject().put("add", label));
+        JSONObject body = new JSONObject().put("update", new JSONObject().put("labels", ops));
+        http.put("jira.labels", issueUrl + "/" + issueKey, jsonHeaders, body.toString()).expect(204, "Jira label update");
+    }
+
+    // Bulk edit (POST /bulk/issues/fields), up to 1000 issues per request; option is ADD, REMOVE
+    // or REPLACE. Jira runs each request as a background task; the task ids are returned.
+    public List<String> bulkEditLabels(List<String> issueKeys, String option, List<String> labels) {
+        JSONArray names = new JSONArray();
+        for (String label : labels) names.put(new JSONObject().put("name", label));
+        JSONObject edit = new JSONObject().put("labelsFields", new JSONArray().put(new JSONObject()
+            .put("fieldId", "labels")
+            .put("bulkEditMultiSelectFieldOption", option)
+            .put("labels", names)));
+        List<String> tasks = new ArrayList<>();
+        for (List<String> chunk : chunks(issueKeys, 1000)) {
+            JSONObject body = new JSONObject()
+                .put("selectedIssueIdsOrKeys", new JSONArray(chunk))
+                .put("selectedActions", new JSONArray().put("labels"))
+                .put("editedFieldsInput", edit)
+                .put("sendBulkNotification", false);
+            tasks.add(http.post("jira.bulkEdit", bulkEditUrl, jsonHeaders, body.toString())
+                .expect(201, "Jira bulk edit").json().optString("taskId"));
+        }
+        return tasks;
+    }
+
+    // PUT /issue/archive, up to 1000 issues per request; returns how many were archived
+    public int archive(List<String> issueKeys) {
+        int archived = 0;
+        for (List<String> chunk : chunks(issueKeys, 1000)) {
+            JSONObject body = new JSONObject().put("issueIdsOrKeys", new JSONArray(chunk));
+            archived += http.put("jira.archive", issueUrl + "/archive", jsonHeaders, body.toString())
+                .expect(200, "Jira archive").json().optInt("numberOfIssuesUpdated");
+        }
+        return archived;
+    }
+
+    private static List<List<String>> chunks(List<String> items, int size) {
+        List<List<String>> out = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += size) out.add(items.subList(i, Math.min(i + size, items.size())));
+        return out;
+    }
+
+    public static final class IssueRef {
+        public final String id;
+        public final String key;
+
+        IssueRef(String id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        public static IssueRef of(JSONObject issue) {
+            return new IssueRef(issue.optString("id", null), issue.optString("key", null));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package sync;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import model.FeatureModel;
+import util.FeatureRoots;
+import util.Log;
+
+// One-time relabel for the keys FeatureModel derives differently from the sync's earlier line
+// parser. Run it once, before the first sync with FeatureModel keys:
+//
+//   java -cp ... sync.LabelMigration [--apply]
+//
+// Without --apply the planned relabels are only logged.
+//
+// Outline rows: the old parser kept only an outline's last Examples block, numbered [ex 1..k],
+// and dropped empty cells, shifting the columns after them. Every row is now an instance, numbered
+// [ex n] across all blocks, and empty cells keep their column. The Tests of the rows the old parser
+// knew are moved from their old scenario: label to the row's new one.
+// Background: the old block ran past an untagged Scenario Outline, Example or Rule header up to the
+// next "Scenario:", "Feature:" or tag line; it now ends at the next header or tag line. The
+// feature's Precondition is moved from its old background: label to the new one.
+//
+// A relabel whose new label is held by an issue that is not itself being relabelled (e.g. one a
+// sync with the new keys created) is skipped with a warning, which also makes a second run a no-op.
+public class LabelMigration {
+
+    private static final Log LOG = Log.get(LabelMigration.class);
+    private static final int LABELS_PER_SEARCH = 50;
+
+    private final JiraClient jira;
+    private final String projectKey;
+    private final boolean apply;
+    private int relabelled;
+    private int skipped;
+
+    public LabelMigration(JiraClient jira, String projectKey, boolean apply) {
+        this.jira = jira;
+        this.projectKey = projectKey;
+        this.apply = apply;
+    }
+
+    public static void main(String[] args) throws IOException {
+        SyncClients clients = SyncClients.shared();
+        String projectKey = clients.config().jiraProjectKey();
+        if (projectKey == null || projectKey.isBlank()) {
+            throw new IllegalStateException("JIRA_PROJECT_KEY is required to migrate labels");
+        }
+        boolean apply = List.of(args).contains("--apply");
+        LabelMigration migration = new LabelMigration(clients.jira(), projectKey, apply);
+        FeatureRoots roots = FeatureRoots.configured();
+        for (List<Path> files : roots.discover().values()) {
+            for (Path file : files) {
+                String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                migration.migrate(roots.key(file), text);
+            }
+        }
+        LOG.info(apply ? "Label migration applied" : "Label migration planned (run with --apply to relabel)",
+            "relabelled", migration.relabelled, "skipped", migration.skipped);
+        Log.flush();
+    }
+
+    public void migrate(String featureName, String featureText) {
+        FeatureModel model = FeatureModel.of(featureText);
+        String featureLabel = "feature:" + featureName;
+
+        Map<String, String> scenarioLabels = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : legacyInstanceNames(model).entrySet()) {
+            scenarioLabels.put(scenarioLabel(e.getKey()), scenarioLabel(e.getValue()));
+        }
+        if (!scenarioLabels.isEmpty()) relabel("Test", featureLabel, scenarioLabels);
+
+        String legacyBlock = legacyBackgroundBlock(featureText);
+        String block = model.background == null || model.background.block.isEmpty() ? null : model.background.block;
+        if (legacyBlock != null && block != null) {
+            String from = "background:" + slugify(legacyBlock);
+            String to = "background:" + slugify(block);
+            if (!from.equals(to)) relabel("Precondition", featureLabel, Map.of(from, to));
+        }
+    }
+
+    // Moves the feature's issues from each old label to its new one. Holders of a new label that
+    // are not moving away from it block that relabel; blocking is repeated until nothing changes,
+    // so a chain [ex 1] -> [ex 2] -> [ex 3] is only partly applied when its end is taken.
+    private void relabel(String issueType, String featureLabel, Map<String, String> newByOld) {
+        Set<String> labels = new LinkedHashSet<>(newByOld.keySet());
+        labels.addAll(newByOld.values());
+        Map<String, List<String>> holders = holders(issueType, featureLabel, new ArrayList<>(labels));
+
+        Map<String, String[]> moves = new LinkedHashMap<>();   // issue key -> {old label, new label}
+        for (Map.Entry<String, String> e : newByOld.entrySet()) {
+            for (String key : holders.getOrDefault(e.getKey(), List.of())) {
+                moves.putIfAbsent(key, new String[] { e.getKey(), e.getValue() });
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var it = moves.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, String[]> m = it.next();
+                String to = m.getValue()[1];
+                for (String holder : holders.getOrDefault(to, List.of())) {
+                    String[] holderMove = moves.get(holder);
+                    if (holderMove == null || !holderMove[0].equals(to)) {
+                        LOG.warn("Label migration skipped: new label already in use", "issue", m.getKey(),
+                            "from", m.getValue()[0], "to", to, "heldBy", holder);
+                        skipped++;
+                        it.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, String[]> m : moves.entrySet()) {
+            String[] swap = m.getValue();
+            LOG.info(apply ? "Relabelling" : "Would relabel", "type", issueType, "issue", m.getKey(),
+                "feature", featureLabel, "from", swap[0], "to", swap[1]);
+            if (apply) jira.updateLabels(m.getKey(), List.of(swap[1]), List.of(swap[0]));
+            relabelled++;
+        }
+    }
+
+    // Issue keys by label, among the feature's issues carrying any of the labels
+    private Map<String, List<String>> holders(String issueType, String featureLabel, List<String> labels) {
+        Map<String, List<String>> out = new HashMap<>();
+        for (int i = 0; i < labels.size(); i += LABELS_PER_SEARCH) {
+            List<String> chunk = labels.subList(i, Math.min(i + LABELS_PER_SEARCH, labels.size()));
+            List<String> quoted = new ArrayList<>();
+            for (String l : chunk) quoted.add(quote(l));
+            String jql = String.format("project=%s AND issuetype=%s AND labels = %s AND labels in (%s)",
+                projectKey, issueType, quote(featureLabel), String.join(",", quoted));
+            for (JSONObject issue : jira.searchAll(jql, "labels")) {
+                JSONArray have = issue.getJSONObject("fields").optJSONArray("labels");
+                if (have == null) continue;
+                for (Object l : have.toList()) {
+                    if (chunk.contains(l)) out.computeIfAbsent((String) l, k -> new ArrayList<>()).add(issue.getString("key"));
+                }
+            }
+        }
+        return out;
+    }
+
+    // Old instance name -> current name, for the outline rows whose name changed. The old parser's
+    // rows are the last Examples block's, with empty cells dropped before pairing with the header.
+    static Map<String, String> legacyInstanceNames(FeatureModel model) {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (FeatureModel.Scenario sc : model.scenarios) {
+            if (!sc.outline || sc.examples.isEmpty()) continue;
+            FeatureModel.Examples last = sc.examples.get(sc.examples.size() - 1);
+            if (last.rows.isEmpty()) continue;
+            Map<Integer, String> currentByLine = new HashMap<>();
+            for (FeatureModel.Instance in : sc.instances()) currentByLine.put(in.line, in.name);
+            List<String> header = nonEmpty(last.header);
+            for (int j = 0; j < last.rows.size(); j++) {
+                FeatureModel.Row row = last.rows.get(j);
+                List<String> values = nonEmpty(row.cells);
+                Map<String, String> cells = new LinkedHashMap<>();
+                for (int i = 0; i < Math.min(header.size(), values.size()); i++) cells.put(header.get(i), values.get(i));
+                String legacy = expand(sc.name, cells) + " [ex " + (j + 1) + "]";
+                String current = currentByLine.get(row.line);
+                if (current != null && !legacy.equals(current)) out.put(legacy, current);
+            }
+        }
+        return out;
+    }
+
+    // The old parser's Background block: from "Background:" up to the next "Scenario:", "Feature:"
+    // or tag line
+    static String legacyBackgroundBlock(String featureText) {
+        StringBuilder block = new StringBuilder();
+        boolean inside = false;
+        for (String line : featureText.split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("Background:")) {
+                inside = true;
+                block.append(line).append(System.lineSeparator());
+                continue;
+            }
+            if (inside && (trimmed.startsWith("Scenario:") || trimmed.startsWith("Feature:") || trimmed.startsWith("@"))) {
+                break;
+            }
+            if (inside) block.append(line).append(System.lineSeparator());
+        }
+        return block.length() == 0 ? null : block.toString().trim();
+    }
+
+    private static List<String> nonEmpty(List<String> cells) {
+        List<String> out = new ArrayList<>();
+        for (String c : cells) if (!c.isEmpty()) out.add(c);
+        return out;
+    }
+
+    private static String expand(String text, Map<String, String> row) {
+        String out = text;
+        for (Map.Entry<String, String> e : row.entrySet()) out = out.replace("<" + e.getKey() + ">", e.getValue());
+        return out;
+    }
+
+    // Same label schemes as the sync (utils.slugify for the Background block)
+    private static String scenarioLabel(String instanceName) {
+        return "scenario:" + instanceName.trim().replaceAll("\\s+", "-");
+    }
+
+    private static String slugify(String s) {
+        return s.trim().toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-+|-+$", "");
+    }
+
+    private static String quote(String label) {
+        return "\"" + label.replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,68 @@
+package sync;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free log-linear histogram of microsecond latencies, HDR style: exact below
+// 64us, then 32 sub-buckets per power of two (about 3% relative error) up to ~1h.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final long MAX_MICROS = 3_600_000_000L;
+    private static final int BUCKETS = indexOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(long micros) {
+        long v = Math.max(0, Math.min(MAX_MICROS, micros));
+        counts.incrementAndGet(indexOf(v));
+        total.increment();
+        sumMicros.add(v);
+        maxMicros.accumulate(v);
+    }
+
+    public long count() { return total.sum(); }
+    public long sumMicros() { return sumMicros.sum(); }
+    public long maxMicros() { return maxMicros.get(); }
+
+    // Upper bound of the bucket holding the given percentile (0-100)
+    public long percentileMicros(double pct) {
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(pct / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), maxMicros());
+        }
+        return maxMicros();
+    }
+
+    // Recorded values <= micros (bucket resolution), for cumulative "le" buckets
+    public long countAtOrBelow(long micros) {
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && upperBound(i) <= micros; i++) {
+            seen += counts.get(i);
+        }
+        return seen;
+    }
+
+    static int indexOf(long v) {
+        if (v < LINEAR) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - 5;
+        return LINEAR + (shift - 1) * SUB_BUCKETS + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR) return index;
+        int k = index - LINEAR;
+        int shift = k / SUB_BUCKETS + 1;
+        long mantissa = k % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,80 @@
+package sync;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+// Per-host gate for outbound calls: bounded concurrency plus an adaptive rate limiter.
+// Generic over the response type so it works with any HTTP client.
+public class RequestThrottle {
+
+    private final int maxConcurrentPerHost;
+    private final double ratePerSecond;
+    private final int burst;
+    private final int maxRetries;
+
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    private final Map<String, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    public RequestThrottle(int maxConcurrentPerHost, double ratePerSecond, int burst, int maxRetries) {
+        this.maxConcurrentPerHost = Math.max(1, maxConcurrentPerHost);
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public <R> R execute(String url, Callable<R> call, ToIntFunction<R> status, BiFunction<R, String, String> header) {
+        String host = hostOf(url);
+        Semaphore sem = permits.computeIfAbsent(host, h -> new Semaphore(maxConcurrentPerHost, true));
+        AdaptiveRateLimiter limiter = limiter(host);
+
+        for (int attempt = 0; ; attempt++) {
+            R resp;
+            try {
+                limiter.acquire();
+                sem.acquire();
+                try {
+                    resp = call.call();
+                } finally {
+                    sem.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while calling " + host, e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Call to " + host + " failed: " + e.getMessage(), e);
+            }
+
+            final R r = resp;
+            long retryAfterMillis = limiter.onResponse(status.applyAsInt(r), name -> header.apply(r, name));
+            if (retryAfterMillis == 0 || attempt >= maxRetries) {
+                return resp;
+            }
+            // the limiter already blocks new permits until the server's deadline
+        }
+    }
+
+    public AdaptiveRateLimiter limiter(String host) {
+        return limiters.computeIfAbsent(host, h -> new AdaptiveRateLimiter(ratePerSecond, burst));
+    }
+
+    public int inFlight(String host) {
+        Semaphore sem = permits.get(host);
+        return sem == null ? 0 : maxConcurrentPerHost - sem.availablePermits();
+    }
+
+    static String hostOf(String url) {
+        try {
+            String h = URI.create(url).getHost();
+            return h == null ? url : h.toLowerCase();
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+}
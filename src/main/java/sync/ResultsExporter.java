@@ -0,0 +1,316 @@
+package sync;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import changes.FeatureScenarioChangeMap;
+import model.FeatureModel;
+import util.Log;
+
+// Pushes execution results from Cucumber's cucumber.json to Xray as one Test Execution.
+// The report is read with a streaming token parser (embeddings and step text are skipped,
+// never materialised); only one feature's scenario statuses and one upload batch are held
+// in memory at a time. Scenarios map to Tests through the feature:/scenario: labels.
+// XraySyncPlugin runs it when a run finishes; main() exports an existing report.
+public class ResultsExporter {
+
+    private static final Log LOG = Log.get(ResultsExporter.class);
+
+    public static final String DEFAULT_REPORT = "target/cucumber-report/junit/cucumber.json";
+
+    private final JiraClient jira;
+    private final XrayClient xray;
+    private final String importUrl;
+    private final String projectKey;
+    private final int batchSize;
+
+    private final List<JSONObject> batch = new ArrayList<>();
+    private String executionKey;   // created by the first batch, extended by the rest
+    private int exported;
+    private int unmapped;
+
+    public ResultsExporter(SyncClients clients, String projectKey, int batchSize) {
+        this.jira = clients.jira();
+        this.xray = clients.xray();
+        this.importUrl = clients.xrayImportExecutionUrl();
+        this.projectKey = projectKey;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public static void main(String[] args) throws IOException {
+        SyncClients clients = SyncClients.shared();
+        String projectKey = clients.config().jiraProjectKey();
+        if (projectKey == null || projectKey.isBlank()) {
+            throw new IllegalStateException("JIRA_PROJECT_KEY is required to export results");
+        }
+        Path report = Paths.get(args.length > 0 ? args[0] : DEFAULT_REPORT);
+        ResultsExporter exporter = new ResultsExporter(clients, projectKey, clients.config().resultsBatchSize());
+        String key = exporter.export(report);
+        LOG.info("Results exported", "results", exporter.exported, "execution", key, "unmapped", exporter.unmapped);
+        SyncMetrics.global().dumpTo(clients.config().syncMetricsDir());
+        Log.flush();
+    }
+
+    public String export(Path report) throws IOException {
+        try (JsonParser p = new JsonFactory().createParser(report.toFile())) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Not a Cucumber JSON report: " + report);
+            }
+            while (p.nextToken() == JsonToken.START_OBJECT) {
+                readFeature(p);
+            }
+        }
+        flush();
+        return executionKey;
+    }
+
+    public int exported() { return exported; }
+    public int unmapped() { return unmapped; }
+
+    // "uri" comes after "elements" in Cucumber's output, so the feature's scenario
+    // results are kept until the feature object closes.
+    private void readFeature(JsonParser p) throws IOException {
+        String uri = null;
+        List<ScenarioResult> scenarios = new ArrayList<>();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if ("uri".equals(field)) {
+                uri = p.getText();
+            } else if ("elements".equals(field)) {
+                readElements(p, scenarios);
+            } else {
+                p.skipChildren();
+            }
+        }
+        if (uri != null) emit(featureName(uri), instanceNames(featurePath(uri), scenarios));
+    }
+
+    // Outline rows get the instance name the sync labels their Test with, found by the row's line
+    // in the feature file. Without the file, the row index in the id is used; it restarts in each
+    // Examples block, so it only agrees for outlines with a single block.
+    private static List<ScenarioResult> instanceNames(Path file, List<ScenarioResult> scenarios) {
+        FeatureModel model = null;
+        for (int i = 0; i < scenarios.size(); i++) {
+            ScenarioResult r = scenarios.get(i);
+            if (r.exampleRow < 0) continue;
+            if (model == null) {
+                try {
+                    model = FeatureModel.of(Files.readAllBytes(file));
+                } catch (IOException | RuntimeException e) {
+                    model = FeatureModel.of("");
+                }
+            }
+            FeatureModel.Instance in = model.instanceAt(r.line);
+            String name = in != null ? in.name : r.name + " [ex " + r.exampleRow + "]";
+            scenarios.set(i, new ScenarioResult(name, r.status, r.start, r.durationNanos, r.line, -1));
+        }
+        return scenarios;
+    }
+
+    private void readElements(JsonParser p, List<ScenarioResult> out) throws IOException {
+        String backgroundStatus = null;
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            String type = null, keyword = null, name = null, id = null, start = null;
+            String status = null;
+            int line = 0;
+            long durationNanos = 0;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                switch (field) {
+                    case "type": type = p.getText(); break;
+                    case "keyword": keyword = p.getText(); break;
+                    case "name": name = p.getText(); break;
+                    case "id": id = p.getText(); break;
+                    case "line": line = p.getIntValue(); break;
+                    case "start_timestamp": start = p.getText(); break;
+                    case "steps":
+                    case "before":
+                    case "after": {
+                        long[] dur = new long[1];
+                        status = worst(status, readResults(p, dur));
+                        durationNanos += dur[0];
+                        break;
+                    }
+                    default: p.skipChildren();
+                }
+            }
+            if ("background".equals(type)) {
+                backgroundStatus = status; // applies to the scenario that follows
+                continue;
+            }
+            status = worst(status, backgroundStatus);
+            backgroundStatus = null;
+            if (name == null) continue;
+            int exampleRow = -1;   // named by instanceNames once the feature's uri is known
+            if (keyword != null && (keyword.contains("Outline") || keyword.contains("Template"))) {
+                exampleRow = exampleRow(id);
+            }
+            out.add(new ScenarioResult(name, status == null ? "TODO" : status, start, durationNanos, line, exampleRow));
+        }
+    }
+
+    // Array of steps/hooks: only result.status and result.duration are read
+    private static String readResults(JsonParser p, long[] durationOut) throws IOException {
+        String status = null;
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return null;
+        }
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                p.nextToken();
+                if (!"result".equals(field)) {
+                    p.skipChildren();
+                    continue;
+                }
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String rf = p.currentName();
+                    p.nextToken();
+                    if ("status".equals(rf)) status = worst(status, xrayStatus(p.getText()));
+                    else if ("duration".equals(rf)) durationOut[0] += p.getLongValue();
+                    else p.skipChildren();
+                }
+            }
+        }
+        return status;
+    }
+
+    private void emit(String featureName, List<ScenarioResult> scenarios) {
+        if (scenarios.isEmpty()) return;
+        Map<String, String> testKeyByScenarioLabel = testKeys(featureName);
+        for (ScenarioResult r : scenarios) {
+            String label = "scenario:" + r.name.trim().replaceAll("\\s+", "-");
+            String testKey = testKeyByScenarioLabel.get(label);
+            if (testKey == null) {
+                unmapped++;
+                continue;
+            }
+            JSONObject test = new JSONObject().put("testKey", testKey).put("status", r.status);
+            if (r.start != null) {
+                try {
+                    Instant started = Instant.parse(r.start);
+                    test.put("start", started.toString())
+                        .put("finish", started.plusNanos(r.durationNanos).toString());
+                } catch (RuntimeException ignored) {
+                    // unparseable timestamp: status only
+                }
+            }
+            batch.add(test);
+            if (batch.size() >= batchSize) flush();
+        }
+    }
+
+    private Map<String, String> testKeys(String featureName) {
+        String jql = String.format("project=%s AND issuetype=Test AND labels = \"feature:%s\"",
+            projectKey, featureName.replace("\"", "\\\""));
+        Map<String, String> out = new HashMap<>();
+        for (JSONObject issue : jira.searchAll(jql, "labels")) {
+            JSONArray labels = issue.getJSONObject("fields").optJSONArray("labels");
+            if (labels == null) continue;
+            for (int i = 0; i < labels.length(); i++) {
+                String l = labels.getString(i);
+                if (l.startsWith("scenario:")) out.putIfAbsent(l, issue.getString("key"));
+            }
+        }
+        return out;
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) return;
+        JSONObject results = new JSONObject().put("tests", new JSONArray(batch));
+        if (executionKey != null) results.put("testExecutionKey", executionKey);
+        JSONObject info = new JSONObject().put("fields", new JSONObject()
+            .put("project", new JSONObject().put("key", projectKey))
+            .put("summary", "Automated Cucumber run " + Instant.now())
+            .put("issuetype", new JSONObject().put("name", "Test Execution")));
+
+        JSONObject resp = xray.postMultipart(importUrl,
+            new String[] { "results", "info" }, new String[] { results.toString(), info.toString() });
+        if (executionKey == null) executionKey = resp.optString("key", null);
+        exported += batch.size();
+        batch.clear();
+    }
+
+    // Feature key as in the change map and the Tests' feature: labels. Cucumber writes the uri
+    // as file:<relative path> or file:///<absolute path>.
+    private static String featureName(String uri) {
+        return FeatureScenarioChangeMap.featureRoots().key(featurePath(uri));
+    }
+
+    private static Path featurePath(String uri) {
+        try {
+            URI u = new URI(uri);
+            if ("file".equalsIgnoreCase(u.getScheme())) {
+                return u.isOpaque() ? Paths.get(u.getSchemeSpecificPart()) : Paths.get(u);
+            }
+            if (u.getScheme() != null && u.getSchemeSpecificPart() != null) {
+                return Paths.get(u.getSchemeSpecificPart().replaceFirst("^/+", ""));
+            }
+        } catch (URISyntaxException | RuntimeException ignored) {
+            // not a URI: a plain path
+        }
+        return Paths.get(uri.replace('\\', '/'));
+    }
+
+    // "<feature>;<outline>;<examples>;<n>": n counts the header row, so the first row is 2
+    private static int exampleRow(String id) {
+        if (id == null) return 0;
+        try {
+            return Math.max(0, Integer.parseInt(id.substring(id.lastIndexOf(';') + 1)) - 1);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String xrayStatus(String cucumberStatus) {
+        if ("passed".equals(cucumberStatus)) return "PASSED";
+        if ("failed".equals(cucumberStatus)) return "FAILED";
+        return "TODO"; // skipped, pending, undefined, ambiguous
+    }
+
+    // FAILED beats TODO beats PASSED
+    private static String worst(String a, String b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if ("FAILED".equals(a) || "FAILED".equals(b)) return "FAILED";
+        if ("TODO".equals(a) || "TODO".equals(b)) return "TODO";
+        return "PASSED";
+    }
+
+    private static final class ScenarioResult {
+        final String name;
+        final String status;
+        final String start;
+        final long durationNanos;
+        final int line;         // of the scenario, or of the Examples row for an outline
+        final int exampleRow;   // outline row index from the id; -1 once named / not an outline
+
+        ScenarioResult(String name, String status, String start, long durationNanos, int line, int exampleRow) {
+            this.name = name;
+            this.status = status;
+            this.start = start;
+            this.durationNanos = durationNanos;
+            this.line = line;
+            this.exampleRow = exampleRow;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package sync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import util.Log;
+
+// Takes the Tests of DELETED scenarios out of the live "automation" set so label searches stay
+// small. Tests are found by their feature:/scenario: labels, 50 scenarios per search, and then
+// handled in bulk: "relabel" swaps the automation label for the stale label through Jira's bulk
+// edit, "archive" archives them (1000 issues per request either way).
+public class StaleTestReaper {
+
+    private static final Log LOG = Log.get(StaleTestReaper.class);
+    private static final int SCENARIOS_PER_SEARCH = 50;
+
+    private final JiraClient jira;
+    private final String mode;
+    private final String staleLabel;
+
+    public StaleTestReaper(JiraClient jira, String mode, String staleLabel) {
+        this.jira = jira;
+        this.mode = mode;
+        this.staleLabel = staleLabel;
+    }
+
+    // Returns the keys of the Tests reaped
+    public List<String> reap(String projectKey, Map<String, Map<String, String>> changeMap) {
+        List<String[]> deleted = new ArrayList<>();
+        for (Map.Entry<String, Map<String, String>> f : changeMap.entrySet()) {
+            for (Map.Entry<String, String> sc : f.getValue().entrySet()) {
+                if ("DELETED".equals(sc.getValue())) {
+                    deleted.add(new String[] { "feature:" + f.getKey(), "scenario:" + sc.getKey().trim().replaceAll("\\s+", "-") });
+                }
+            }
+        }
+        if (deleted.isEmpty()) {
+            LOG.info("Stale Test reaper: no deleted scenarios");
+            return List.of();
+        }
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < deleted.size(); i += SCENARIOS_PER_SEARCH) {
+            List<String[]> chunk = deleted.subList(i, Math.min(i + SCENARIOS_PER_SEARCH, deleted.size()));
+            for (JSONObject issue : jira.searchAll(jql(projectKey, chunk), "labels")) {
+                JSONArray labels = issue.getJSONObject("fields").optJSONArray("labels");
+                List<Object> have = labels == null ? List.of() : labels.toList();
+                for (String[] pair : chunk) {
+                    if (have.contains(pair[0]) && have.contains(pair[1])) {
+                        keys.add(issue.getString("key"));
+                        break;
+                    }
+                }
+            }
+        }
+        List<String> reaped = new ArrayList<>(keys);
+        LOG.info("Stale Test reaper", "deletedScenarios", deleted.size(), "tests", reaped.size(), "mode", mode);
+        if (reaped.isEmpty()) return reaped;
+
+        if ("archive".equalsIgnoreCase(mode)) {
+            int archived = jira.archive(reaped);
+            LOG.info("Archived stale Tests", "count", archived);
+        } else {
+            jira.bulkEditLabels(reaped, "ADD", List.of(staleLabel));
+            List<String> tasks = jira.bulkEditLabels(reaped, "REMOVE", List.of("automation"));
+            LOG.info("Relabelled stale Tests", "count", reaped.size(), "label", staleLabel, "tasks", tasks);
+        }
+        return reaped;
+    }
+
+    // Live automation Tests with one of the features and one of the scenarios; the pairs are
+    // checked on the results
+    private static String jql(String projectKey, List<String[]> pairs) {
+        Set<String> features = new LinkedHashSet<>();
+        Set<String> scenarios = new LinkedHashSet<>();
+        for (String[] pair : pairs) {
+            features.add(quote(pair[0]));
+            scenarios.add(quote(pair[1]));
+        }
+        return String.format("project=%s AND issuetype=Test AND labels = \"automation\" AND labels in (%s) AND labels in (%s)",
+            projectKey, String.join(",", features), String.join(",", scenarios));
+    }
+
+    private static String quote(String label) {
+        return "\"" + label.replace("\"", "\\\"") + "\"";
+    }
+}
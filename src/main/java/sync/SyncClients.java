@@ -0,0 +1,55 @@
+package sync;
+
+import org.aeonbits.owner.ConfigCache;
+
+import Config.TestConfig;
+
+// One transport, token provider and Jira/Xray client pair per JVM, built from TestConfig.
+public class SyncClients {
+
+    private static volatile SyncClients shared;
+
+    private final TestConfig cfg;
+    private final String xrayBase;
+    private final HttpTransport http;
+    private final XrayTokenProvider xrayTokens;
+    private final JiraClient jira;
+    private final XrayClient xray;
+
+    private SyncClients(TestConfig cfg) {
+        this.cfg = cfg;
+        this.xrayBase = cfg.xrayBaseUrl().replaceAll("/+$", "");
+        this.http = new HttpTransport(new RequestThrottle(
+            cfg.syncConcurrency(), cfg.syncRatePerSec(), cfg.syncBurst(), cfg.syncMaxRetries()), cfg.httpGzipRequests());
+        this.xrayTokens = XrayTokenProvider.shared(cfg.xrayClientId(),
+            () -> XrayClient.authenticate(http, xrayAuthUrl(), cfg.xrayClientId(), cfg.xrayClientSecret()),
+            cfg.xrayTokenCacheFile());
+        this.jira = new JiraClient(http, cfg.postUrl(), cfg.mail(), cfg.ApiKey());
+        this.xray = new XrayClient(http, xrayGraphQLUrl(), xrayTokens);
+    }
+
+    public static SyncClients shared() {
+        SyncClients s = shared;
+        if (s == null) {
+            synchronized (SyncClients.class) {
+                s = shared;
+                if (s == null) {
+                    s = new SyncClients(ConfigCache.getOrCreate(TestConfig.class));
+                    shared = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    public TestConfig config() { return cfg; }
+    public HttpTransport http() { return http; }
+    public XrayTokenProvider xrayTokens() { return xrayTokens; }
+    public JiraClient jira() { return jira; }
+    public XrayClient xray() { return xray; }
+
+    public String xrayGraphQLUrl() { return xrayBase + "/graphql"; }
+    public String xrayAuthUrl() { return xrayBase + "/authenticate"; }
+    public String xrayImportFeatureUrl() { return xrayBase + "/import/feature"; }
+    public String xrayImportExecutionUrl() { return xrayBase + "/import/execution/multipart"; }
+}
@@ -0,0 +1,167 @@
+package sync;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+import util.Log;
+
+// Per-operation metrics for every outbound Jira/Xray call: count by status class,
+// request/response bytes and a latency histogram. The Prometheus dump uses
+// Micrometer's http.client.requests naming so it lines up with other dashboards.
+public class SyncMetrics {
+
+    private static final Log LOG = Log.get(SyncMetrics.class);
+    private static final SyncMetrics GLOBAL = new SyncMetrics();
+
+    // Prometheus "le" boundaries in seconds (Micrometer's default SLO-style spread)
+    private static final double[] LE_SECONDS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final LatencyHistogram overall = new LatencyHistogram();
+
+    public static SyncMetrics global() {
+        return GLOBAL;
+    }
+
+    // status <= 0 means the call failed without a response (I/O error, timeout)
+    public void record(String operation, long nanos, int status, long bytesOut, long bytesIn) {
+        Operation op = operations.computeIfAbsent(operation, k -> new Operation());
+        op.latency.record(nanos / 1000);
+        overall.record(nanos / 1000);
+        op.byStatus.computeIfAbsent(statusClass(status), k -> new LongAdder()).increment();
+        if (bytesOut > 0) op.bytesOut.add(bytesOut);
+        if (bytesIn > 0) op.bytesIn.add(bytesIn);
+    }
+
+    public LatencyHistogram latency(String operation) {
+        Operation op = operations.get(operation);
+        return op == null ? new LatencyHistogram() : op.latency;
+    }
+
+    // Every operation together, as the caller saw it (throttle waits and retries included)
+    public LatencyHistogram latency() {
+        return overall;
+    }
+
+    private static String statusClass(int status) {
+        return status <= 0 ? "IO_ERROR" : (status / 100) + "xx";
+    }
+
+    // ---------- export ----------
+
+    public String prometheusText() {
+        StringBuilder sb = new StringBuilder();
+        Map<String, Operation> ops = new TreeMap<>(operations);
+
+        sb.append("# HELP http_client_requests_seconds Outbound Jira/Xray call latency\n");
+        sb.append("# TYPE http_client_requests_seconds histogram\n");
+        ops.forEach((name, op) -> {
+            String tag = "operation=\"" + name + "\"";
+            for (double le : LE_SECONDS) {
+                sb.append("http_client_requests_seconds_bucket{").append(tag).append(",le=\"").append(le).append("\"} ")
+                    .append(op.latency.countAtOrBelow((long) (le * 1_000_000))).append('\n');
+            }
+            sb.append("http_client_requests_seconds_bucket{").append(tag).append(",le=\"+Inf\"} ")
+                .append(op.latency.count()).append('\n');
+            sb.append("http_client_requests_seconds_count{").append(tag).append("} ").append(op.latency.count()).append('\n');
+            sb.append("http_client_requests_seconds_sum{").append(tag).append("} ")
+                .append(op.latency.sumMicros() / 1e6).append('\n');
+        });
+
+        sb.append("# HELP http_client_requests_seconds_max Slowest outbound call\n");
+        sb.append("# TYPE http_client_requests_seconds_max gauge\n");
+        ops.forEach((name, op) -> sb.append("http_client_requests_seconds_max{operation=\"").append(name).append("\"} ")
+            .append(op.latency.maxMicros() / 1e6).append('\n'));
+
+        sb.append("# HELP http_client_requests_status_total Outbound calls by status class\n");
+        sb.append("# TYPE http_client_requests_status_total counter\n");
+        ops.forEach((name, op) -> new TreeMap<>(op.byStatus).forEach((status, n) ->
+            sb.append("http_client_requests_status_total{operation=\"").append(name).append("\",status=\"")
+                .append(status).append("\"} ").append(n.sum()).append('\n')));
+
+        sb.append("# HELP http_client_request_bytes_total Request bytes sent (after compression)\n");
+        sb.append("# TYPE http_client_request_bytes_total counter\n");
+        ops.forEach((name, op) -> sb.append("http_client_request_bytes_total{operation=\"").append(name).append("\"} ")
+            .append(op.bytesOut.sum()).append('\n'));
+
+        sb.append("# HELP http_client_response_bytes_total Response bytes received\n");
+        sb.append("# TYPE http_client_response_bytes_total counter\n");
+        ops.forEach((name, op) -> sb.append("http_client_response_bytes_total{operation=\"").append(name).append("\"} ")
+            .append(op.bytesIn.sum()).append('\n'));
+        return sb.toString();
+    }
+
+    public JSONObject jsonSummary() {
+        JSONObject out = new JSONObject();
+        new TreeMap<>(operations).forEach((name, op) -> {
+            LatencyHistogram h = op.latency;
+            JSONObject status = new JSONObject();
+            op.byStatus.forEach((k, v) -> status.put(k, v.sum()));
+            out.put(name, new JSONObject()
+                .put("count", h.count())
+                .put("totalMs", h.sumMicros() / 1000)
+                .put("meanMs", h.count() == 0 ? 0 : h.sumMicros() / 1000.0 / h.count())
+                .put("p50Ms", h.percentileMicros(50) / 1000.0)
+                .put("p90Ms", h.percentileMicros(90) / 1000.0)
+                .put("p99Ms", h.percentileMicros(99) / 1000.0)
+                .put("maxMs", h.maxMicros() / 1000.0)
+                .put("status", status)
+                .put("bytesOut", op.bytesOut.sum())
+                .put("bytesIn", op.bytesIn.sum()));
+        });
+        return out;
+    }
+
+    // Writes sync-metrics.prom and sync-metrics.json into dir
+    public void dump(Path dir) {
+        try {
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("sync-metrics.prom"), prometheusText().getBytes(StandardCharsets.UTF_8));
+            Files.write(dir.resolve("sync-metrics.json"), jsonSummary().toString(2).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write sync metrics to " + dir, e);
+        }
+    }
+
+    // Config-driven variant: blank dir disables, failures are reported but never fatal
+    public void dumpTo(String dir) {
+        if (dir == null || dir.isBlank()) return;
+        try {
+            dump(Path.of(dir));
+            LOG.info("Sync metrics written", "dir", dir);
+        } catch (UncheckedIOException e) {
+            LOG.warn("Could not write sync metrics", "dir", dir, "error", e.getCause().getMessage());
+        }
+    }
+
+    // One line per operation, slowest total first
+    public String report() {
+        StringBuilder sb = new StringBuilder("=== SYNC HTTP ===\n");
+        operations.entrySet().stream()
+            .sorted((a, b) -> Long.compare(b.getValue().latency.sumMicros(), a.getValue().latency.sumMicros()))
+            .forEach(e -> {
+                LatencyHistogram h = e.getValue().latency;
+                sb.append(String.format("op=%-32s count=%d total=%dms p50=%.1fms p99=%.1fms max=%.1fms%n",
+                    e.getKey(), h.count(), h.sumMicros() / 1000, h.percentileMicros(50) / 1000.0,
+                    h.percentileMicros(99) / 1000.0, h.maxMicros() / 1000.0));
+            });
+        sb.append("=================");
+        return sb.toString();
+    }
+
+    private static final class Operation {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<String, LongAdder> byStatus = new ConcurrentHashMap<>();
+        final LongAdder bytesOut = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+    }
+}
@@ -0,0 +1,121 @@
+package sync;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs the per-scenario sync work as named stages on a shared executor and keeps
+// per-stage queue depth / throughput counters. Stages are chained by the caller
+// with CompletableFuture composition; concurrency towards each host is bounded
+// by RequestThrottle, not by the executor.
+public class SyncPipeline {
+
+    private final ExecutorService executor;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    public SyncPipeline(int fallbackThreads) {
+        this.executor = newExecutor(fallbackThreads);
+    }
+
+    public <T> CompletableFuture<T> submit(String stageName, Callable<T> task) {
+        Stage stage = stages.computeIfAbsent(stageName, Stage::new);
+        stage.queued.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> stage.run(task), executor);
+    }
+
+    public Map<String, Stage> stages() {
+        return stages;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("=== SYNC PIPELINE ===\n");
+        stages.values().stream()
+            .sorted((a, b) -> Long.compare(a.firstStartNanos.get(), b.firstStartNanos.get()))
+            .forEach(s -> sb.append(s).append('\n'));
+        sb.append("=====================");
+        return sb.toString();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Virtual threads when the runtime has them (JDK 21+), otherwise a fixed daemon pool.
+    // Looked up reflectively because the project still targets an older release.
+    private static ExecutorService newExecutor(int fallbackThreads) {
+        try {
+            return (ExecutorService) MethodHandles.publicLookup()
+                .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                .invoke();
+        } catch (Throwable notAvailable) {
+            AtomicInteger n = new AtomicInteger();
+            return Executors.newFixedThreadPool(Math.max(1, fallbackThreads), r -> {
+                Thread t = new Thread(r, "xray-sync-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static final class Stage {
+        final String name;
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+        final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong lastEndNanos = new AtomicLong();
+
+        Stage(String name) { this.name = name; }
+
+        <T> T run(Callable<T> task) {
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            long start = System.nanoTime();
+            firstStartNanos.accumulateAndGet(start, Math::min);
+            try {
+                T out = task.call();
+                completed.incrementAndGet();
+                return out;
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                throw new CompletionException(e);
+            } finally {
+                long end = System.nanoTime();
+                busyNanos.addAndGet(end - start);
+                lastEndNanos.accumulateAndGet(end, Math::max);
+                active.decrementAndGet();
+            }
+        }
+
+        public int queueDepth() { return queued.get(); }
+        public int active() { return active.get(); }
+        public long completed() { return completed.get(); }
+        public long failed() { return failed.get(); }
+
+        public double throughputPerSecond() {
+            long first = firstStartNanos.get();
+            long last = lastEndNanos.get();
+            if (first == Long.MAX_VALUE || last <= first) return 0;
+            return completed.get() / ((last - first) / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            long done = completed.get() + failed.get();
+            double avgMs = done == 0 ? 0 : busyNanos.get() / 1e6 / done;
+            return String.format("stage=%-10s queued=%d active=%d done=%d failed=%d throughput=%.2f/s avg=%.1fms",
+                name, queueDepth(), active(), completed(), failed(), throughputPerSecond(), avgMs);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package sync;
+
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Xray Cloud GraphQL client. Uses the shared token provider and refreshes the
+// token once when a call comes back 401.
+public class XrayClient {
+
+    private static final Pattern ROOT_FIELD = Pattern.compile("\\{\\s*(\\w+)");
+    private static final String[] JSON_HEADERS = { "Content-Type", "application/json", "Accept", "application/json" };
+
+    private final HttpTransport http;
+    private final String graphqlUrl;
+    private final XrayTokenProvider tokens;
+
+    private volatile String[] authHeaders = new String[0];
+
+    public XrayClient(HttpTransport http, String graphqlUrl, XrayTokenProvider tokens) {
+        this.http = http;
+        this.graphqlUrl = graphqlUrl;
+        this.tokens = tokens;
+    }
+
+    public static String authenticate(HttpTransport http, String authUrl, String clientId, String clientSecret) {
+        JSONObject body = new JSONObject()
+            .put("client_id", clientId)
+            .put("client_secret", clientSecret);
+        return http.post("xray.authenticate", authUrl, JSON_HEADERS, body.toString())
+            .expect(200, "Xray authentication")
+            .body()
+            .replace("\"", "")
+            .trim();
+    }
+
+    // Returns the "data" object; GraphQL errors are raised as exceptions
+    public JSONObject graphql(String query, JSONObject variables) {
+        JSONObject gql = new JSONObject().put("query", query);
+        if (variables != null) gql.put("variables", variables);
+        String payload = gql.toString();
+        String operation = "xray." + operationName(query);
+
+        String token = tokens.token();
+        HttpResult r = http.post(operation, graphqlUrl, headersFor(token), payload);
+        if (r.status() == 401) {
+            r = http.post(operation, graphqlUrl, headersFor(tokens.invalidate(token)), payload);
+        }
+        JSONObject json = r.expect(200, "Xray GraphQL").json();
+        JSONArray errors = json.optJSONArray("errors");
+        if (errors != null && !errors.isEmpty()) {
+            throw new RuntimeException("Xray GraphQL errors: " + errors);
+        }
+        JSONObject data = json.optJSONObject("data");
+        return data == null ? new JSONObject() : data;
+    }
+
+    // multipart/form-data POST (e.g. /import/execution/multipart) with JSON parts
+    public JSONObject postMultipart(String url, String[] partNames, String[] partJson) {
+        String boundary = "----xray-" + UUID.randomUUID();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < partNames.length; i++) {
+            body.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(partNames[i])
+                .append("\"; filename=\"").append(partNames[i]).append(".json\"\r\n")
+                .append("Content-Type: application/json\r\n\r\n")
+                .append(partJson[i]).append("\r\n");
+        }
+        body.append("--").append(boundary).append("--\r\n");
+        String payload = body.toString();
+
+        String token = tokens.token();
+        HttpResult r = http.post("xray.import", url, multipartHeaders(token, boundary), payload);
+        if (r.status() == 401) {
+            r = http.post("xray.import", url, multipartHeaders(tokens.invalidate(token), boundary), payload);
+        }
+        return r.expect(200, "Xray import").json();
+    }
+
+    // First root field of the document, e.g. "updateTestType" or "getPrecondition"
+    static String operationName(String query) {
+        Matcher m = ROOT_FIELD.matcher(query);
+        return m.find() ? m.group(1) : "graphql";
+    }
+
+    private static String[] multipartHeaders(String token, String boundary) {
+        return new String[] {
+            "Authorization", "Bearer " + token,
+            "Content-Type", "multipart/form-data; boundary=" + boundary,
+            "Accept", "application/json"
+        };
+    }
+
+    // Header template is rebuilt only when the token changes
+    private String[] headersFor(String token) {
+        String bearer = "Bearer " + token;
+        String[] h = authHeaders;
+        if (h.length == 0 || !h[1].equals(bearer)) {
+            h = new String[] {
+                "Authorization", bearer,
+                "Content-Type", "application/json",
+                "Accept", "application/json"
+            };
+            authHeaders = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,188 @@
+package sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.JSONObject;
+
+import util.Log;
+
+// Process-wide Xray token cache. One provider per client id; the JWT "exp" claim
+// drives refresh, which happens ahead of expiry or after a 401, never per caller.
+// Concurrent refreshes collapse into one (single flight), and with a cache file
+// sibling JVM forks share the same token under an exclusive file lock.
+public class XrayTokenProvider {
+
+    public interface Minter {
+        String mint();
+    }
+
+    private static final Log LOG = Log.get(XrayTokenProvider.class);
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(5);
+    private static final Duration ASSUMED_LIFETIME = Duration.ofHours(1);
+
+    private static final Map<String, XrayTokenProvider> SHARED = new ConcurrentHashMap<>();
+
+    private final Minter minter;
+    private final Path cacheFile;   // null = in-memory only
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile Token current;
+
+    XrayTokenProvider(Minter minter, Path cacheFile) {
+        this.minter = minter;
+        this.cacheFile = cacheFile;
+    }
+
+    public static XrayTokenProvider shared(String clientId, Minter minter, String cacheFile) {
+        return SHARED.computeIfAbsent(clientId == null ? "" : clientId, id -> new XrayTokenProvider(minter,
+            cacheFile == null || cacheFile.isBlank() ? null : perClientFile(Path.of(cacheFile), id)));
+    }
+
+    public String token() {
+        Token t = current;
+        if (t != null && !t.expiresWithin(REFRESH_AHEAD)) return t.value;
+
+        if (t != null && !t.expiresWithin(Duration.ZERO)) {
+            // Still valid: refresh ahead if nobody else is, otherwise keep using it
+            if (!refreshLock.tryLock()) return t.value;
+            try {
+                return refreshLocked(t.value);
+            } catch (RuntimeException e) {
+                return t.value; // early refresh failed; retried on next call or at expiry
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+
+        refreshLock.lock();
+        try {
+            return refreshLocked(t == null ? null : t.value);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    // Call when Xray rejected the token with 401; returns a token other than the rejected one.
+    public String invalidate(String rejected) {
+        refreshLock.lock();
+        try {
+            Token t = current;
+            if (t != null && !t.value.equals(rejected) && !t.expiresWithin(REFRESH_AHEAD)) return t.value;
+            return refreshLocked(rejected);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private String refreshLocked(String stale) {
+        Token t = current;
+        if (t != null && !t.value.equals(stale) && !t.expiresWithin(REFRESH_AHEAD)) {
+            return t.value; // another thread finished the refresh while we waited
+        }
+        current = cacheFile == null ? mint() : refreshThroughFile(stale);
+        return current.value;
+    }
+
+    private Token refreshThroughFile(String stale) {
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            try (FileChannel ch = FileChannel.open(cacheFile,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = ch.lock();
+                try {
+                    restrictPermissions();
+                    Token fromFile = readToken(ch);
+                    if (fromFile != null && !fromFile.value.equals(stale) && !fromFile.expiresWithin(REFRESH_AHEAD)) {
+                        return fromFile; // a sibling fork refreshed it already
+                    }
+                    Token fresh = mint();
+                    ch.truncate(0);
+                    ch.write(ByteBuffer.wrap(fresh.value.getBytes(StandardCharsets.UTF_8)), 0);
+                    ch.force(true);
+                    return fresh;
+                } finally {
+                    lock.release();
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Xray token cache file unusable", "file", cacheFile, "error", e.getMessage());
+            return mint();
+        }
+    }
+
+    private Token mint() {
+        String value = minter.mint();
+        if (value == null || value.isEmpty()) {
+            throw new RuntimeException("Xray token is empty; check client id/secret");
+        }
+        return Token.of(value);
+    }
+
+    private void restrictPermissions() {
+        try {
+            Files.setPosixFilePermissions(cacheFile, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException ignored) {
+            // non-POSIX file system
+        }
+    }
+
+    private static Token readToken(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0 || size > 64 * 1024) return null;
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining() && ch.read(buf, buf.position()) > 0) { }
+        String value = new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8).trim();
+        return value.isEmpty() ? null : Token.of(value);
+    }
+
+    private static Path perClientFile(Path base, String clientId) {
+        String suffix = Integer.toHexString(clientId.hashCode());
+        return base.resolveSibling(base.getFileName() + "-" + suffix);
+    }
+
+    // Reads "exp" from the JWT payload; falls back to a conservative lifetime.
+    static Instant expiryOf(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length >= 2) {
+            try {
+                byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+                JSONObject claims = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                if (claims.has("exp")) return Instant.ofEpochSecond(claims.getLong("exp"));
+            } catch (RuntimeException ignored) {
+                // not a decodable JWT
+            }
+        }
+        return Instant.now().plus(ASSUMED_LIFETIME);
+    }
+
+    private static final class Token {
+        final String value;
+        final Instant expiresAt;
+
+        Token(String value, Instant expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        static Token of(String value) {
+            return new Token(value, expiryOf(value));
+        }
+
+        boolean expiresWithin(Duration d) {
+            return Instant.now().plus(d).isAfter(expiresAt);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.aeonbits.owner.ConfigCache;
+import org.json.JSONObject;
+
+import Config.TestConfig;
+
+// Single writer thread draining a bounded ring of log events. Producers only enqueue;
+// the writer formats a whole batch and hands it to the stream in one write. A full
+// ring makes producers wait rather than drop, so status dumps stay complete.
+final class AsyncAppender {
+
+    private static final int MAX_BATCH = 1024;
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static volatile AsyncAppender shared;
+
+    private final BlockingQueue<Event> ring;
+    private final PrintStream out;
+    private final boolean json;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Object writtenLock = new Object();
+
+    static final class Event {
+        final long millis;
+        final Log.Level level;
+        final String logger;
+        final String thread;
+        final String msg;
+        final Object[] kv;
+        final Throwable error;
+
+        Event(long millis, Log.Level level, String logger, String thread, String msg, Object[] kv, Throwable error) {
+            this.millis = millis;
+            this.level = level;
+            this.logger = logger;
+            this.thread = thread;
+            this.msg = msg;
+            this.kv = kv;
+            this.error = error;
+        }
+    }
+
+    private AsyncAppender(int capacity, PrintStream out, boolean json) {
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.out = out;
+        this.json = json;
+        Thread writer = new Thread(this::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "log-flush"));
+    }
+
+    static AsyncAppender shared() {
+        AsyncAppender a = shared;
+        if (a == null) {
+            synchronized (AsyncAppender.class) {
+                a = shared;
+                if (a == null) {
+                    TestConfig cfg = ConfigCache.getOrCreate(TestConfig.class);
+                    a = new AsyncAppender(Math.max(64, cfg.logBufferSize()), openStream(cfg.logFile()),
+                        "json".equalsIgnoreCase(cfg.logFormat()));
+                    shared = a;
+                }
+            }
+        }
+        return a;
+    }
+
+    void append(Event e) {
+        published.incrementAndGet();
+        try {
+            ring.put(e);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            // Keep the line rather than lose it
+            synchronized (out) {
+                out.print(format(e));
+            }
+            markWritten(1);
+        }
+    }
+
+    // Waits (bounded) until the writer caught up with everything appended so far
+    void flush() {
+        long target = published.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        synchronized (writtenLock) {
+            while (written.get() < target) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(writtenLock, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private void drain() {
+        List<Event> batch = new ArrayList<>(MAX_BATCH);
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        while (true) {
+            try {
+                batch.add(ring.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            ring.drainTo(batch, MAX_BATCH - 1);
+            for (Event e : batch) sb.append(format(e));
+            synchronized (out) {
+                out.print(sb);
+                out.flush();
+            }
+            markWritten(batch.size());
+            batch.clear();
+            sb.setLength(0);
+        }
+    }
+
+    private void markWritten(int n) {
+        written.addAndGet(n);
+        synchronized (writtenLock) {
+            writtenLock.notifyAll();
+        }
+    }
+
+    private String format(Event e) {
+        if (json) {
+            JSONObject o = new JSONObject()
+                .put("ts", e.millis)
+                .put("level", e.level.name())
+                .put("logger", e.logger)
+                .put("thread", e.thread)
+                .put("msg", e.msg);
+            for (int i = 0; i + 1 < e.kv.length; i += 2) o.put(String.valueOf(e.kv[i]), String.valueOf(e.kv[i + 1]));
+            if (e.error != null) o.put("error", stackTrace(e.error));
+            return o.toString() + System.lineSeparator();
+        }
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(TIME.format(Instant.ofEpochMilli(e.millis))).append(' ')
+            .append(String.format("%-5s", e.level)).append(' ')
+            .append(e.logger).append(" - ").append(e.msg);
+        for (int i = 0; i + 1 < e.kv.length; i += 2) {
+            String v = String.valueOf(e.kv[i + 1]);
+            sb.append(' ').append(e.kv[i]).append('=');
+            if (v.isEmpty() || v.indexOf(' ') >= 0) sb.append('"').append(v.replace("\"", "\\\"")).append('"');
+            else sb.append(v);
+        }
+        sb.append(System.lineSeparator());
+        if (e.error != null) sb.append(stackTrace(e.error));
+        return sb.toString();
+    }
+
+    private static String stackTrace(Throwable t) {
+        StringWriter sw = new StringWriter();
+        t.printStackTrace(new PrintWriter(sw));
+        return sw.toString();
+    }
+
+    private static PrintStream openStream(String file) {
+        if (file == null || file.isBlank()) return System.out;
+        if ("stderr".equalsIgnoreCase(file)) return System.err;
+        try {
+            return new PrintStream(new FileOutputStream(file, true), false, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("LOG_FILE unusable (" + file + "), logging to stdout: " + e.getMessage());
+            return System.out;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+// Where the .feature files live: FEATURES_ROOTS, a comma-separated list of directories or glob
+// patterns relative to the repository root (e.g. "modules/*/src/test/resources/features"),
+// falling back to the older single FEATURES_ROOT. Each directory a pattern matches is one module
+// root. With a single literal root, features are keyed by file name as before; otherwise keys
+// are "<module root>/<file name>", so same-named files in two modules stay apart in the change
+// map and in the Tests' feature: labels.
+public final class FeatureRoots {
+
+    public static final String DEFAULT_ROOT = "src/test/java/features";
+
+    private static volatile FeatureRoots configured;
+
+    private final List<String> patterns;
+    private final List<PathMatcher> matchers = new ArrayList<>();   // null for literal patterns
+    private final List<String> prefixes = new ArrayList<>();
+
+    public FeatureRoots(String spec) {
+        List<String> out = new ArrayList<>();
+        for (String p : spec.split("\\s*,\\s*")) {
+            String norm = clean(p);
+            if (!norm.isEmpty() && !out.contains(norm)) out.add(norm);
+        }
+        if (out.isEmpty()) out.add(DEFAULT_ROOT);
+        this.patterns = Collections.unmodifiableList(out);
+        for (String p : patterns) {
+            String prefix = literalPrefix(p);
+            matchers.add(prefix.equals(p) ? null : FileSystems.getDefault().getPathMatcher("glob:" + p));
+            if (!prefixes.contains(prefix)) prefixes.add(prefix);
+        }
+    }
+
+    public static FeatureRoots configured() {
+        FeatureRoots roots = configured;
+        if (roots == null) {
+            String spec = System.getenv("FEATURES_ROOTS");
+            if (spec == null || spec.isBlank()) spec = System.getenv("FEATURES_ROOT");
+            configured = roots = new FeatureRoots(spec == null || spec.isBlank() ? DEFAULT_ROOT : spec);
+        }
+        return roots;
+    }
+
+    public List<String> patterns() { return patterns; }
+
+    // Literal directories the patterns live under ("" when a pattern starts with a wildcard);
+    // enough to narrow a tree walk before rootOf() checks the globs
+    public List<String> prefixes() { return Collections.unmodifiableList(prefixes); }
+
+    // Keys carry the module root unless there is one literal root
+    public boolean namespaced() {
+        return patterns.size() > 1 || matchers.get(0) != null;
+    }
+
+    // Same roots in a stable form, e.g. to tell whether a stored index was built for them
+    public String spec() { return String.join(",", patterns); }
+
+    // The module root a repo-relative path lies under (the shortest matching directory), or null
+    public String rootOf(String path) {
+        String p = clean(path);
+        int slash = -1;
+        while ((slash = p.indexOf('/', slash + 1)) > 0) {
+            String dir = p.substring(0, slash);
+            for (int i = 0; i < patterns.size(); i++) {
+                PathMatcher m = matchers.get(i);
+                if (m == null ? dir.equals(patterns.get(i)) : m.matches(Paths.get(dir))) return dir;
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(String path) {
+        return path != null && path.endsWith(".feature") && rootOf(path) != null;
+    }
+
+    // Change map / label key of a repo-relative feature path
+    public String key(String path) {
+        String p = clean(path);
+        String name = p.substring(p.lastIndexOf('/') + 1);
+        if (!namespaced()) return name;
+        String root = rootOf(p);
+        return root == null ? name : root + "/" + name;
+    }
+
+    // Same for a file on disk; absolute paths are taken relative to the working directory
+    public String key(Path file) {
+        Path p = file.isAbsolute() ? Paths.get("").toAbsolutePath().relativize(file.normalize()) : file;
+        return key(p.toString());
+    }
+
+    // Current .feature files (working-directory-relative paths) by module root, in root order
+    public Map<String, List<Path>> discover() throws IOException {
+        Map<String, List<Path>> out = new TreeMap<>();
+        Set<String> seen = new HashSet<>();
+        for (String prefix : prefixes) {
+            walk(prefix.isEmpty() ? "." : prefix, (root, file) -> {
+                if (seen.add(file.toString())) out.computeIfAbsent(root, k -> new ArrayList<>()).add(file);
+            });
+        }
+        return out;
+    }
+
+    // Current .feature files of one module root; only that directory is walked
+    public List<Path> files(String root) throws IOException {
+        List<Path> out = new ArrayList<>();
+        walk(root, (r, file) -> {
+            if (r.equals(root)) out.add(file);
+        });
+        return out;
+    }
+
+    private void walk(String dir, BiConsumer<String, Path> sink) throws IOException {
+        Path start = Paths.get(dir);
+        if (!Files.isDirectory(start)) return;
+        try (var stream = Files.walk(start)) {
+            for (Path p : (Iterable<Path>) stream::iterator) {
+                if (!Files.isRegularFile(p) || !p.toString().endsWith(".feature")) continue;
+                String rel = clean(p.toString());
+                String root = rootOf(rel);
+                if (root != null) sink.accept(root, Paths.get(rel));
+            }
+        }
+    }
+
+    private static String literalPrefix(String pattern) {
+        List<String> literal = new ArrayList<>();
+        for (String segment : pattern.split("/")) {
+            if (segment.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0)) break;
+            literal.add(segment);
+        }
+        return String.join("/", literal);
+    }
+
+    private static String clean(String path) {
+        String p = path.trim().replace('\\', '/');
+        while (p.startsWith("./")) p = p.substring(2);
+        while (p.endsWith("/")) p = p.substring(0, p.length() - 1);
+        return p;
+    }
+
+    @Override
+    public String toString() {
+        return spec();
+    }
+}
@@ -2,32 +2,34 @@ package util;
 
 
 import java.io.BufferedReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class GitDiffParser {
     
+    // Feature files changed under any of the configured feature roots
     public static List<String> getChangedFeatureFiles(String fromCommit, String toCommit) {
         List<String> changedFiles = new ArrayList<>();
+        FeatureRoots roots = FeatureRoots.configured();
         
         try {
-            String[] cmd = {
-                "git", "diff", "--name-only",
-                fromCommit, toCommit,
-                "--", "src/test/java/features/"
-            };
+            List<String> cmd = new ArrayList<>(List.of("git", "diff", "--name-only", fromCommit, toCommit, "--"));
+            for (String prefix : roots.prefixes()) cmd.add(prefix.isEmpty() ? "." : prefix + "/");
             
-            Process process = Runtime.getRuntime().exec(cmd);
+            Process process = Runtime.getRuntime().exec(cmd.toArray(new String[0]));
             BufferedReader reader = new BufferedReader(
                 new InputStreamReader(process.getInputStream())
             );
             
             String line;
             while ((line = reader.readLine()) != null) {
-                if (line.endsWith(".feature")) {
+                if (roots.contains(line)) {
                     changedFiles.add(line);
                 }
             }
@@ -42,6 +44,40 @@ public class GitDiffParser {
         return changedFiles;
     }
     
+    // Feature files renamed between the commits: new path -> old path
+    public static Map<String, String> getRenamedFeatureFiles(String fromCommit, String toCommit) {
+        Map<String, String> renamed = new LinkedHashMap<>();
+        FeatureRoots roots = FeatureRoots.configured();
+        
+        try {
+            List<String> cmd = new ArrayList<>(List.of(
+                "git", "diff", "-M", "--name-status", "--diff-filter=R", fromCommit, toCommit, "--"));
+            for (String prefix : roots.prefixes()) cmd.add(prefix.isEmpty() ? "." : prefix + "/");
+            
+            Process process = Runtime.getRuntime().exec(cmd.toArray(new String[0]));
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream())
+            );
+            
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // R<score>\t<old>\t<new>
+                String[] parts = line.split("\t");
+                if (parts.length == 3 && roots.contains(parts[2])) {
+                    renamed.put(parts[2], parts[1]);
+                }
+            }
+            
+            process.waitFor();
+            reader.close();
+            
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to get renamed files: " + e.getMessage(), e);
+        }
+        
+        return renamed;
+    }
+    
     public static List<DiffChange> getDiffChanges(String filePath, String fromCommit, String toCommit) {
         List<DiffChange> changes = new ArrayList<>();
         
@@ -94,6 +130,24 @@ public class GitDiffParser {
         return 0;
     }
     
+    // File content at a commit, or null when the file does not exist there
+    public static byte[] getFileAt(String commit, String filePath) {
+        try {
+            String[] cmd = {"git", "show", commit + ":" + filePath};
+            
+            Process process = Runtime.getRuntime().exec(cmd);
+            byte[] content;
+            try (InputStream in = process.getInputStream()) {
+                content = in.readAllBytes();
+            }
+            
+            return process.waitFor() == 0 ? content : null;
+            
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read " + filePath + " at " + commit + ": " + e.getMessage(), e);
+        }
+    }
+    
     public static String getRemoteMainSha() {
         try {
             Process process = Runtime.getRuntime().exec(
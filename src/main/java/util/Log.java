@@ -0,0 +1,96 @@
+package util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aeonbits.owner.ConfigCache;
+
+import Config.TestConfig;
+
+// Minimal levelled logging facade. Events carry a message plus key/value pairs and are
+// handed to the shared AsyncAppender, so callers never block on console I/O.
+//   LOG_LEVEL=INFO                              global threshold
+//   LOG_LEVELS=changemap.status=OFF,sync=DEBUG  per-logger overrides (longest prefix wins)
+public final class Log {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Map<String, Log> LOGGERS = new ConcurrentHashMap<>();
+    private static final Level ROOT_LEVEL;
+    private static final Map<String, Level> OVERRIDES = new TreeMap<>();
+
+    static {
+        TestConfig cfg = ConfigCache.getOrCreate(TestConfig.class);
+        ROOT_LEVEL = parseLevel(cfg.logLevel(), Level.INFO);
+        for (String entry : cfg.logLevels().split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq > 0) {
+                OVERRIDES.put(entry.substring(0, eq).trim(), parseLevel(entry.substring(eq + 1), ROOT_LEVEL));
+            }
+        }
+    }
+
+    private final String name;
+    private final Level threshold;
+
+    private Log(String name) {
+        this.name = name;
+        this.threshold = levelFor(name);
+    }
+
+    public static Log get(String name) {
+        return LOGGERS.computeIfAbsent(name, Log::new);
+    }
+
+    public static Log get(Class<?> type) {
+        return get(type.getName());
+    }
+
+    public boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(threshold) >= 0;
+    }
+
+    public boolean isDebugEnabled() { return isEnabled(Level.DEBUG); }
+
+    // kv: alternating key/value pairs, e.g. info("Created Test", "key", key, "id", id)
+    public void trace(String msg, Object... kv) { log(Level.TRACE, msg, null, kv); }
+    public void debug(String msg, Object... kv) { log(Level.DEBUG, msg, null, kv); }
+    public void info(String msg, Object... kv)  { log(Level.INFO, msg, null, kv); }
+    public void warn(String msg, Object... kv)  { log(Level.WARN, msg, null, kv); }
+    public void error(String msg, Throwable t, Object... kv) { log(Level.ERROR, msg, t, kv); }
+
+    public void log(Level level, String msg, Throwable t, Object... kv) {
+        if (!isEnabled(level)) return;
+        AsyncAppender.shared().append(new AsyncAppender.Event(
+            System.currentTimeMillis(), level, name, Thread.currentThread().getName(), msg, kv, t));
+    }
+
+    // Blocks until everything logged so far has been written
+    public static void flush() {
+        AsyncAppender.shared().flush();
+    }
+
+    private static Level levelFor(String name) {
+        Level level = ROOT_LEVEL;
+        int best = -1;
+        for (Map.Entry<String, Level> e : OVERRIDES.entrySet()) {
+            String prefix = e.getKey();
+            boolean matches = name.equals(prefix) || name.startsWith(prefix + ".");
+            if (matches && prefix.length() > best) {
+                best = prefix.length();
+                level = e.getValue();
+            }
+        }
+        return level;
+    }
+
+    private static Level parseLevel(String value, Level def) {
+        if (value == null || value.isBlank()) return def;
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return def;
+        }
+    }
+}
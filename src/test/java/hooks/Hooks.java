@@ -1,8 +1,15 @@
 package hooks;
 
+import Config.TestConfig;
+import changes.ChangeMapClient;
+import changes.ChangeMapExporter;
 import changes.FeatureScenarioChangeMap; // your existing builder class
 import io.cucumber.java.Before;
+import org.aeonbits.owner.ConfigCache;
+import util.Log;
 
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
@@ -10,39 +17,53 @@ import java.util.TreeMap;
 
 public class Hooks {
 
-  private static boolean once = false;
+  // Per-scenario lines go to their own logger so LOG_LEVELS=changemap.status=OFF drops them
+  private static final Log LOG = Log.get("changemap");
+  private static final Log STATUS = Log.get("changemap.status");
 
-  // Shared snapshot for other components to read
-  private static Map<String, Map<String, String>> changeMap = Collections.emptyMap();
+  // Shared snapshot for other components to read; null until built. Published only once it
+  // is complete, so parallel scenarios either see the full map or wait for it in init.
+  private static volatile Map<String, Map<String, String>> changeMap;
 
   public static Map<String, Map<String, String>> getChangeMap() {
-    return changeMap;
+    Map<String, Map<String, String>> m = changeMap;
+    return m == null ? Collections.emptyMap() : m;
   }
 
   @Before(order = 0)
   public void initAndPrintChangeMap() {
-    if (once) return;
-    once = true;
+    if (changeMap != null) return;
+    synchronized (Hooks.class) {
+      if (changeMap != null) return;
+      changeMap = buildAndPrint();
+    }
+  }
 
+  private static Map<String, Map<String, String>> buildAndPrint() {
     String from = envOrDefault("FROM_COMMIT", "HEAD~1");
     String to   = envOrDefault("TO_COMMIT", "HEAD");
 
-    // Build map once
-    changeMap = FeatureScenarioChangeMap.build(from, to);
+    // Build map once: SelectiveCucumber may already have built it for the same refs, and a
+    // change map service on this agent (CHANGE_MAP_SERVICE) may have it cached
+    Map<String, Map<String, String>> changeMap = FeatureScenarioChangeMap.reusable(from, to);
+    if (changeMap == null) changeMap = ChangeMapClient.fetch(from, to);
+    if (changeMap == null) changeMap = FeatureScenarioChangeMap.build(from, to);
+    exportChangeMap(changeMap, from, to);
 
     // Sorted printing for stable output
     Map<String, Map<String, String>> sorted = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     sorted.putAll(changeMap);
 
-    System.out.println("\n=== FEATURE → SCENARIO STATUS MAP ===");
-    System.out.println("FROM: " + from);
-    System.out.println("TO:   " + to);
+    LOG.info("=== FEATURE → SCENARIO STATUS MAP ===", "from", from, "to", to);
+    boolean dump = STATUS.isEnabled(Log.Level.INFO);
 
     int featureCount = 0;
     int scenarioCount = 0;
     int newCount = 0;
     int changedCount = 0;
     int unchangedCount = 0;
+    int movedCount = 0;
+    int deletedCount = 0;
 
     for (Map.Entry<String, Map<String, String>> featureEntry : sorted.entrySet()) {
       String featureName = featureEntry.getKey();
@@ -60,20 +81,41 @@ public class Hooks {
         switch (status) {
           case "NEW": newCount++; break;
           case "CHANGED": changedCount++; break;
+          case "MOVED": movedCount++; break;
+          case "DELETED": deletedCount++; break;
           default: unchangedCount++; break;
         }
 
-        System.out.println("Feature=" + featureName + " | Scenario=\"" + scenarioName + "\" | Status=" + status);
+        if (dump) STATUS.info(status, "feature", featureName, "scenario", scenarioName);
       }
     }
 
-    System.out.println("\n=== SUMMARY ===");
-    System.out.println("Features:   " + featureCount);
-    System.out.println("Scenarios:  " + scenarioCount);
-    System.out.println("NEW:        " + newCount);
-    System.out.println("CHANGED:    " + changedCount);
-    System.out.println("UNCHANGED:  " + unchangedCount);
-    System.out.println("=============\n");
+    LOG.info("\n=== SUMMARY ===\n"
+        + "Features:   " + featureCount + "\n"
+        + "Scenarios:  " + scenarioCount + "\n"
+        + "NEW:        " + newCount + "\n"
+        + "CHANGED:    " + changedCount + "\n"
+        + "UNCHANGED:  " + unchangedCount + "\n"
+        + "MOVED:      " + movedCount + "\n"
+        + "DELETED:    " + deletedCount + "\n"
+        + "=============");
+
+    if (FeatureScenarioChangeMap.lastTimings() != null) {
+      LOG.info("\n" + FeatureScenarioChangeMap.lastTimings().summary());
+    }
+    return changeMap;
+  }
+
+  // Machine-readable copy for other tools; they should read this instead of scraping the dump
+  private static void exportChangeMap(Map<String, Map<String, String>> changeMap, String from, String to) {
+    String dir = ConfigCache.getOrCreate(TestConfig.class).changeMapExportDir();
+    if (dir == null || dir.isBlank()) return;
+    try {
+      ChangeMapExporter.export(changeMap, from, to, Paths.get(dir));
+      LOG.info("Change map exported", "dir", dir);
+    } catch (UncheckedIOException e) {
+      LOG.warn("Change map export failed", "dir", dir, "error", e.getCause().getMessage());
+    }
   }
 
   private static String envOrDefault(String key, String def) {
@@ -0,0 +1,105 @@
+package model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FeatureModelTest {
+
+    private static List<String> names(FeatureModel model) {
+        return new ArrayList<>(model.instancesByName().keySet());
+    }
+
+    @Test
+    public void outlineRowsAreNumberedAcrossExamplesBlocks() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Scenario Outline: search <kw>",
+            "    When the user searches for \"<kw>\"",
+            "    Examples:",
+            "      | kw     |",
+            "      | phone  |",
+            "      | laptop |",
+            "    @more",
+            "    Examples: more",
+            "      | kw    |",
+            "      | radio |"));
+
+        assertEquals(List.of("search phone [ex 1]", "search laptop [ex 2]", "search radio [ex 3]"), names(model));
+        assertEquals("search radio [ex 3]", model.instanceAt(11).name);
+        assertEquals("Scenario: search radio [ex 3]\nWhen the user searches for \"radio\"",
+            model.instanceAt(11).gherkin);
+    }
+
+    @Test
+    public void emptyCellsKeepTheirColumn() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Scenario Outline: login <user> <code>",
+            "    When <user> enters <code>",
+            "    Examples:",
+            "      | user | code |",
+            "      |      | 401  |",
+            "      | bob  |      |"));
+
+        FeatureModel.Instance first = model.instanceAt(6);
+        assertEquals("login  401 [ex 1]", first.name);
+        assertEquals("", first.row.get("user"));
+        assertEquals("401", first.row.get("code"));
+        assertEquals("login bob  [ex 2]", model.instanceAt(7).name);
+    }
+
+    @Test
+    public void backgroundEndsAtTheNextHeader() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Background:",
+            "    Given a user",
+            "",
+            "  Scenario Outline: o <x>",
+            "    When <x>",
+            "    Examples:",
+            "      | x |",
+            "      | 1 |"));
+
+        assertEquals("Background:\n    Given a user", model.background.block.replace(System.lineSeparator(), "\n"));
+        assertEquals("Given a user", model.background.stepsText());
+        assertEquals(5, model.background.end);
+    }
+
+    @Test
+    public void backgroundEndsAtATagLine() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Background:",
+            "    Given a user",
+            "  @smoke",
+            "  Rule: r",
+            "  Scenario: s",
+            "    When x"));
+
+        assertEquals(4, model.background.end);
+        assertEquals("Background:\n    Given a user", model.background.block.replace(System.lineSeparator(), "\n"));
+        assertEquals(List.of("s"), names(model));
+    }
+
+    @Test
+    public void scenarioHeaderInsideDocStringIsNotAScenario() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Scenario: real",
+            "    Given text",
+            "      \"\"\"",
+            "      Scenario: not a header",
+            "      \"\"\"",
+            "    Then done"));
+
+        assertEquals(List.of("real"), names(model));
+        assertEquals(2, model.scenarios.get(0).steps.size());
+        assertNull(model.background);
+    }
+}
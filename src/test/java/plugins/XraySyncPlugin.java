@@ -0,0 +1,154 @@
+package plugins;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.cucumber.plugin.ConcurrentEventListener;
+import io.cucumber.plugin.event.EventPublisher;
+import io.cucumber.plugin.event.TestCaseStarted;
+import io.cucumber.plugin.event.TestRunFinished;
+import io.cucumber.plugin.event.TestRunStarted;
+import io.cucumber.plugin.event.TestSourceRead;
+import changes.FeatureScenarioChangeMap;
+import stepdefinitions.utils;
+import sync.ResultsExporter;
+import sync.StaleTestReaper;
+import sync.SyncClients;
+import sync.SyncMetrics;
+import util.Log;
+
+// Runs the Jira/Xray sync off the test threads. Feature sources are captured from
+// TestSourceRead, each feature is queued the first time one of its test cases starts,
+// and TestRunFinished waits (bounded) for the queue to drain, then pushes the run's results.
+public class XraySyncPlugin implements ConcurrentEventListener {
+
+    private static final Log LOG = Log.get(XraySyncPlugin.class);
+
+    private final String projectKey = utils.cfg.jiraProjectKey();
+    private final Map<URI, String> sources = new ConcurrentHashMap<>();
+    private final Set<URI> queued = ConcurrentHashMap.newKeySet();
+    private final Queue<CompletableFuture<Void>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "xray-sync-plugin");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile CompletableFuture<Void> changeTracking = CompletableFuture.completedFuture(null);
+    private volatile String fromRef = "HEAD~1";
+    private volatile String toRef = "HEAD";
+    private volatile Instant runStarted = Instant.EPOCH;
+
+    @Override
+    public void setEventPublisher(EventPublisher publisher) {
+        if (projectKey == null || projectKey.isBlank()) {
+            LOG.info("JIRA_PROJECT_KEY not set, sync disabled");
+            return;
+        }
+        publisher.registerHandlerFor(TestRunStarted.class, this::onRunStarted);
+        publisher.registerHandlerFor(TestSourceRead.class, e -> sources.put(e.getUri(), e.getSource()));
+        publisher.registerHandlerFor(TestCaseStarted.class, this::onTestCaseStarted);
+        publisher.registerHandlerFor(TestRunFinished.class, this::onRunFinished);
+    }
+
+    private void onRunStarted(TestRunStarted event) {
+        runStarted = event.getInstant();
+        String from = envOrDefault("FROM_COMMIT", "HEAD~1");
+        String to   = envOrDefault("TO_COMMIT", "HEAD");
+        fromRef = from;
+        toRef = to;
+        changeTracking = CompletableFuture.runAsync(() -> utils.initializeChangeTracking(from, to), executor);
+    }
+
+    private void onTestCaseStarted(TestCaseStarted event) {
+        URI uri = event.getTestCase().getUri();
+        if (!queued.add(uri)) return;
+        String source = sources.get(uri);
+        pending.add(changeTracking
+            .thenRunAsync(() -> new utils().syncFeature(projectKey, uri,
+                source != null ? source : utils.readFeatureText(uri)), executor)
+            .exceptionally(ex -> {
+                failures.incrementAndGet();
+                LOG.warn("Sync failed", "feature", uri, "error", ex.getMessage());
+                return null;
+            }));
+    }
+
+    private void onRunFinished(TestRunFinished event) {
+        String reaper = utils.cfg.staleTestReaper();
+        if (!"off".equalsIgnoreCase(reaper)) {
+            // Only once the syncs are done: a moved scenario's Test is relabelled by its feature's
+            // sync and must not be found under its old label first. The change map is normally
+            // built by Hooks by now, for the same refs.
+            CompletableFuture<Void> syncs = CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]));
+            pending.add(syncs.thenRunAsync(() ->
+                    new StaleTestReaper(SyncClients.shared().jira(), reaper, utils.cfg.staleTestLabel())
+                        .reap(projectKey, FeatureScenarioChangeMap.buildOrReuse(fromRef, toRef)), executor)
+                .exceptionally(ex -> {
+                    failures.incrementAndGet();
+                    LOG.warn("Stale Test reaper failed", "error", ex.getMessage());
+                    return null;
+                }));
+        }
+        long timeoutSec = utils.cfg.syncFlushTimeoutSec();
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(timeoutSec, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            LOG.warn("Sync still running; abandoning remaining work", "timeoutSec", timeoutSec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // failures are counted per feature
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("Sync finished", "queued", queued.size(), "failed", failures.get());
+        if (utils.cfg.resultsExport()) exportResults();
+        LOG.info(utils.pipelineReport());
+        LOG.info(SyncMetrics.global().report());
+        SyncMetrics.global().dumpTo(utils.cfg.syncMetricsDir());
+        Log.flush();
+    }
+
+    // After the syncs, so the scenarios' Tests exist. The json plugin is listed before this one
+    // in the runners, so its TestRunFinished handler has written the report by now; a report
+    // older than this run (e.g. the json plugin left out) is not pushed again.
+    private void exportResults() {
+        Path report = Paths.get(ResultsExporter.DEFAULT_REPORT);
+        try {
+            if (!Files.exists(report)
+                || Files.getLastModifiedTime(report).toInstant().isBefore(runStarted.truncatedTo(ChronoUnit.SECONDS))) {
+                LOG.warn("Results export skipped: no report written by this run", "report", report);
+                return;
+            }
+            ResultsExporter exporter = new ResultsExporter(SyncClients.shared(), projectKey, utils.cfg.resultsBatchSize());
+            String key = exporter.export(report);
+            LOG.info("Results exported", "results", exporter.exported(), "execution", key, "unmapped", exporter.unmapped());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Results export failed", "report", report, "error", e.getMessage());
+        }
+    }
+
+    private static String envOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
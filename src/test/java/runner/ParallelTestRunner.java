@@ -0,0 +1,33 @@
+package runner;
+
+import static io.cucumber.junit.platform.engine.Constants.ANSI_COLORS_DISABLED_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.GLUE_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PLUGIN_PROPERTY_NAME;
+import static io.cucumber.junit.platform.engine.Constants.PLUGIN_PUBLISH_QUIET_PROPERTY_NAME;
+
+import org.junit.platform.suite.api.ConfigurationParameter;
+import org.junit.platform.suite.api.IncludeEngines;
+import org.junit.platform.suite.api.SelectDirectories;
+import org.junit.platform.suite.api.Suite;
+
+// Same features, glue and reports as TestRunner, run on the JUnit Platform Cucumber engine with
+// scenarios in parallel (mvn test -Pparallel sets a fixed pool of ${parallel.threads}).
+// "summary" instead of "pretty": pretty output interleaves across threads.
+// With FEATURES_ROOTS module roots, pass them as -Dcucumber.features=<root>,<root>: the engine
+// takes that over @SelectDirectories, which has to be a constant.
+@Suite
+@IncludeEngines("cucumber")
+@SelectDirectories("src/test/java/features")
+@ConfigurationParameter(key = GLUE_PROPERTY_NAME, value = "stepdefinitions,hooks")
+@ConfigurationParameter(key = PLUGIN_PROPERTY_NAME, value =
+    "summary,"
+    + "html:target/cucumber-report/junit/html,"
+    + "json:target/cucumber-report/junit/cucumber.json,"
+    + "junit:target/cucumber-report/junit/cucumber.xml,"
+    + "plugins.XraySyncPlugin")
+@ConfigurationParameter(key = PARALLEL_EXECUTION_ENABLED_PROPERTY_NAME, value = "true")
+@ConfigurationParameter(key = ANSI_COLORS_DISABLED_PROPERTY_NAME, value = "true")
+@ConfigurationParameter(key = PLUGIN_PUBLISH_QUIET_PROPERTY_NAME, value = "true")
+public class ParallelTestRunner {
+}
@@ -0,0 +1,136 @@
+package runner;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+
+import org.aeonbits.owner.ConfigCache;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.Filterable;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.model.InitializationError;
+
+import Config.TestConfig;
+import changes.FeatureScenarioChangeMap;
+import changes.ScenarioSelection;
+import io.cucumber.junit.Cucumber;
+import sync.ResultsExporter;
+import util.FeatureRoots;
+import util.Log;
+
+// Cucumber runner with change-based selection. With TEST_SELECTION=changed the change map is
+// built before discovery and Cucumber only gets the NEW/CHANGED scenarios as feature:line URIs
+// (through cucumber.features, which overrides @CucumberOptions.features). Everything runs when
+// the map fails or too much changed; nothing runs when no scenario changed. When FEATURES_ROOTS
+// lists module roots, a full run discovers the features under all of them the same way.
+// Cucumber's runner is final, so this wraps it rather than extending it.
+public class SelectiveCucumber extends Runner implements Filterable {
+
+  private static final Log LOG = Log.get("selection");
+
+  private final Class<?> testClass;
+  private final Cucumber delegate;
+  private final ScenarioSelection selection;
+  private final long[] estimate;
+
+  public SelectiveCucumber(Class<?> testClass) throws InitializationError {
+    this.testClass = testClass;
+    TestConfig cfg = ConfigCache.getOrCreate(TestConfig.class);
+    if (!"changed".equalsIgnoreCase(cfg.testSelection())) {
+      selection = null;
+      estimate = null;
+      delegate = cucumber(testClass, configuredRoots());
+      return;
+    }
+
+    String from = envOrDefault("FROM_COMMIT", "HEAD~1");
+    String to   = envOrDefault("TO_COMMIT", "HEAD");
+    selection = ScenarioSelection.compute(from, to, cfg.testSelectionMaxRatio());
+    // Read before this run's json plugin overwrites the report
+    estimate = selection.runAll() ? null : selection.estimateNanos(Paths.get(ResultsExporter.DEFAULT_REPORT));
+
+    if (selection.runAll()) {
+      LOG.info("Test selection: running all scenarios", "reason", selection.fallbackReason());
+      delegate = cucumber(testClass, configuredRoots());
+    } else if (selection.selected() == 0) {
+      LOG.info("Test selection: no NEW/CHANGED scenarios, nothing to run", "from", from, "to", to);
+      delegate = null;
+    } else {
+      LOG.info("Test selection: running NEW/CHANGED scenarios",
+          "selected", selection.selected(), "total", selection.total(), "features", selection.featureUris().size());
+      delegate = cucumber(testClass, selection.cucumberFeatures());
+    }
+  }
+
+  // features (when not null) replaces @CucumberOptions.features for this runner only
+  private static Cucumber cucumber(Class<?> testClass, String features) throws InitializationError {
+    if (features == null) return new Cucumber(testClass);
+    String previous = System.getProperty("cucumber.features");
+    System.setProperty("cucumber.features", features);
+    try {
+      return new Cucumber(testClass);
+    } finally {
+      if (previous == null) System.clearProperty("cucumber.features");
+      else System.setProperty("cucumber.features", previous);
+    }
+  }
+
+  // The module feature roots when FEATURES_ROOTS names other roots than @CucumberOptions
+  // (the default single root); an explicit -Dcucumber.features still wins
+  private static String configuredRoots() {
+    FeatureRoots roots = FeatureScenarioChangeMap.featureRoots();
+    if (System.getProperty("cucumber.features") != null
+        || roots.patterns().equals(List.of(FeatureRoots.DEFAULT_ROOT))) return null;
+    try {
+      Set<String> dirs = roots.discover().keySet();
+      return String.join(",", dirs.isEmpty() ? roots.prefixes() : dirs);
+    } catch (IOException ex) {
+      LOG.warn("Feature roots could not be listed, using @CucumberOptions.features", "error", ex.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public Description getDescription() {
+    return delegate != null ? delegate.getDescription() : Description.createSuiteDescription(testClass);
+  }
+
+  @Override
+  public void run(RunNotifier notifier) {
+    long start = System.nanoTime();
+    if (delegate != null) delegate.run(notifier);
+    if (selection != null && !selection.runAll()) report(System.nanoTime() - start);
+  }
+
+  @Override
+  public void filter(Filter filter) throws NoTestsRemainException {
+    if (delegate == null) throw new NoTestsRemainException();
+    delegate.filter(filter);
+  }
+
+  // Saved time is the previous run's duration of the scenarios that were skipped
+  private void report(long elapsedNanos) {
+    if (estimate == null) {
+      LOG.info("Test selection finished", "ran", selection.selected(), "of", selection.total(),
+          "wallSec", seconds(elapsedNanos), "saved", "unknown (no previous report)");
+    } else {
+      LOG.info("Test selection finished", "ran", selection.selected(), "of", selection.total(),
+          "wallSec", seconds(elapsedNanos), "previousFullSec", seconds(estimate[0]),
+          "estSavedSec", seconds(estimate[0] - estimate[1]));
+    }
+    Log.flush();
+  }
+
+  private static String seconds(long nanos) {
+    return String.format("%.2f", nanos / 1e9);
+  }
+
+  private static String envOrDefault(String key, String def) {
+    String v = System.getenv(key);
+    return (v == null || v.isBlank()) ? def : v;
+  }
+}
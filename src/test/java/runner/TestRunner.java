@@ -1,10 +1,10 @@
 package runner;
 
 import org.junit.runner.RunWith;
-import io.cucumber.junit.Cucumber;
 import io.cucumber.junit.CucumberOptions;
 
-@RunWith(Cucumber.class)
+// TEST_SELECTION=changed runs only NEW/CHANGED scenarios (see SelectiveCucumber)
+@RunWith(SelectiveCucumber.class)
 @CucumberOptions(
     features = "src/test/java/features",          
     glue = { "stepdefinitions", "hooks" },            
@@ -12,7 +12,8 @@ import io.cucumber.junit.CucumberOptions;
         "pretty",
         "html:target/cucumber-report/junit/html",
         "json:target/cucumber-report/junit/cucumber.json",
-        "junit:target/cucumber-report/junit/cucumber.xml"
+        "junit:target/cucumber-report/junit/cucumber.xml",
+        "plugins.XraySyncPlugin"
     },
     monochrome = true,
     publish = false
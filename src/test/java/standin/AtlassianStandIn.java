@@ -0,0 +1,438 @@
+package standin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// In-process stand-in for the Jira/Xray endpoints the sync uses, backed by memory.
+// Each logical endpoint can be given latency, a 429 rate and a failure rate.
+// Point the sync at it with POST_URL=<jiraIssueUrl()> and XRAY_BASE_URL=<xrayBaseUrl()>.
+public class AtlassianStandIn implements AutoCloseable {
+
+    public static final class Profile {
+        final long latencyMs;
+        final long jitterMs;
+        final double rate429;
+        final double failureRate;
+
+        public Profile(long latencyMs, long jitterMs, double rate429, double failureRate) {
+            this.latencyMs = latencyMs;
+            this.jitterMs = jitterMs;
+            this.rate429 = rate429;
+            this.failureRate = failureRate;
+        }
+    }
+
+    private static final Profile NONE = new Profile(0, 0, 0, 0);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Profile> profiles = new ConcurrentHashMap<>();
+    private volatile Profile defaultProfile = NONE;
+
+    // In-memory state
+    private final Map<String, JSONObject> issuesByKey = new ConcurrentHashMap<>();
+    private final Map<String, String> keyById = new ConcurrentHashMap<>();
+    private final Set<String> archived = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> testsByPrecondition = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(10000);
+
+    // Request stats (server-side service time per request, including injected latency; the
+    // client's view, with throttle waits and retries, is in SyncMetrics)
+    private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final List<Long> latenciesMicros = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public AtlassianStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(32, r -> {
+            Thread t = new Thread(r, "standin-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/rest/api/3/", ex -> handle(ex, this::jira));
+        server.createContext("/api/v2/", ex -> handle(ex, this::xray));
+        server.start();
+    }
+
+    public String jiraIssueUrl() { return base() + "/rest/api/3/issue"; }
+    public String xrayBaseUrl() { return base() + "/api/v2"; }
+
+    private String base() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public AtlassianStandIn defaultProfile(Profile p) {
+        defaultProfile = p;
+        return this;
+    }
+
+    // endpoint names: jira.create, jira.get, jira.edit, jira.search, jira.bulkEdit, jira.archive, xray.auth, xray.graphql, xray.import
+    public AtlassianStandIn profile(String endpoint, Profile p) {
+        profiles.put(endpoint, p);
+        return this;
+    }
+
+    public Map<String, LongAdder> requestCounts() { return requestCounts; }
+    public long throttledCount() { return throttled.get(); }
+    public long failedCount() { return failed.get(); }
+    public int issueCount() { return issuesByKey.size(); }
+    public int archivedCount() { return archived.size(); }
+
+    public long totalRequests() {
+        return requestCounts.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long percentileMicros(double pct) {
+        List<Long> copy;
+        synchronized (latenciesMicros) {
+            copy = new ArrayList<>(latenciesMicros);
+        }
+        if (copy.isEmpty()) return 0;
+        Collections.sort(copy);
+        int idx = (int) Math.ceil(pct / 100.0 * copy.size()) - 1;
+        return copy.get(Math.max(0, Math.min(copy.size() - 1, idx)));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ---------- dispatch ----------
+
+    private interface Handler {
+        Reply handle(String endpointPath, String method, String body);
+    }
+
+    private static final class Reply {
+        final int status;
+        final Supplier<String> body;   // run only if the request is not throttled or failed
+        final String endpoint;
+
+        Reply(String endpoint, int status, Supplier<String> body) {
+            this.endpoint = endpoint;
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private void handle(HttpExchange ex, Handler handler) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream in = ex.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            Reply reply = handler.handle(ex.getRequestURI().getPath(), ex.getRequestMethod(), body);
+            requestCounts.computeIfAbsent(reply.endpoint, k -> new LongAdder()).increment();
+
+            Profile p = profiles.getOrDefault(reply.endpoint, defaultProfile);
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            long sleep = p.latencyMs + (p.jitterMs > 0 ? rnd.nextLong(p.jitterMs + 1) : 0);
+            if (sleep > 0) Thread.sleep(sleep);
+
+            if (p.rate429 > 0 && rnd.nextDouble() < p.rate429) {
+                throttled.incrementAndGet();
+                ex.getResponseHeaders().add("Retry-After", "1");
+                ex.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+                send(ex, 429, "{\"message\":\"Rate limit exceeded\"}");
+            } else if (p.failureRate > 0 && rnd.nextDouble() < p.failureRate) {
+                failed.incrementAndGet();
+                send(ex, 500, "{\"message\":\"Injected failure\"}");
+            } else {
+                send(ex, reply.status, reply.body.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(ex, 503, "{}");
+        } catch (RuntimeException e) {
+            send(ex, 400, new JSONObject().put("errorMessages", new JSONArray().put(String.valueOf(e.getMessage()))).toString());
+        } finally {
+            latenciesMicros.add((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, String body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        if (status == 204 || bytes.length == 0) {
+            ex.sendResponseHeaders(status, -1);
+        } else {
+            ex.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+        ex.close();
+    }
+
+    // ---------- Jira ----------
+
+    private Reply jira(String path, String method, String body) {
+        if (path.equals("/rest/api/3/search/jql") && "POST".equals(method)) {
+            return new Reply("jira.search", 200, () -> search(new JSONObject(body)).toString());
+        }
+        if (path.equals("/rest/api/3/issue") && "POST".equals(method)) {
+            return new Reply("jira.create", 201, () -> create(new JSONObject(body).getJSONObject("fields")).toString());
+        }
+        if (path.equals("/rest/api/3/bulk/issues/fields") && "POST".equals(method)) {
+            return new Reply("jira.bulkEdit", 201, () -> {
+                bulkEdit(new JSONObject(body));
+                return new JSONObject().put("taskId", String.valueOf(nextId.incrementAndGet())).toString();
+            });
+        }
+        if (path.equals("/rest/api/3/issue/archive") && "PUT".equals(method)) {
+            return new Reply("jira.archive", 200, () -> new JSONObject()
+                .put("numberOfIssuesUpdated", archive(new JSONObject(body).getJSONArray("issueIdsOrKeys"))).toString());
+        }
+        if (path.startsWith("/rest/api/3/issue/")) {
+            String key = path.substring("/rest/api/3/issue/".length());
+            JSONObject issue = issuesByKey.get(key);
+            if (issue == null) return new Reply("jira.get", 404, () -> "{\"errorMessages\":[\"Issue does not exist\"]}");
+            if ("GET".equals(method)) return new Reply("jira.get", 200, issue::toString);
+            if ("PUT".equals(method)) {
+                return new Reply("jira.edit", 204, () -> {
+                    editLabels(issue, new JSONObject(body));
+                    return "";
+                });
+            }
+        }
+        return new Reply("jira.other", 404, () -> "{}");
+    }
+
+    private JSONObject create(JSONObject fields) {
+        String project = fields.getJSONObject("project").getString("key");
+        String id = String.valueOf(nextId.incrementAndGet());
+        String key = project + "-" + id;
+        JSONObject issue = new JSONObject()
+            .put("id", id)
+            .put("key", key)
+            .put("fields", new JSONObject()
+                .put("summary", fields.optString("summary"))
+                .put("project", project)
+                .put("issuetype", fields.getJSONObject("issuetype").getString("name"))
+                .put("labels", fields.optJSONArray("labels") == null ? new JSONArray() : fields.getJSONArray("labels")));
+        issuesByKey.put(key, issue);
+        keyById.put(id, key);
+        return new JSONObject().put("id", id).put("key", key).put("self", jiraIssueUrl() + "/" + id);
+    }
+
+    private synchronized void editLabels(JSONObject issue, JSONObject body) {
+        JSONArray ops = body.getJSONObject("update").optJSONArray("labels");
+        JSONArray labels = issue.getJSONObject("fields").getJSONArray("labels");
+        List<Object> current = labels.toList();
+        for (int i = 0; ops != null && i < ops.length(); i++) {
+            JSONObject op = ops.getJSONObject(i);
+            if (op.has("add") && !current.contains(op.getString("add"))) current.add(op.getString("add"));
+            if (op.has("remove")) current.remove(op.getString("remove"));
+        }
+        issue.getJSONObject("fields").put("labels", new JSONArray(current));
+    }
+
+    // Applied at once; the real endpoint queues a task that finishes a little later
+    private synchronized void bulkEdit(JSONObject body) {
+        JSONObject field = body.getJSONObject("editedFieldsInput").getJSONArray("labelsFields").getJSONObject(0);
+        String option = field.getString("bulkEditMultiSelectFieldOption");
+        List<String> names = new ArrayList<>();
+        JSONArray labels = field.getJSONArray("labels");
+        for (int i = 0; i < labels.length(); i++) names.add(labels.getJSONObject(i).getString("name"));
+
+        JSONArray selected = body.getJSONArray("selectedIssueIdsOrKeys");
+        for (int i = 0; i < selected.length(); i++) {
+            JSONObject issue = issue(selected.getString(i));
+            if (issue == null) throw new IllegalArgumentException("Issue does not exist: " + selected.getString(i));
+            List<Object> current = issue.getJSONObject("fields").getJSONArray("labels").toList();
+            switch (option) {
+                case "ADD":
+                    for (String n : names) if (!current.contains(n)) current.add(n);
+                    break;
+                case "REMOVE":
+                    current.removeAll(names);
+                    break;
+                case "REPLACE":
+                    current = new ArrayList<>(names);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported bulkEditMultiSelectFieldOption " + option);
+            }
+            issue.getJSONObject("fields").put("labels", new JSONArray(current));
+        }
+    }
+
+    // Archived issues drop out of search, as in Jira
+    private int archive(JSONArray idsOrKeys) {
+        int updated = 0;
+        for (int i = 0; i < idsOrKeys.length(); i++) {
+            JSONObject issue = issue(idsOrKeys.getString(i));
+            if (issue != null && archived.add(issue.getString("key"))) updated++;
+        }
+        return updated;
+    }
+
+    private JSONObject issue(String idOrKey) {
+        String key = keyById.getOrDefault(idOrKey, idOrKey);
+        return issuesByKey.get(key);
+    }
+
+    private JSONObject search(JSONObject req) {
+        String jql = req.getString("jql").replaceAll("(?i)\\s+ORDER\\s+BY.*$", "");
+        int max = req.optInt("maxResults", 50);
+        int offset = req.has("nextPageToken") ? Integer.parseInt(req.getString("nextPageToken")) : 0;
+        JSONArray wanted = req.optJSONArray("fields");
+
+        List<JSONObject> matches = new ArrayList<>();
+        for (JSONObject issue : issuesByKey.values()) {
+            if (!archived.contains(issue.getString("key")) && matches(issue, jql)) matches.add(issue);
+        }
+        matches.sort((a, b) -> Integer.compare(a.getInt("id"), b.getInt("id")));
+
+        JSONArray page = new JSONArray();
+        for (int i = offset; i < Math.min(matches.size(), offset + max); i++) {
+            JSONObject issue = matches.get(i);
+            JSONObject fields = new JSONObject();
+            for (int f = 0; wanted != null && f < wanted.length(); f++) {
+                String name = wanted.getString(f);
+                if (issue.getJSONObject("fields").has(name)) fields.put(name, issue.getJSONObject("fields").get(name));
+            }
+            page.put(new JSONObject().put("id", issue.getString("id")).put("key", issue.getString("key")).put("fields", fields));
+        }
+        JSONObject out = new JSONObject().put("issues", page);
+        if (offset + max < matches.size()) out.put("nextPageToken", String.valueOf(offset + max));
+        return out;
+    }
+
+    private static final Pattern EQ = Pattern.compile("(?i)^(project|issuetype|labels)\\s*=\\s*\"?([^\"]*)\"?$");
+    private static final Pattern IN = Pattern.compile("(?i)^(labels|key)\\s+in\\s*\\((.*)\\)$");
+
+    // Enough JQL for the sync: AND-joined project/issuetype/labels/key clauses
+    private static boolean matches(JSONObject issue, String jql) {
+        JSONObject fields = issue.getJSONObject("fields");
+        List<Object> labels = fields.getJSONArray("labels").toList();
+        for (String clause : jql.split("(?i)\\s+AND\\s+")) {
+            String c = clause.trim();
+            Matcher eq = EQ.matcher(c);
+            Matcher in = IN.matcher(c);
+            if (eq.matches()) {
+                String field = eq.group(1).toLowerCase();
+                String value = eq.group(2).replace("\\\"", "\"");
+                if (field.equals("project") && !fields.getString("project").equalsIgnoreCase(value)) return false;
+                if (field.equals("issuetype") && !fields.getString("issuetype").equalsIgnoreCase(value)) return false;
+                if (field.equals("labels") && !labels.contains(value)) return false;
+            } else if (in.matches()) {
+                boolean any = false;
+                for (String raw : in.group(2).split(",")) {
+                    String v = raw.trim().replaceAll("^\"|\"$", "").replace("\\\"", "\"");
+                    if (in.group(1).equalsIgnoreCase("key") ? issue.getString("key").equals(v) : labels.contains(v)) {
+                        any = true;
+                        break;
+                    }
+                }
+                if (!any) return false;
+            } else {
+                throw new IllegalArgumentException("Unsupported JQL clause: " + c);
+            }
+        }
+        return true;
+    }
+
+    // ---------- Xray ----------
+
+    private Reply xray(String path, String method, String body) {
+        if (path.equals("/api/v2/authenticate")) {
+            return new Reply("xray.auth", 200, () -> "\"" + jwt() + "\"");
+        }
+        if (path.equals("/api/v2/graphql")) {
+            return new Reply("xray.graphql", 200, () -> graphql(new JSONObject(body)).toString());
+        }
+        if (path.startsWith("/api/v2/import/execution")) {
+            return new Reply("xray.import", 200, () -> create(new JSONObject()
+                .put("project", new JSONObject().put("key", "EXEC"))
+                .put("summary", "Test Execution")
+                .put("issuetype", new JSONObject().put("name", "Test Execution"))).toString());
+        }
+        if (path.startsWith("/api/v2/import/feature")) {
+            return new Reply("xray.import", 200, () -> new JSONObject()
+                .put("errors", new JSONArray())
+                .put("updatedOrCreatedTests", new JSONArray())
+                .put("updatedOrCreatedPreconditions", new JSONArray()).toString());
+        }
+        return new Reply("xray.other", 404, () -> "{}");
+    }
+
+    private JSONObject graphql(JSONObject req) {
+        String query = req.getString("query");
+        JSONObject vars = req.optJSONObject("variables") == null ? new JSONObject() : req.getJSONObject("variables");
+        String issueId = vars.optString("issueId");
+        JSONObject data = new JSONObject();
+
+        if (query.contains("getPrecondition")) {
+            Set<String> linked = testsByPrecondition.getOrDefault(issueId, Set.of());
+            List<String> ids = new ArrayList<>(linked);
+            int start = vars.optInt("start", 0);
+            int limit = vars.optInt("limit", 100);
+            JSONArray results = new JSONArray();
+            for (int i = start; i < Math.min(ids.size(), start + limit); i++) {
+                results.put(new JSONObject().put("issueId", ids.get(i)));
+            }
+            data.put("getPrecondition", new JSONObject()
+                .put("tests", new JSONObject().put("total", ids.size()).put("results", results)));
+        } else if (query.contains("addTestsToPrecondition")) {
+            JSONArray tests = vars.getJSONArray("testIssueIds");
+            Set<String> linked = testsByPrecondition.computeIfAbsent(issueId, k -> ConcurrentHashMap.newKeySet());
+            JSONArray added = new JSONArray();
+            for (int i = 0; i < tests.length(); i++) {
+                if (linked.add(tests.getString(i))) added.put(tests.getString(i));
+            }
+            data.put("addTestsToPrecondition", new JSONObject().put("addedTests", added));
+        } else if (query.contains("updateTestType")) {
+            requireIssue(issueId);
+            data.put("updateTestType", new JSONObject().put("issueId", issueId));
+        } else if (query.contains("updateGherkinTestDefinition")) {
+            requireIssue(issueId);
+            data.put("updateGherkinTestDefinition", new JSONObject().put("issueId", issueId));
+        } else if (query.contains("updatePrecondition")) {
+            requireIssue(issueId);
+            data.put("updatePrecondition", new JSONObject().put("issueId", issueId));
+        } else {
+            return new JSONObject().put("errors", new JSONArray().put(new JSONObject().put("message", "Unsupported operation")));
+        }
+        return new JSONObject().put("data", data);
+    }
+
+    private void requireIssue(String issueId) {
+        if (!keyById.containsKey(issueId)) throw new IllegalArgumentException("Unknown issueId " + issueId);
+    }
+
+    private static String jwt() {
+        Base64.Encoder enc = Base64.getUrlEncoder().withoutPadding();
+        String header = enc.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8));
+        long exp = System.currentTimeMillis() / 1000 + 3600;
+        String payload = enc.encodeToString(("{\"exp\":" + exp + "}").getBytes(StandardCharsets.UTF_8));
+        return header + "." + payload + ".standin";
+    }
+}
@@ -0,0 +1,105 @@
+package standin;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import stepdefinitions.utils;
+import sync.LatencyHistogram;
+import sync.StaleTestReaper;
+import sync.SyncClients;
+import sync.SyncMetrics;
+import util.Log;
+
+// Drives the real sync code against AtlassianStandIn with synthetic features, then reaps the
+// last scenario of each feature as deleted (relabelled through bulk edit for even features,
+// archived for odd ones), and prints throughput and latency. Latency is the client's, from
+// SyncMetrics, so throttle waits and retries count; the stand-in's service time is printed
+// beside it. Run with:
+//   mvn -q test-compile exec:java -Dexec.mainClass=standin.SyncLoadScenario -Dexec.classpathScope=test
+// Knobs (system properties): load.features, load.scenarios, load.callers,
+// load.latencyMs, load.jitterMs, load.rate429, load.failureRate
+public class SyncLoadScenario {
+
+    public static void main(String[] args) throws Exception {
+        int features = Integer.getInteger("load.features", 20);
+        int scenarios = Integer.getInteger("load.scenarios", 10);
+        int callers = Integer.getInteger("load.callers", 4);
+        AtlassianStandIn.Profile profile = new AtlassianStandIn.Profile(
+            Long.getLong("load.latencyMs", 40),
+            Long.getLong("load.jitterMs", 20),
+            Double.parseDouble(System.getProperty("load.rate429", "0.02")),
+            Double.parseDouble(System.getProperty("load.failureRate", "0")));
+
+        try (AtlassianStandIn standIn = new AtlassianStandIn().defaultProfile(profile)) {
+            // Must be set before utils/TestConfig are first touched
+            System.setProperty("POST_URL", standIn.jiraIssueUrl());
+            System.setProperty("XRAY_BASE_URL", standIn.xrayBaseUrl());
+            System.setProperty("XRAY_CLIENT_ID", "standin-client");
+            System.setProperty("XRAY_CLIENT_SECRET", "standin-secret");
+            System.setProperty("XRAY_TOKEN_CACHE_FILE", "");
+            System.setProperty("USER_MAIL", "load@example.com");
+            System.setProperty("API_KEY", "standin");
+            System.setProperty("SYNC_MODE", "graphql");
+
+            ExecutorService pool = Executors.newFixedThreadPool(callers);
+            List<Future<?>> runs = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int f = 0; f < features; f++) {
+                URI uri = URI.create("file:///load/feature_" + f + ".feature");
+                String text = syntheticFeature(f, scenarios);
+                runs.add(pool.submit(() -> new utils().syncFeature("LOAD", uri, text)));
+            }
+            for (Future<?> run : runs) run.get();
+            pool.shutdown();
+            long syncMs = (System.nanoTime() - start) / 1_000_000;
+
+            Map<String, Map<String, String>> evenDeleted = new LinkedHashMap<>();
+            Map<String, Map<String, String>> oddDeleted = new LinkedHashMap<>();
+            for (int f = 0; f < features; f++) {
+                (f % 2 == 0 ? evenDeleted : oddDeleted).put("feature_" + f + ".feature",
+                    Map.of("Load scenario " + f + "-" + (scenarios - 1), "DELETED"));
+            }
+            int reaped = new StaleTestReaper(SyncClients.shared().jira(), "label", "stale").reap("LOAD", evenDeleted).size()
+                + new StaleTestReaper(SyncClients.shared().jira(), "archive", "stale").reap("LOAD", oddDeleted).size();
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            Log.flush();
+
+            long total = standIn.totalRequests();
+            System.out.println("=== SYNC LOAD ===");
+            System.out.println("features=" + features + " scenarios/feature=" + scenarios + " callers=" + callers);
+            System.out.println("elapsed=" + elapsedMs + "ms (sync " + syncMs + "ms) requests=" + total
+                + " req/s=" + String.format("%.1f", total * 1000.0 / Math.max(1, elapsedMs)));
+            LatencyHistogram client = SyncMetrics.global().latency();
+            System.out.println("latency p50=" + client.percentileMicros(50) / 1000 + "ms p99="
+                + client.percentileMicros(99) / 1000 + "ms calls=" + client.count()
+                + " (service p50=" + standIn.percentileMicros(50) / 1000 + "ms p99="
+                + standIn.percentileMicros(99) / 1000 + "ms)");
+            System.out.println("throttled(429)=" + standIn.throttledCount() + " failed(5xx)=" + standIn.failedCount()
+                + " issues=" + standIn.issueCount() + " reaped=" + reaped + " archived=" + standIn.archivedCount());
+            for (Map.Entry<String, ?> e : standIn.requestCounts().entrySet()) {
+                System.out.println("  " + e.getKey() + "=" + e.getValue());
+            }
+            System.out.println(utils.pipelineReport());
+            System.out.println(SyncMetrics.global().report());
+        }
+        System.exit(0);
+    }
+
+    private static String syntheticFeature(int f, int scenarios) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Feature: Load feature ").append(f).append("\n\n");
+        sb.append("  Background:\n    Given the load user is logged in\n\n");
+        for (int s = 0; s < scenarios; s++) {
+            sb.append("  Scenario: Load scenario ").append(f).append('-').append(s).append('\n');
+            sb.append("    When step ").append(s).append(" runs\n");
+            sb.append("    Then it passes\n\n");
+        }
+        return sb.toString();
+    }
+}
@@ -1,31 +1,35 @@
 package stepdefinitions;
 
-import static io.restassured.RestAssured.given;
-import static org.hamcrest.Matchers.notNullValue;
-
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.aeonbits.owner.ConfigCache;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import Config.TestConfig;
+import changes.FeatureScenarioChangeMap;
 import io.cucumber.java.Scenario;
-import io.restassured.RestAssured;
-import io.restassured.response.Response;
+import model.FeatureModel;
 import model.ScenarioChangeTracker;
 import service.FeatureChangeDetector;
+import sync.FeatureImporter;
+import sync.FeatureSyncRegistry;
+import sync.HttpStatusException;
+import sync.JiraClient;
+import sync.SyncClients;
+import sync.SyncPipeline;
+import sync.XrayClient;
+import sync.XrayTokenProvider;
+import util.ContentHash;
+import util.Log;
 
 public class utils {
 
-    static {
-        RestAssured.useRelaxedHTTPSValidation();
-    }
-
-    private String jiraAuthHeader;   // Basic <base64(email:apiToken)>
-    private String xrayToken;        // Bearer <xray_jwt>
-    private Response lastHttpResponse;
+    private static final Log LOG = Log.get(utils.class);
 
     public static final TestConfig cfg = ConfigCache.getOrCreate(TestConfig.class);
 
@@ -37,56 +41,74 @@ public class utils {
     // Xray
     public static final String xrayClientId = cfg.xrayClientId();
     public static final String xrayClientSecret = cfg.xrayClientSecret();
-    public static final String xrayGraphQL = "https://xray.cloud.getxray.app/api/v2/graphql";
-    public static final String xrayAuth = "https://xray.cloud.getxray.app/api/v2/authenticate";
 
-    // State
-    private String lastTestKey;
-    private String lastTestId;
-    private String lastPreconditionKey;
-    private String lastPreconditionId;
-    private String preId;
+    // Shared by all step-definition instances: pooled HTTP/2 transport, clients and the stage executor
+    private static final SyncClients clients = SyncClients.shared();
+    private static final SyncPipeline pipeline = new SyncPipeline(cfg.syncConcurrency());
+    private static final XrayTokenProvider xrayTokens = clients.xrayTokens();
+    private static final JiraClient jira = clients.jira();
+    private static final XrayClient xray = clients.xray();
+
+    public static final String xrayGraphQL = clients.xrayGraphQLUrl();
+    public static final String xrayAuth = clients.xrayAuthUrl();
+    public static final String xrayImportFeature = clients.xrayImportFeatureUrl();
+
+    // State: one immutable snapshot per completed sync, published as a whole. Workers never
+    // write it, so parallel scenarios (each with its own utils) share nothing mutable here.
+    private static final class SyncState {
+        static final SyncState NONE = new SyncState(null, null, null, null);
+
+        final String testKey;
+        final String testId;
+        final String preconditionKey;
+        final String preconditionId;
+
+        SyncState(String testKey, String testId, String preconditionKey, String preconditionId) {
+            this.testKey = testKey;
+            this.testId = testId;
+            this.preconditionKey = preconditionKey;
+            this.preconditionId = preconditionId;
+        }
+    }
+
+    private static final class PreconditionRef {
+        final String key;   // null when served from the cache
+        final String id;
+
+        PreconditionRef(String key, String id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+
+    private volatile SyncState state = SyncState.NONE;
 
     // Accessors
-    public String getLastTestKey() { return lastTestKey; }
-    public String getLastTestId()  { return lastTestId; }
-    public String getLastPreconditionKey() { return lastPreconditionKey; }
-    public String getLastPreconditionId()  { return lastPreconditionId; }
-    public Response getLastHttpResponse()  { return lastHttpResponse; }
+    public String getLastTestKey() { return state.testKey; }
+    public String getLastTestId()  { return state.testId; }
+    public String getLastPreconditionKey() { return state.preconditionKey; }
+    public String getLastPreconditionId()  { return state.preconditionId; }
 
     // ---------- Auth ----------
+    // Jira uses a preset Basic header inside JiraClient; nothing to fetch
     public void authJira() {
-        String basic = java.util.Base64.getEncoder().encodeToString((email + ":" + apiToken).getBytes());
-        jiraAuthHeader = "Basic " + basic;
-        System.out.println("Jira auth prepared (Basic header set).");
+        LOG.info("Jira auth prepared (Basic header set)");
     }
 
     public void authXray() {
-        JSONObject authBody = new JSONObject()
-            .put("client_id", xrayClientId)
-            .put("client_secret", xrayClientSecret);
-
-        Response authResp = given()
-            .header("Content-Type", "application/json")
-            .body(authBody.toString())
-            .when()
-            .post(xrayAuth);
-
-        if (authResp.statusCode() != 200) {
-            throw new RuntimeException("Xray authentication failed: " + authResp.asString());
-        }
-        xrayToken = authResp.asString().replace("\"", "");
-        if (xrayToken == null || xrayToken.isEmpty()) {
-            throw new RuntimeException("Xray token is empty; check client id/secret");
-        }
-        System.out.println("Xray auth OK (token acquired).");
+        xrayTokens.token();
+        LOG.info("Xray auth OK (token acquired)");
     }
 
     // ---------- Helpers ----------
     public static String readFeatureText(Scenario scenario) {
+        java.net.URI uri = scenario.getUri();
+        if (uri == null) throw new IllegalStateException("Cannot resolve feature URI from Scenario.");
+        return readFeatureText(uri);
+    }
+
+    public static String readFeatureText(java.net.URI uri) {
         try {
-            java.net.URI uri = scenario.getUri();
-            if (uri == null) throw new IllegalStateException("Cannot resolve feature URI from Scenario.");
             if ("file".equalsIgnoreCase(uri.getScheme())) {
                 java.nio.file.Path p = java.nio.file.Paths.get(uri);
                 return java.nio.file.Files.readString(p);
@@ -106,60 +128,14 @@ public class utils {
     
     // Extract the Background steps as a single multi-line string (only step lines).
     public static String extractBackgroundSteps(String featureText) {
-        String[] lines = featureText.split("\\R");
-        boolean inBg = false;
-        StringBuilder sb = new StringBuilder();
-        for (String raw : lines) {
-            String line = raw.stripTrailing();
-            String trimmed = line.trim();
-            if (!inBg) {
-                if (trimmed.startsWith("Background:")) {
-                    inBg = true;
-                }
-                continue;
-            }
-            if (trimmed.startsWith("Scenario:") || trimmed.startsWith("Scenario Outline:")) {
-                break;
-            }
-            String lower = trimmed.toLowerCase();
-            if (lower.startsWith("given ") || lower.startsWith("when ") || lower.startsWith("then ")
-                    || lower.startsWith("and ") || lower.startsWith("but ")) {
-                sb.append(trimmed).append("\n");
-            }
-        }
-        String out = sb.toString().trim();
-        return out.isEmpty() ? null : out;
+        FeatureModel.Background bg = FeatureModel.of(featureText).background;
+        return bg == null ? null : bg.stepsText();
     }
 
     // Full Background block (title + content)
     public static String extractBackgroundBlock(String featureText) {
-        String[] lines = featureText.split("\\R");
-        StringBuilder backgroundBlock = new StringBuilder();
-        boolean insideBackground = false;
-
-        for (String line : lines) {
-            String trimmed = line.trim();
-
-            if (trimmed.startsWith("Background:")) {
-                insideBackground = true;
-                backgroundBlock.append(line).append(System.lineSeparator());
-                continue;
-            }
-
-            if (insideBackground && (trimmed.startsWith("Scenario:") || trimmed.startsWith("Feature:") || trimmed.startsWith("@"))) {
-                break;
-            }
-
-            if (insideBackground) {
-                backgroundBlock.append(line).append(System.lineSeparator());
-            }
-        }
-
-        if (backgroundBlock.length() == 0) {
-            return null;
-        } else {
-            return backgroundBlock.toString().trim();
-        }
+        FeatureModel.Background bg = FeatureModel.of(featureText).background;
+        return bg == null || bg.block.isEmpty() ? null : bg.block;
     }
 
     // ADF helpers
@@ -200,11 +176,12 @@ public class utils {
         return s.trim().toLowerCase().replaceAll("[^a-z0-9]+", "-").replaceAll("^-+|-+$", "");
     }
 
-    private static String featureFileName(Scenario scenario) {
-        java.net.URI uri = scenario.getUri();
+    // Feature key as in the change map: the file name, prefixed by its module root when features
+    // live under several roots
+    private static String featureFileName(java.net.URI uri) {
         if (uri == null) return "unknown.feature";
         return "file".equalsIgnoreCase(uri.getScheme())
-            ? java.nio.file.Paths.get(uri).getFileName().toString()
+            ? FeatureScenarioChangeMap.featureRoots().key(java.nio.file.Paths.get(uri))
             : new java.io.File(uri.getPath()).getName();
     }
 
@@ -222,507 +199,487 @@ public class utils {
         }
     }
 
+    // Instances come from the shared FeatureModel (parsed once per content, cached by blob id)
     private static List<ScenarioInstance> parseFeatureIntoInstances(String featureText) {
-        java.util.ArrayList<ScenarioInstance> out = new java.util.ArrayList<>();
-
-        String[] linesArr = featureText.split("\\R");
-        java.util.List<String> lines = java.util.Arrays.asList(linesArr);
-
-        // State
-        enum Block { NONE, SCENARIO, OUTLINE }
-        Block block = Block.NONE;
-
-        String currentScenarioTitle = null;
-        java.util.List<String> currentScenarioSteps = new java.util.ArrayList<>();
-
-        String outlineTitle = null;
-        java.util.List<String> outlineSteps = new java.util.ArrayList<>();
-        java.util.List<String> examplesHeader = null;
-        java.util.List<java.util.List<String>> examplesRows = new java.util.ArrayList<>();
-
-        // Iterate and parse
-        for (String raw : lines) {
-            String line = raw.trim();
-            if (line.isEmpty()) continue;
-
-            if (line.startsWith("@")) continue; // ignore tags for this minimal parser
-            if (line.regionMatches(true, 0, "Feature:", 0, 8)) continue;
-            if (line.regionMatches(true, 0, "Background:", 0, 11)) continue;
-
-            if (line.regionMatches(true, 0, "Scenario Outline:", 0, 17)
-             || line.regionMatches(true, 0, "Scenario Template:", 0, 18)) {
-                // flush previous block
-                if (block == Block.SCENARIO) {
-                    if (currentScenarioTitle != null) {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("Scenario: ").append(currentScenarioTitle).append("\n");
-                        for (String s : currentScenarioSteps) sb.append(s).append("\n");
-                        out.add(new ScenarioInstance(currentScenarioTitle, sb.toString().trim()));
-                        System.out.println("Parsed scenario instance: " + currentScenarioTitle);
-                    }
-                    currentScenarioTitle = null;
-                    currentScenarioSteps.clear();
-                } else if (block == Block.OUTLINE) {
-                    if (outlineTitle != null) {
-                        if (examplesHeader == null || examplesRows.isEmpty()) {
-                            StringBuilder sb = new StringBuilder();
-                            sb.append("Scenario: ").append(outlineTitle).append("\n");
-                            for (String s : outlineSteps) sb.append(s).append("\n");
-                            out.add(new ScenarioInstance(outlineTitle, sb.toString().trim()));
-                            System.out.println("Parsed outline (no examples) as scenario: " + outlineTitle);
-                        } else {
-                            int idx = 1;
-                            for (java.util.List<String> rowVals : examplesRows) {
-                                java.util.Map<String,String> row = new java.util.LinkedHashMap<>();
-                                for (int i = 0; i < Math.min(examplesHeader.size(), rowVals.size()); i++) {
-                                    row.put(examplesHeader.get(i), rowVals.get(i));
-                                }
-                                String expandedTitle = expandPlaceholders(outlineTitle, row);
-                                StringBuilder sb = new StringBuilder();
-                                sb.append("Scenario: ").append(expandedTitle).append(" [ex ").append(idx).append("]").append("\n");
-                                for (String s : outlineSteps) {
-                                    String exp = expandPlaceholders(s, row);
-                                    sb.append(exp).append("\n");
-                                }
-                                out.add(new ScenarioInstance(expandedTitle + " [ex " + idx + "]", sb.toString().trim()));
-                               // System.out.println("Parsed outline example as scenario: " + expandedTitle + " [ex " + idx + "]");
-                                idx++;
-                            }
-                        }
-                    }
-                    outlineTitle = null;
-                    outlineSteps.clear();
-                    examplesHeader = null;
-                    examplesRows.clear();
-                }
+        java.util.List<ScenarioInstance> out = new java.util.ArrayList<>();
+        for (FeatureModel.Instance inst : FeatureModel.of(featureText).instances()) {
+            out.add(new ScenarioInstance(inst.name, inst.gherkin));
+            LOG.debug("Parsed scenario instance", "title", inst.name);
+        }
+        return out;
+    }
 
-                // start new outline
-                block = Block.OUTLINE;
-                outlineTitle = line.substring(line.indexOf(':') + 1).trim();
-                outlineSteps.clear();
-                examplesHeader = null;
-                examplesRows.clear();
-                continue;
-            }
+    // ---------- Core flows ----------
+ // Add this field to track scenario changes; written once by the plugin, read by pipeline workers
+    private static volatile ScenarioChangeTracker changeTracker = null;
 
-            if (line.regionMatches(true, 0, "Scenario:", 0, 9)) {
-                // flush previous block
-                if (block == Block.SCENARIO) {
-                    if (currentScenarioTitle != null) {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("Scenario: ").append(currentScenarioTitle).append("\n");
-                        for (String s : currentScenarioSteps) sb.append(s).append("\n");
-                        out.add(new ScenarioInstance(currentScenarioTitle, sb.toString().trim()));
-                        System.out.println("Parsed scenario instance: " + currentScenarioTitle);
-                    }
-                    currentScenarioTitle = null;
-                    currentScenarioSteps.clear();
-                } else if (block == Block.OUTLINE) {
-                    if (outlineTitle != null) {
-                        if (examplesHeader == null || examplesRows.isEmpty()) {
-                            StringBuilder sb = new StringBuilder();
-                            sb.append("Scenario: ").append(outlineTitle).append("\n");
-                            for (String s : outlineSteps) sb.append(s).append("\n");
-                            out.add(new ScenarioInstance(outlineTitle, sb.toString().trim()));
-                            System.out.println("Parsed outline (no examples) as scenario: " + outlineTitle);
-                        } else {
-                            int idx = 1;
-                            for (java.util.List<String> rowVals : examplesRows) {
-                                java.util.Map<String,String> row = new java.util.LinkedHashMap<>();
-                                for (int i = 0; i < Math.min(examplesHeader.size(), rowVals.size()); i++) {
-                                    row.put(examplesHeader.get(i), rowVals.get(i));
-                                }
-                                String expandedTitle = expandPlaceholders(outlineTitle, row);
-                                StringBuilder sb = new StringBuilder();
-                                sb.append("Scenario: ").append(expandedTitle).append(" [ex ").append(idx).append("]").append("\n");
-                                for (String s : outlineSteps) {
-                                    String exp = expandPlaceholders(s, row);
-                                    sb.append(exp).append("\n");
-                                }
-                                out.add(new ScenarioInstance(expandedTitle + " [ex " + idx + "]", sb.toString().trim()));
-                                System.out.println("Parsed outline example as scenario: " + expandedTitle + " [ex " + idx + "]");
-                                idx++;
-                            }
-                        }
-                    }
-                    outlineTitle = null;
-                    outlineSteps.clear();
-                    examplesHeader = null;
-                    examplesRows.clear();
-                }
+    // Initialize change tracker before processing (call once at startup)
+    public static void initializeChangeTracking(String fromCommit, String toCommit) {
+        LOG.info("Initializing change tracking");
+        changeTracker = FeatureChangeDetector.detectChanges(fromCommit, toCommit);
+    }
 
-                // start new scenario
-                block = Block.SCENARIO;
-                currentScenarioTitle = line.substring(line.indexOf(':') + 1).trim();
-                currentScenarioSteps.clear();
-                continue;
-            }
+    // Modified createOrReuseTest with change detection integration
+    public void createOrReuseTestWithChangeDetection(String projectKey, Scenario scenario) {
+        syncFeature(projectKey, scenario.getUri(), readFeatureText(scenario));
+    }
 
-            // collect steps/examples
-            if (block == Block.SCENARIO) {
-                if (isStep(line)) currentScenarioSteps.add(line);
-                continue;
+    // Syncs every scenario instance of one feature file; no Cucumber runtime objects needed.
+    // Each feature (URI + content hash) is parsed and synced at most once per run, however
+    // many scenarios trigger it; concurrent callers wait for the in-flight sync.
+    public void syncFeature(String projectKey, java.net.URI featureUri, String featureText) {
+        boolean ran = FeatureSyncRegistry.runOnce(projectKey + "|" + featureUri, ContentHash.sha256Hex(featureText),
+            () -> syncFeatureNow(projectKey, featureUri, featureText));
+        if (!ran) {
+            LOG.debug("Feature already synced this run", "feature", featureUri);
+        }
+    }
+
+    private void syncFeatureNow(String projectKey, java.net.URI featureUri, String featureText) {
+        if ("import".equalsIgnoreCase(cfg.syncMode())) {
+            // One import per project per run covers every changed feature; a failed one is
+            // dropped, so the next feature retries it
+            CompletableFuture<Void> run = importRuns.computeIfAbsent(projectKey, this::syncChangedFeaturesViaImport);
+            await(run.whenComplete((v, e) -> {
+                if (e != null) importRuns.remove(projectKey, run);
+            }));
+            // Left out of the import (see syncChangedFeaturesViaImport): synced per instance below
+            if (!hasOutline(featureText)) return;
+        }
+
+        String featureName = featureFileName(featureUri);
+        List<ScenarioInstance> instances = parseFeatureIntoInstances(featureText);
+        LOG.info("Parsed scenario instances", "feature", featureName, "count", instances.size());
+
+        // One lookup → create → type → gherkin chain per instance; chains run concurrently.
+        // Scenarios moved here from another file reuse their Test and only get relabelled.
+        Map<ScenarioInstance, CompletableFuture<JiraClient.IssueRef>> moved = relabelMoved(projectKey, featureName, instances);
+        java.util.List<CompletableFuture<JiraClient.IssueRef>> chains = new java.util.ArrayList<>();
+        for (ScenarioInstance inst : instances) {
+            CompletableFuture<JiraClient.IssueRef> relabel = moved.get(inst);
+            chains.add(relabel != null ? relabel : syncInstance(projectKey, featureName, inst));
+        }
+
+        java.util.List<String> createdOrReusedTestIds = new java.util.ArrayList<>();
+        JiraClient.IssueRef last = null;
+        for (CompletableFuture<JiraClient.IssueRef> chain : chains) {
+            last = await(chain);
+            createdOrReusedTestIds.add(last.id);
+        }
+        PreconditionRef pre = null;
+
+        // Background Precondition (same as before)
+        String bgBlock = extractBackgroundBlock(featureText);
+        String bgSteps = extractBackgroundSteps(featureText);
+        if (bgBlock != null && bgSteps != null && !createdOrReusedTestIds.isEmpty()) {
+            PreconditionRef created = await(pipeline.submit("precondition",
+                () -> createBackgroundPrecondition(projectKey, featureName, bgBlock, bgSteps)));
+            await(pipeline.submit("link", () -> {
+                linkPreconditionToTests(created.id, createdOrReusedTestIds);
+                return null;
+            }));
+            pre = created;
+        }
+        state = new SyncState(last == null ? null : last.key, last == null ? null : last.id,
+            pre == null ? null : pre.key, pre == null ? null : pre.id);
+
+        if (LOG.isDebugEnabled()) LOG.debug(pipeline.report());
+    }
+
+    public static String pipelineReport() {
+        return pipeline.report();
+    }
+
+    // ---------- Whole-feature import mode ----------
+
+    private static final Map<String, CompletableFuture<Void>> importRuns = new ConcurrentHashMap<>();
+
+    // Uploads every changed .feature file in one zip through Xray's import endpoint,
+    // then puts our automation/feature:/scenario: labels on the returned Tests. The relabels are
+    // composed onto the import task rather than awaited inside it, so no pipeline thread blocks
+    // on other pipeline tasks.
+    // Files with a Scenario Outline are left out: the import makes one Test per outline, while
+    // the sync labels one Test per Examples row ("<expanded name> [ex n]"). syncFeatureNow
+    // syncs those files per instance instead.
+    public CompletableFuture<Void> syncChangedFeaturesViaImport(String projectKey) {
+        return pipeline.submit("import", () -> importChangedFeatures(projectKey)).thenCompose(relabels -> relabels);
+    }
+
+    // Runs on the import task; returns the relabels it queued
+    private CompletableFuture<Void> importChangedFeatures(String projectKey) {
+        Map<java.nio.file.Path, String> texts = new java.util.LinkedHashMap<>();
+        try {
+            for (java.nio.file.Path f : FeatureScenarioChangeMap.changedFeatureFiles(FeatureScenarioChangeMap.latest())) {
+                texts.put(f, java.nio.file.Files.readString(f));
             }
+        } catch (java.io.IOException e) {
+            throw new RuntimeException("Failed to read changed feature files", e);
+        }
+        java.util.List<java.nio.file.Path> files = new java.util.ArrayList<>();
+        for (Map.Entry<java.nio.file.Path, String> e : texts.entrySet()) {
+            if (hasOutline(e.getValue())) {
+                LOG.info("Feature import: outline feature synced per instance", "file", e.getKey());
+            } else {
+                files.add(e.getKey());
+            }
+        }
+        if (files.isEmpty()) {
+            LOG.info("Feature import: no changed feature files to import");
+            return CompletableFuture.completedFuture(null);
+        }
+        LOG.info("Feature import: uploading", "files", files.size(), "project", projectKey);
 
-            if (block == Block.OUTLINE) {
-                if (line.regionMatches(true, 0, "Examples:", 0, 9)) {
-                    examplesHeader = null;
-                    examplesRows.clear();
-                    continue;
-                }
-                if (line.startsWith("|")) {
-                    java.util.List<String> cells = parseRow(line);
-                    if (examplesHeader == null) {
-                        examplesHeader = cells;
-                    } else {
-                        examplesRows.add(cells);
-                    }
-                    continue;
+        FeatureImporter.ImportResult result = new FeatureImporter(xrayImportFeature, xrayTokens)
+            .importFeatures(projectKey, FeatureScenarioChangeMap.featuresRoot().toAbsolutePath(),
+                files.stream().map(p -> p.toAbsolutePath()).collect(java.util.stream.Collectors.toList()));
+        if (!result.errors().isEmpty()) {
+            LOG.warn("Feature import reported errors", "errors", result.errors());
+        }
+
+        // Scenario title → feature file name, for titles that occur in only one uploaded file
+        Map<String, String> featureByTitle = new java.util.HashMap<>();
+        java.util.Set<String> ambiguous = new java.util.HashSet<>();
+        java.util.List<String> featuresWithBackground = new java.util.ArrayList<>();
+        for (java.nio.file.Path f : files) {
+            String text = texts.get(f);
+            String featureName = FeatureScenarioChangeMap.featureRoots().key(f);
+            if (extractBackgroundSteps(text) != null) featuresWithBackground.add(featureName);
+            for (String title : scenarioTitles(text)) {
+                if (featureByTitle.putIfAbsent(title, featureName) != null && !featureName.equals(featureByTitle.get(title))) {
+                    ambiguous.add(title);
                 }
-                if (isStep(line)) outlineSteps.add(line);
-                continue;
             }
         }
 
-        // flush tail
-        if (block == Block.SCENARIO) {
-            if (currentScenarioTitle != null) {
-                StringBuilder sb = new StringBuilder();
-                sb.append("Scenario: ").append(currentScenarioTitle).append("\n");
-                for (String s : currentScenarioSteps) sb.append(s).append("\n");
-                out.add(new ScenarioInstance(currentScenarioTitle, sb.toString().trim()));
-                System.out.println("Parsed scenario instance: " + currentScenarioTitle);
-            }
-        } else if (block == Block.OUTLINE) {
-            if (outlineTitle != null) {
-                if (examplesHeader == null || examplesRows.isEmpty()) {
-                    StringBuilder sb = new StringBuilder();
-                    sb.append("Scenario: ").append(outlineTitle).append("\n");
-                    for (String s : outlineSteps) sb.append(s).append("\n");
-                    out.add(new ScenarioInstance(outlineTitle, sb.toString().trim()));
-                    System.out.println("Parsed outline (no examples) as scenario: " + outlineTitle);
-                } else {
-                    int idx = 1;
-                    for (java.util.List<String> rowVals : examplesRows) {
-                        java.util.Map<String,String> row = new java.util.LinkedHashMap<>();
-                        for (int i = 0; i < Math.min(examplesHeader.size(), rowVals.size()); i++) {
-                            row.put(examplesHeader.get(i), rowVals.get(i));
-                        }
-                        String expandedTitle = expandPlaceholders(outlineTitle, row);
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("Scenario: ").append(expandedTitle).append(" [ex ").append(idx).append("]").append("\n");
-                        for (String s : outlineSteps) {
-                            String exp = expandPlaceholders(s, row);
-                            sb.append(exp).append("\n");
-                        }
-                        out.add(new ScenarioInstance(expandedTitle + " [ex " + idx + "]", sb.toString().trim()));
-                        System.out.println("Parsed outline example as scenario: " + expandedTitle + " [ex " + idx + "]");
-                        idx++;
-                    }
-                }
+        java.util.List<CompletableFuture<Void>> relabels = new java.util.ArrayList<>();
+        for (JSONObject issue : jira.byKeys(result.testKeys(), "summary", "labels")) {
+            String title = issue.getJSONObject("fields").optString("summary");
+            String featureName = ambiguous.contains(title) ? null : featureByTitle.get(title);
+            if (featureName == null) {
+                LOG.warn("Imported Test matches no single scenario; left unlabelled", "key", issue.getString("key"), "title", title);
+                continue;
             }
+            relabels.add(addMissingLabels(issue, "automation", "feature:" + featureName,
+                "scenario:" + title.trim().replaceAll("\\s+", "-")));
+        }
+        String bgFeature = featuresWithBackground.size() == 1 ? featuresWithBackground.get(0) : null;
+        for (JSONObject issue : jira.byKeys(result.preconditionKeys(), "labels")) {
+            relabels.add(bgFeature == null
+                ? addMissingLabels(issue, "automation")
+                : addMissingLabels(issue, "automation", "feature:" + bgFeature));
         }
+        return CompletableFuture.allOf(relabels.toArray(new CompletableFuture<?>[0]))
+            .thenRun(() -> LOG.info("Feature import reconciled", "tests", result.testKeys().size(),
+                "preconditions", result.preconditionKeys().size()));
+    }
 
-        return out;
+    private static boolean hasOutline(String featureText) {
+        for (FeatureModel.Scenario sc : FeatureModel.of(featureText).scenarios) {
+            if (sc.outline) return true;
+        }
+        return false;
     }
 
-    private static boolean isStep(String line) {
-        return line.matches("(?i)^(Given|When|Then|And|But|\\*)\\b.*");
+    private static java.util.List<String> scenarioTitles(String featureText) {
+        java.util.List<String> out = new java.util.ArrayList<>();
+        for (FeatureModel.Scenario sc : FeatureModel.of(featureText).scenarios) {
+            out.add(sc.name);
+        }
+        return out;
     }
 
-    private static java.util.List<String> parseRow(String line) {
-        String[] parts = line.split("\\|");
-        java.util.List<String> cells = new java.util.ArrayList<>();
-        for (String p : parts) {
-            String t = p.trim();
-            if (!t.isEmpty()) cells.add(t);
+    private CompletableFuture<Void> addMissingLabels(JSONObject issue, String... labels) {
+        JSONArray current = issue.getJSONObject("fields").optJSONArray("labels");
+        java.util.List<Object> have = current == null ? java.util.List.of() : current.toList();
+        String key = issue.getString("key");
+        java.util.List<String> missing = new java.util.ArrayList<>();
+        for (String label : labels) {
+            if (!have.contains(label)) missing.add(label);
         }
-        return cells;
+        if (missing.isEmpty()) return CompletableFuture.completedFuture(null);
+        return pipeline.submit("relabel", () -> {
+            jira.addLabels(key, missing);
+            return null;
+        });
     }
 
-    private static String expandPlaceholders(String text, java.util.Map<String,String> row) {
-        if (text == null || row == null || row.isEmpty()) return text;
-        String out = text;
-        for (java.util.Map.Entry<String,String> e : row.entrySet()) {
-            String key = e.getKey();
-            String val = e.getValue();
-            if (key != null && val != null) {
-                out = out.replace("<" + key + ">", val);
+    // Finds the Tests of MOVED instances by their old labels, a chunk of origins per search, and
+    // swaps in this feature's labels. Instances whose old Test is not found are left out and go
+    // through the normal lookup/create chain.
+    private Map<ScenarioInstance, CompletableFuture<JiraClient.IssueRef>> relabelMoved(
+            String projectKey, String featureName, List<ScenarioInstance> instances) {
+        ScenarioChangeTracker tracker = changeTracker;
+        Map<ScenarioInstance, String> origins = new java.util.LinkedHashMap<>();
+        if (tracker != null) {
+            for (ScenarioInstance inst : instances) {
+                String from = tracker.getMovedFrom("feature:" + featureName + "::scenario:" + inst.labelSlug);
+                if (from != null) origins.put(inst, from);
+            }
+        }
+        if (origins.isEmpty()) return Map.of();
+
+        java.util.List<String> keys = new java.util.ArrayList<>(new java.util.LinkedHashSet<>(origins.values()));
+        java.util.List<CompletableFuture<java.util.List<JSONObject>>> searches = new java.util.ArrayList<>();
+        for (int i = 0; i < keys.size(); i += 50) {
+            String jql = movedOriginsJql(projectKey, keys.subList(i, Math.min(i + 50, keys.size())));
+            searches.add(pipeline.submit("lookup", () -> jira.searchAll(jql, "labels")));
+        }
+        Map<String, JSONObject> byOrigin = new java.util.HashMap<>();
+        for (CompletableFuture<java.util.List<JSONObject>> search : searches) {
+            for (JSONObject issue : await(search)) {
+                JSONArray labels = issue.getJSONObject("fields").optJSONArray("labels");
+                java.util.List<Object> have = labels == null ? java.util.List.of() : labels.toList();
+                for (String origin : keys) {
+                    String[] parts = origin.split("::", 2);
+                    if (have.contains(parts[0]) && have.contains(parts[1])) byOrigin.putIfAbsent(origin, issue);
+                }
             }
         }
+
+        // Tests with the same label swap (typically all moves from one file into this one) are
+        // relabelled together through bulk edits, removals per chunk after the additions
+        Map<java.util.List<java.util.List<String>>, java.util.List<String>> keysBySwap = new java.util.LinkedHashMap<>();
+        Map<ScenarioInstance, java.util.List<java.util.List<String>>> swapOf = new java.util.HashMap<>();
+        Map<ScenarioInstance, JiraClient.IssueRef> testOf = new java.util.HashMap<>();
+        for (Map.Entry<ScenarioInstance, String> e : origins.entrySet()) {
+            ScenarioInstance inst = e.getKey();
+            JSONObject issue = byOrigin.get(e.getValue());
+            if (issue == null) {
+                LOG.info("Moved scenario has no Test under its old labels", "scenario", inst.name, "from", e.getValue());
+                continue;
+            }
+            java.util.List<String> old = java.util.List.of(e.getValue().split("::", 2));
+            java.util.List<String> target = java.util.List.of("feature:" + featureName, "scenario:" + inst.labelSlug);
+            java.util.List<String> add = new java.util.ArrayList<>(target);
+            add.removeAll(old);
+            java.util.List<String> remove = new java.util.ArrayList<>(old);
+            remove.removeAll(target);
+            java.util.List<java.util.List<String>> swap = java.util.List.of(add, remove);
+            JiraClient.IssueRef test = JiraClient.IssueRef.of(issue);
+            keysBySwap.computeIfAbsent(swap, k -> new java.util.ArrayList<>()).add(test.key);
+            swapOf.put(inst, swap);
+            testOf.put(inst, test);
+        }
+
+        Map<java.util.List<java.util.List<String>>, CompletableFuture<Void>> swaps = new java.util.HashMap<>();
+        for (Map.Entry<java.util.List<java.util.List<String>>, java.util.List<String>> e : keysBySwap.entrySet()) {
+            java.util.List<String> add = e.getKey().get(0), remove = e.getKey().get(1), tests = e.getValue();
+            swaps.put(e.getKey(), pipeline.submit("relabel", () -> {
+                java.util.List<String> tasks = new java.util.ArrayList<>();
+                if (!add.isEmpty()) tasks.addAll(jira.bulkEditLabels(tests, "ADD", add));
+                if (!remove.isEmpty()) tasks.addAll(jira.bulkEditLabels(tests, "REMOVE", remove));
+                LOG.info("Relabelled moved Tests", "count", tests.size(), "add", add, "remove", remove, "tasks", tasks);
+                return null;
+            }));
+        }
+
+        Map<ScenarioInstance, CompletableFuture<JiraClient.IssueRef>> out = new java.util.HashMap<>();
+        for (Map.Entry<ScenarioInstance, JiraClient.IssueRef> e : testOf.entrySet()) {
+            ScenarioInstance inst = e.getKey();
+            JiraClient.IssueRef test = e.getValue();
+            boolean edited = tracker.hasChanged("feature:" + featureName + "::scenario:" + inst.labelSlug);
+            CompletableFuture<JiraClient.IssueRef> relabel = swaps.get(swapOf.get(inst)).thenApply(v -> test);
+            out.put(inst, !edited ? relabel : relabel.thenCompose(t -> pipeline.submit("gherkin", () -> {
+                uploadPerScenarioGherkin(t.id, inst.gherkinBlock);
+                return t;
+            })));
+        }
         return out;
     }
 
-    // ---------- Core flows ----------
- // Add this field to track scenario changes
-    private static ScenarioChangeTracker changeTracker = null;
-
-    // Initialize change tracker before processing (call once at startup)
-    public static void initializeChangeTracking(String fromCommit, String toCommit) {
-        System.out.println("Initializing change tracking...");
-        changeTracker = FeatureChangeDetector.detectChanges(fromCommit, toCommit);
+    // Tests carrying one of the old feature labels and one of the old scenario labels; the
+    // exact pairs are checked on the results
+    private static String movedOriginsJql(String projectKey, java.util.List<String> originKeys) {
+        java.util.Set<String> features = new java.util.LinkedHashSet<>();
+        java.util.Set<String> scenarios = new java.util.LinkedHashSet<>();
+        for (String origin : originKeys) {
+            String[] parts = origin.split("::", 2);
+            features.add("\"" + parts[0].replace("\"", "\\\"") + "\"");
+            scenarios.add("\"" + parts[1].replace("\"", "\\\"") + "\"");
+        }
+        return String.format("project=%s AND issuetype=Test AND labels in (%s) AND labels in (%s)",
+            projectKey, String.join(",", features), String.join(",", scenarios));
     }
 
-    // Modified createOrReuseTest with change detection integration
-    public void createOrReuseTestWithChangeDetection(String projectKey, Scenario scenario) {
-        if (jiraAuthHeader == null) authJira();
-        if (xrayToken == null) authXray();
+    private CompletableFuture<JiraClient.IssueRef> syncInstance(String projectKey, String featureName, ScenarioInstance inst) {
+        String featureLabel  = "feature:" + featureName;
+        String scenarioLabel = "scenario:" + inst.labelSlug;
+
+        // Build scenario key for change tracking
+        String scenarioKey = featureLabel + "::" + scenarioLabel;
+        boolean hasChanged = changeTracker != null && changeTracker.hasChanged(scenarioKey);
+
+        return pipeline.submit("lookup", () -> findTest(projectKey, featureLabel, scenarioLabel))
+            .thenCompose(found -> {
+                if (found != null) {
+                    LOG.info(hasChanged ? "Found existing Test, updating (scenario changed)" : "Found existing Test, skipping update (scenario unchanged)",
+                        "scenario", inst.name, "key", found.key, "id", found.id);
+                    return hasChanged ? uploadStages(found, inst) : CompletableFuture.completedFuture(found);
+                }
+                return pipeline.submit("create", () -> createTest(projectKey, inst, featureLabel, scenarioLabel))
+                    .thenCompose(created -> uploadStages(created, inst));
+            });
+    }
 
-        String featureText = readFeatureText(scenario);
-        String featureName = featureFileName(scenario);
-        List<ScenarioInstance> instances = parseFeatureIntoInstances(featureText);
-        System.out.println("Total scenario instances parsed: " + instances.size());
+    private CompletableFuture<JiraClient.IssueRef> uploadStages(JiraClient.IssueRef test, ScenarioInstance inst) {
+        return pipeline.submit("type", () -> {
+                updateTestType(test.id);
+                return test;
+            })
+            .thenCompose(t -> pipeline.submit("gherkin", () -> {
+                uploadPerScenarioGherkin(t.id, inst.gherkinBlock);
+                return t;
+            }));
+    }
 
-        java.util.List<String> createdOrReusedTestIds = new java.util.ArrayList<>();
+    private JiraClient.IssueRef findTest(String projectKey, String featureLabel, String scenarioLabel) {
+        String jql = String.format(
+                "project=%s AND issuetype=Test AND labels in (\"%s\") AND labels in (\"%s\")",
+                projectKey,
+                featureLabel.replace("\"","\\\""),
+                scenarioLabel.replace("\"","\\\"")
+            );
 
-        for (ScenarioInstance inst : instances) {
-            String scenarioSlug = inst.labelSlug;
-            String featureLabel  = "feature:" + featureName;
-            String scenarioLabel = "scenario:" + scenarioSlug;
-            
-            // Build scenario key for change tracking
-            String scenarioKey = featureLabel + "::" + scenarioLabel;
-            
-            // Check if this scenario has changed
-            boolean hasChanged = changeTracker != null && changeTracker.hasChanged(scenarioKey);
-            
-            System.out.println("\nProcessing scenario: " + inst.name);
-            System.out.println("  Change status: " + (hasChanged ? "CHANGED/NEW" : "UNCHANGED"));
-
-            String jql = String.format(
-                    "project=%s AND issuetype=Test AND labels in (\"%s\") AND labels in (\"%s\")",
-                    projectKey,
-                    featureLabel.replace("\"","\\\""),
-                    scenarioLabel.replace("\"","\\\"")
-                );
-
-            String searchUrl = jiraBase.replace("/issue", "/search/jql");
-
-            JSONObject payload = new JSONObject()
-              .put("jql", jql)
-              .put("fields", new JSONArray().put("id").put("key"))
-              .put("maxResults", 1);
-
-            System.out.println("  Searching Test by labels: " + scenarioLabel + " & " + featureLabel);
-            Response search = given()
-              .header("Authorization", jiraAuthHeader)
-              .header("Content-Type", "application/json")
-              .body(payload.toString())
-              .when()
-              .post(searchUrl);
-
-            if (search.statusCode() != 200) {
-              throw new RuntimeException("Jira search failed: " + search.asString());
-            }
+        LOG.debug("Searching Test by labels", "scenario", scenarioLabel, "feature", featureLabel);
+        return jira.findFirst(jql);
+    }
 
-            List<Map<String, Object>> issues = search.jsonPath().getList("issues");
-            if (issues != null && !issues.isEmpty()) {
-                // Test exists
-                Map<String, Object> first = issues.get(0);
-                lastTestKey = String.valueOf(first.get("key"));
-                lastTestId  = String.valueOf(first.get("id"));
-                lastHttpResponse = search;
-                System.out.println("  Found existing Test: key=" + lastTestKey + " id=" + lastTestId);
-                
-                // Only update if changed
-                if (hasChanged) {
-                    System.out.println("  → Updating Test (scenario changed)");
-                    ensureCucumberType();
-                    uploadPerScenarioGherkin(lastTestId, inst.gherkinBlock);
-                } else {
-                    System.out.println("  → Skipping update (scenario unchanged)");
-                }
-            } else {
-                // Create new test
-                System.out.println("  → Creating new Test");
-                String summary = inst.name;
-                JSONObject adfDescription = new JSONObject()
-                    .put("type", "doc")
-                    .put("version", 1)
+    private JiraClient.IssueRef createTest(String projectKey, ScenarioInstance inst, String featureLabel, String scenarioLabel) {
+        LOG.info("Creating new Test", "scenario", inst.name);
+        String summary = inst.name;
+        JSONObject adfDescription = new JSONObject()
+            .put("type", "doc")
+            .put("version", 1)
+            .put("content", new JSONArray().put(
+                new JSONObject()
+                    .put("type", "paragraph")
                     .put("content", new JSONArray().put(
-                        new JSONObject()
-                            .put("type", "paragraph")
-                            .put("content", new JSONArray().put(
-                                new JSONObject().put("type", "text")
-                                    .put("text", "Created via REST with ADF for " + featureLabel + ".")
-                            ))
-                    ));
-
-                JSONArray labels = new JSONArray()
-                    .put("automation")
-                    .put(scenarioLabel)
-                    .put(featureLabel);
-
-                JSONObject body = new JSONObject()
-                    .put("fields", new JSONObject()
-                        .put("project", new JSONObject().put("key", projectKey))
-                        .put("summary", summary)
-                        .put("description", adfDescription)
-                        .put("issuetype", new JSONObject().put("name", "Test"))
-                        .put("labels", labels)
-                    );
-
-                Response create = given()
-                    .header("Authorization", jiraAuthHeader)
-                    .header("Content-Type", "application/json")
-                    .body(body.toString())
-                    .when()
-                    .post(jiraBase);
-
-                create.then().statusCode(201).body("key", notNullValue());
-                lastTestKey = create.jsonPath().getString("key");
-
-                Response getIssue = given()
-                    .header("Authorization", jiraAuthHeader)
-                    .header("Content-Type", "application/json")
-                    .when()
-                    .get(jiraBase + "/" + lastTestKey);
-
-                getIssue.then().statusCode(200);
-                lastTestId = getIssue.jsonPath().getString("id");
-                lastHttpResponse = create;
-                System.out.println("  Created Test: key=" + lastTestKey + " id=" + lastTestId);
-                
-                ensureCucumberType();
-                uploadPerScenarioGherkin(lastTestId, inst.gherkinBlock);
-            }
+                        new JSONObject().put("type", "text")
+                            .put("text", "Created via REST with ADF for " + featureLabel + ".")
+                    ))
+            ));
 
-            createdOrReusedTestIds.add(lastTestId);
-        }
+        JSONArray labels = new JSONArray()
+            .put("automation")
+            .put(scenarioLabel)
+            .put(featureLabel);
 
-        // Background Precondition (same as before)
-        String bgBlock = extractBackgroundBlock(featureText);
-        String bgSteps = extractBackgroundSteps(featureText);
-        if (bgBlock != null && bgSteps != null && !createdOrReusedTestIds.isEmpty()) {
-            String createdPreId = createBackgroundPrecondition(projectKey, scenario, bgBlock, bgSteps);
-            for (String tid : createdOrReusedTestIds) {
-                linkPreconditionToTest(tid, createdPreId);
-            }
-            lastPreconditionId = createdPreId;
+        JiraClient.IssueRef created = jira.create(new JSONObject()
+            .put("project", new JSONObject().put("key", projectKey))
+            .put("summary", summary)
+            .put("description", adfDescription)
+            .put("issuetype", new JSONObject().put("name", "Test"))
+            .put("labels", labels));
+        LOG.info("Created Test", "key", created.key, "id", created.id);
+        return created;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
         }
     }
 
 
     // Upload only the scenario block to the Test
     private void uploadPerScenarioGherkin(String testIssueId, String scenarioGherkin) {
-        if (xrayToken == null) authXray();
         String preview = scenarioGherkin == null ? "" : scenarioGherkin.split("\\R", 2)[0];
-        System.out.println("Uploading scenario Gherkin to Test issueId=" + testIssueId + " preview=\"" + preview + "\"");
+        LOG.debug("Uploading scenario Gherkin", "issueId", testIssueId, "preview", preview);
 
         String query =
             "mutation UpdateGherkin($issueId: String!, $gherkin: String!) { " +
-            "  updateGherkinTestDefinition(issueId: $issueId, gherkin: $gherkin) { " +
-            "    issueId testType { name } gherkin jira(fields:[\"key\"]) " +
-            "  } " +
+            "  updateGherkinTestDefinition(issueId: $issueId, gherkin: $gherkin) { issueId } " +
             "}";
 
-        JSONObject variables = new JSONObject()
+        xray.graphql(query, new JSONObject()
             .put("issueId", testIssueId)
-            .put("gherkin", scenarioGherkin);
-
-        JSONObject gql = new JSONObject()
-            .put("query", query)
-            .put("variables", variables);
-
-        Response gqlResp = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql.toString())
-            .when()
-            .post(xrayGraphQL);
-
-        gqlResp.then().statusCode(200);
-        System.out.println("Uploaded scenario Gherkin to Test issueId=" + testIssueId);
+            .put("gherkin", scenarioGherkin));
+        LOG.debug("Uploaded scenario Gherkin", "issueId", testIssueId);
     }
 
     public void ensureCucumberType() {
-        if (xrayToken == null) authXray();
-        if (lastTestId == null) throw new RuntimeException("No Test identified to change type.");
-
-        System.out.println("Changing Test type to Cucumber for issueId=" + lastTestId);
-
-        String mutation = String.format(
-            "mutation { updateTestType(issueId: \"%s\", testType: { name: \"Cucumber\" }) { issueId testType { name } jira(fields:[\"key\"]) } }",
-            lastTestId
-        );
+        String testId = state.testId;
+        if (testId == null) throw new RuntimeException("No Test identified to change type.");
+        updateTestType(testId);
+    }
 
-        JSONObject gql = new JSONObject().put("query", mutation);
+    private void updateTestType(String testIssueId) {
+        LOG.debug("Changing Test type to Cucumber", "issueId", testIssueId);
 
-        Response gqlResp = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql.toString())
-            .when()
-            .post(xrayGraphQL);
+        String mutation =
+            "mutation UpdateType($issueId: String!) { " +
+            "  updateTestType(issueId: $issueId, testType: { name: \"Cucumber\" }) { issueId } " +
+            "}";
 
-        gqlResp.then().statusCode(200);
-        System.out.println("Changed Test type to Cucumber for issueId=" + lastTestId);
+        xray.graphql(mutation, new JSONObject().put("issueId", testIssueId));
+        LOG.debug("Changed Test type to Cucumber", "issueId", testIssueId);
     }
     
     public void ensurePreconditionType() {
-        if (xrayToken == null) authXray();
-
-        String mutation = String.format(
-            "mutation { updatePrecondition(issueId: \"%s\", data: { preconditionType: { name: \"Cucumber\" } }) { issueId preconditionType { kind name } definition } }" ,
-            preId
-        );
-
-        JSONObject gql = new JSONObject().put("query", mutation);
-
-        Response gqlResp = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql.toString())
-            .when()
-            .post(xrayGraphQL);
+        String mutation =
+            "mutation UpdatePreType($issueId: String!) { " +
+            "  updatePrecondition(issueId: $issueId, data: { preconditionType: { name: \"Cucumber\" } }) { issueId } " +
+            "}";
 
-        gqlResp.then().statusCode(200);
-        System.out.println("Set Precondition type=Cucumber for id=" + preId);
+        String preId = state.preconditionId;
+        xray.graphql(mutation, new JSONObject().put("issueId", preId));
+        LOG.info("Set Precondition type=Cucumber", "id", preId);
     }
 
     public void uploadGherkinFromScenario(Scenario scenario) {
-        if (xrayToken == null) authXray();
-        if (lastTestId == null) throw new RuntimeException("No Test identified to add script.");
+        String testId = state.testId;
+        if (testId == null) throw new RuntimeException("No Test identified to add script.");
 
         String gherkin = readFeatureText(scenario);
-        System.out.println("Uploading FULL feature Gherkin to Test issueId=" + lastTestId + ".");
+        LOG.debug("Uploading FULL feature Gherkin", "issueId", testId);
 
         String query =
             "mutation UpdateGherkin($issueId: String!, $gherkin: String!) { " +
-            "  updateGherkinTestDefinition(issueId: $issueId, gherkin: $gherkin) { " +
-            "    issueId testType { name } gherkin jira(fields:[\"key\"]) " +
-            "  } " +
+            "  updateGherkinTestDefinition(issueId: $issueId, gherkin: $gherkin) { issueId } " +
             "}";
 
-        JSONObject variables = new JSONObject()
-            .put("issueId", lastTestId)
-            .put("gherkin", gherkin);
-
-        JSONObject gql = new JSONObject()
-            .put("query", query)
-            .put("variables", variables);
-
-        Response gqlResp = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql.toString())
-            .when()
-            .post(xrayGraphQL);
-
-        gqlResp.then().statusCode(200);
-        System.out.println("Uploaded FULL feature Gherkin to Test issueId=" + lastTestId);
+        xray.graphql(query, new JSONObject()
+            .put("issueId", testId)
+            .put("gherkin", gherkin));
+        LOG.info("Uploaded FULL feature Gherkin", "issueId", testId);
     }
 
-    // Background Pre-Condition: create once and link many
+    // Background Pre-Condition: find-or-create once and link many
 
-    // Create the Background precondition (returns precond Id)
-    private String createBackgroundPrecondition(String projectKey, Scenario scenario, String bgBlock, String bgSteps) {
-        if (jiraAuthHeader == null) authJira();
-        if (xrayToken == null) authXray();
+    // Keyed by project + feature label + background slug + steps hash → precondition id
+    private static final Map<String, String> preconditionCache = new ConcurrentHashMap<>();
 
-        String featureName = featureFileName(scenario);
+    // Returns the precondition for this Background, reusing an existing Precondition
+    // whose labels match the background slug and the hash of its steps. Jira's create does not
+    // reject duplicates, so a Precondition with these steps under another background: label
+    // (e.g. only the Background's title changed) is looked up by its bghash: label first.
+    private PreconditionRef createBackgroundPrecondition(String projectKey, String featureName, String bgBlock, String bgSteps) {
         String featureLabel  = "feature:" + featureName;
         String backgroundLabel = "background:" + slugify(bgBlock);
+        String hashLabel = "bghash:" + ContentHash.shortSha256(bgSteps);
+
+        String cacheKey = projectKey + "|" + featureLabel + "|" + backgroundLabel + "|" + hashLabel;
+        String cached = preconditionCache.get(cacheKey);
+        if (cached != null) {
+            LOG.debug("Reusing cached Precondition", "id", cached, "feature", featureLabel);
+            return new PreconditionRef(null, cached);
+        }
+
+        JSONObject existing = findBackgroundPrecondition(projectKey, featureLabel, backgroundLabel);
+        if (existing != null) {
+            return reusePrecondition(existing, hashLabel, bgSteps, cacheKey);
+        }
+        JSONObject sameSteps = findBackgroundPrecondition(projectKey, featureLabel, hashLabel);
+        if (sameSteps != null) {
+            LOG.info("Reusing Precondition with the same steps under a new background label",
+                "key", sameSteps.getString("key"), "label", backgroundLabel);
+            jira.updateLabels(sameSteps.getString("key"), java.util.List.of(backgroundLabel),
+                labelsWithPrefix(sameSteps, "background:"));
+            return reusePrecondition(sameSteps, hashLabel, bgSteps, cacheKey);
+        }
 
         final String preconditionIssueTypeName = "Precondition";
         JSONObject fields = new JSONObject()
@@ -733,103 +690,128 @@ public class utils {
                 .put("automation")
                 .put(featureLabel)
                 .put(backgroundLabel)
+                .put(hashLabel)
             );
 
-        JSONObject body = new JSONObject().put("fields", fields);
-
-        Response createResp = given()
-            .header("Authorization", jiraAuthHeader)
-            .header("Content-Type", "application/json")
-            .body(body.toString())
-            .when()
-            .post(jiraBase);
-
-        if (createResp.statusCode() != 201) {
-            System.out.println("Precondition create failed; retrying with description...");
-            JSONObject simpleAdf = adfParagraph("Background:\n" + bgSteps);
-            fields.put("description", simpleAdf);
-            Response retry = given()
-                .header("Authorization", jiraAuthHeader)
-                .header("Content-Type", "application/json")
-                .body(new JSONObject().put("fields", fields).toString())
-                .when()
-                .post(jiraBase);
-            if (retry.statusCode() != 201) {
-                throw new RuntimeException("Create Precondition failed: " + retry.asString());
-            }
-            createResp = retry;
-        }
-
-        String preKey = createResp.jsonPath().getString("key");
-        Response getIssue = given()
-            .header("Authorization", jiraAuthHeader)
-            .header("Accept", "application/json")
-            .when()
-            .get(jiraBase + "/" + preKey);
-
-        getIssue.then().statusCode(200);
-        String createdPreId = getIssue.jsonPath().getString("id");
-        System.out.println("Created Precondition: key=" + preKey + " id=" + createdPreId);
-
-        // Set Precondition type to Cucumber and upload definition (bg steps)
-        System.out.println("Setting Precondition type=Cucumber for id=" + createdPreId);
-        String mutation1 = String.format(
-            "mutation { updatePrecondition(issueId: \"%s\", data: { preconditionType: { name: \"Cucumber\" } }) { issueId preconditionType { kind name } definition } }",
-            createdPreId
-        );
-        JSONObject gql1 = new JSONObject().put("query", mutation1);
-        Response gqlResp1 = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql1.toString())
-            .when()
-            .post(xrayGraphQL);
-        gqlResp1.then().statusCode(200);
-        System.out.println("Set Precondition type=Cucumber for id=" + createdPreId);
-
-        System.out.println("Uploading Background steps to Precondition id=" + createdPreId);
+        JiraClient.IssueRef created;
+        try {
+            created = jira.create(fields);
+        } catch (HttpStatusException e) {
+            if (e.status() != 400 || !e.body().contains("description")) throw e;
+            // The project requires a description on create
+            LOG.warn("Precondition create needs a description; retrying with one");
+            fields.put("description", adfParagraph("Background:\n" + bgSteps));
+            created = jira.create(fields);
+        }
+
+        String preKey = created.key;
+        String createdPreId = created.id;
+        LOG.info("Created Precondition", "key", preKey, "id", createdPreId);
+
+        updatePreconditionDefinition(createdPreId, bgSteps);
+
+        preconditionCache.put(cacheKey, createdPreId);
+        return new PreconditionRef(preKey, createdPreId);
+    }
+
+    // An existing Precondition for this Background. When its steps hash differs (edited steps,
+    // or created before steps were hashed) the definition is refreshed once and the hash label
+    // swapped in the same edit that removes the stale ones.
+    private PreconditionRef reusePrecondition(JSONObject existing, String hashLabel, String bgSteps, String cacheKey) {
+        String foundKey = existing.getString("key");
+        String foundId = existing.getString("id");
+        JSONArray foundLabels = existing.optJSONObject("fields") == null ? null
+            : existing.getJSONObject("fields").optJSONArray("labels");
+        java.util.List<Object> have = foundLabels == null ? java.util.List.of() : foundLabels.toList();
+        if (have.contains(hashLabel)) {
+            LOG.info("Reusing Precondition (background unchanged)", "key", foundKey, "id", foundId);
+        } else {
+            LOG.info("Refreshing Precondition (no matching steps hash)", "key", foundKey, "id", foundId);
+            updatePreconditionDefinition(foundId, bgSteps);
+            jira.updateLabels(foundKey, java.util.List.of(hashLabel), labelsWithPrefix(existing, "bghash:"));
+        }
+        preconditionCache.put(cacheKey, foundId);
+        return new PreconditionRef(foundKey, foundId);
+    }
+
+    // Oldest Precondition of the feature carrying label (its background: or bghash: label)
+    private JSONObject findBackgroundPrecondition(String projectKey, String featureLabel, String label) {
+        String jql = String.format(
+            "project=%s AND issuetype=Precondition AND labels in (\"%s\") AND labels in (\"%s\") ORDER BY created ASC",
+            projectKey, escapeJqlLiteral(featureLabel), escapeJqlLiteral(label));
+        java.util.List<JSONObject> issues = jira.search(jql, 1, "labels");
+        return issues.isEmpty() ? null : issues.get(0);
+    }
+
+    private static java.util.List<String> labelsWithPrefix(JSONObject issue, String prefix) {
+        JSONArray labels = issue.optJSONObject("fields") == null ? null : issue.getJSONObject("fields").optJSONArray("labels");
+        java.util.List<String> out = new java.util.ArrayList<>();
+        for (int i = 0; labels != null && i < labels.length(); i++) {
+            if (labels.getString(i).startsWith(prefix)) out.add(labels.getString(i));
+        }
+        return out;
+    }
+
+    // Type and definition in a single mutation
+    private void updatePreconditionDefinition(String preconditionId, String bgSteps) {
+        LOG.debug("Setting Precondition type=Cucumber and Background steps", "id", preconditionId);
         String query =
             "mutation UpdatePreDef($issueId: String!, $gherkin: String!) { " +
-            " updatePrecondition(issueId: $issueId, data: { definition: $gherkin }) { " +
-            " issueId preconditionType { name } definition jira(fields:[\"key\"]) " +
-            " } " +
+            " updatePrecondition(issueId: $issueId, data: { preconditionType: { name: \"Cucumber\" }, definition: $gherkin }) { issueId } " +
             "}";
-        JSONObject variables = new JSONObject()
-            .put("issueId", createdPreId)
-            .put("gherkin", bgSteps);
-        JSONObject gql2 = new JSONObject()
-            .put("query", query)
-            .put("variables", variables);
-        Response gqlResp2 = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql2.toString())
-            .when()
-            .post(xrayGraphQL);
-        gqlResp2.then().statusCode(200);
-        System.out.println("Uploaded Background steps to Precondition id=" + createdPreId);
-
-        lastPreconditionKey = preKey;
-        preId = createdPreId; // store
-        return createdPreId;
-    }
-
-    // Link a precondition to a specific Test id
-    private void linkPreconditionToTest(String testIssueId, String preIssueId) {
-        if (xrayToken == null) authXray();
-        System.out.println("Linking Precondition id=" + preIssueId + " to Test id=" + testIssueId);
-        String mutation = String.format(
-            "mutation { addPreconditionsToTest(issueId: \"%s\", preconditionIssueIds: [\"%s\"]) { addedPreconditions warning } }",
-            testIssueId, preIssueId
-        );
-        JSONObject gql = new JSONObject().put("query", mutation);
-        Response gqlResp = given()
-            .header("Authorization", "Bearer " + xrayToken)
-            .header("Content-Type", "application/json")
-            .body(gql.toString())
-            .when()
-            .post(xrayGraphQL);
-        gqlResp.then().statusCode(200);
-       // System.out.println("Linked Precondition id=" + preIssueId + " to Test id=" + testIssueId);
+        xray.graphql(query, new JSONObject()
+            .put("issueId", preconditionId)
+            .put("gherkin", bgSteps));
+        LOG.info("Uploaded Background steps to Precondition", "id", preconditionId);
+    }
+
+    private static final int LINK_CHUNK_SIZE = 100;
+
+    // Link all Tests to the precondition with one addTestsToPrecondition per chunk,
+    // skipping Tests the precondition already lists.
+    private void linkPreconditionToTests(String preIssueId, java.util.List<String> testIssueIds) {
+        java.util.Set<String> alreadyLinked = linkedTestIds(preIssueId);
+        java.util.List<String> toLink = new java.util.ArrayList<>();
+        for (String tid : new java.util.LinkedHashSet<>(testIssueIds)) {
+            if (!alreadyLinked.contains(tid)) toLink.add(tid);
+        }
+        LOG.info("Linking Precondition", "id", preIssueId, "new", toLink.size(),
+            "alreadyLinked", testIssueIds.size() - toLink.size());
+
+        String mutation =
+            "mutation LinkTests($issueId: String!, $testIssueIds: [String]!) { " +
+            " addTestsToPrecondition(issueId: $issueId, testIssueIds: $testIssueIds) { addedTests warning } " +
+            "}";
+        for (int from = 0; from < toLink.size(); from += LINK_CHUNK_SIZE) {
+            java.util.List<String> chunk = toLink.subList(from, Math.min(toLink.size(), from + LINK_CHUNK_SIZE));
+            xray.graphql(mutation, new JSONObject()
+                .put("issueId", preIssueId)
+                .put("testIssueIds", new JSONArray(chunk)));
+        }
+    }
+
+    private java.util.Set<String> linkedTestIds(String preIssueId) {
+        java.util.Set<String> out = new java.util.HashSet<>();
+        String query =
+            "query LinkedTests($issueId: String!, $start: Int!, $limit: Int!) { " +
+            " getPrecondition(issueId: $issueId) { tests(start: $start, limit: $limit) { total results { issueId } } } " +
+            "}";
+        int start = 0;
+        while (true) {
+            JSONObject data = xray.graphql(query, new JSONObject()
+                .put("issueId", preIssueId)
+                .put("start", start)
+                .put("limit", LINK_CHUNK_SIZE));
+            JSONObject pre = data.optJSONObject("getPrecondition");
+            JSONObject tests = pre == null ? null : pre.optJSONObject("tests");
+            if (tests == null) return out;
+            JSONArray results = tests.optJSONArray("results");
+            if (results == null || results.isEmpty()) return out;
+            for (int i = 0; i < results.length(); i++) {
+                out.add(results.getJSONObject(i).optString("issueId"));
+            }
+            start += results.length();
+            if (start >= tests.optInt("total", 0)) return out;
+        }
     }
 }
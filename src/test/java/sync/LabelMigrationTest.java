@@ -0,0 +1,74 @@
+package sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import model.FeatureModel;
+
+public class LabelMigrationTest {
+
+    @Test
+    public void lastExamplesBlockRowsMapToTheirRenumberedInstances() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Scenario Outline: search",
+            "    When the user searches for \"<kw>\"",
+            "    Examples:",
+            "      | kw |",
+            "      | a  |",
+            "    Examples:",
+            "      | kw |",
+            "      | b  |",
+            "      | c  |"));
+
+        assertEquals(Map.of("search [ex 1]", "search [ex 2]", "search [ex 2]", "search [ex 3]"),
+            LabelMigration.legacyInstanceNames(model));
+    }
+
+    @Test
+    public void droppedEmptyCellsShiftedTheOldNames() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Scenario Outline: login <user> <code>",
+            "    When <user> enters <code>",
+            "    Examples:",
+            "      | user | code |",
+            "      |      | 401  |",
+            "      | bob  | 200  |"));
+
+        assertEquals(Map.of("login 401 <code> [ex 1]", "login  401 [ex 1]"), LabelMigration.legacyInstanceNames(model));
+    }
+
+    @Test
+    public void singleBlockOutlinesKeepTheirNames() {
+        FeatureModel model = FeatureModel.of(String.join("\n",
+            "Feature: F",
+            "  Scenario Outline: search <kw>",
+            "    When the user searches for \"<kw>\"",
+            "    Examples:",
+            "      | kw |",
+            "      | a  |",
+            "      | b  |"));
+
+        assertTrue(LabelMigration.legacyInstanceNames(model).isEmpty());
+    }
+
+    @Test
+    public void oldBackgroundBlockRanIntoAnUntaggedOutline() {
+        String text = String.join("\n",
+            "Feature: F",
+            "  Background:",
+            "    Given a user",
+            "  Scenario Outline: o <x>",
+            "    When <x>",
+            "  Scenario: s",
+            "    When y");
+
+        assertEquals("Background:\n    Given a user\n  Scenario Outline: o <x>\n    When <x>",
+            LabelMigration.legacyBackgroundBlock(text).replace(System.lineSeparator(), "\n"));
+    }
+}